@@ -0,0 +1,113 @@
+package com.mycompany.djl.griddb.benchmarks;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.SampleForecast;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.M5ForecastingEvaluator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares scoring a batch of forecasts series by series with
+ * {@link M5ForecastingEvaluator#getMetricsPerTs} against the whole-batch
+ * {@link M5ForecastingEvaluator#getMetricsPerBatch} variants, on random
+ * count data shaped like the M5 test set.
+ *
+ * <p>
+ * The inputs are recreated for every iteration so the intermediate arrays of
+ * an iteration are freed with its manager.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    private static final float[] QUANTILES = {0.5f, 0.67f, 0.95f, 0.99f};
+
+    @Param({"32", "256"})
+    private int batchSize;
+
+    @Param({"100"})
+    private int numSamples;
+
+    @Param({"28"})
+    private int contextLength;
+
+    private NDManager manager;
+    private NDArray gt;
+    private NDArray pastTarget;
+    private NDArray samples;
+    private List<Forecast> forecasts;
+    private List<NDArray> gtRows;
+    private List<NDArray> pastTargetRows;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        manager = NDManager.newBaseManager();
+        int predictionLength = Forecaster.PREDICTION_LENGTH;
+        gt = manager.randomUniform(0, 10, new Shape(batchSize, predictionLength)).round();
+        pastTarget = manager.randomUniform(0, 10, new Shape(batchSize, contextLength)).round();
+        samples = manager.randomUniform(0, 10, new Shape(batchSize, numSamples, predictionLength)).round();
+
+        NDList gtSplit = gt.split(batchSize);
+        NDList pastTargetSplit = pastTarget.split(batchSize);
+        NDList samplesSplit = samples.split(batchSize);
+        forecasts = new ArrayList<>(batchSize);
+        gtRows = new ArrayList<>(batchSize);
+        pastTargetRows = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            gtRows.add(gtSplit.get(i).squeeze(0));
+            pastTargetRows.add(pastTargetSplit.get(i).squeeze(0));
+            forecasts.add(new SampleForecast(samplesSplit.get(i).squeeze(0), Forecaster.START_TIME, Forecaster.FREQ));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public M5ForecastingEvaluator perSeries() {
+        M5ForecastingEvaluator evaluator = new M5ForecastingEvaluator(QUANTILES);
+        for (int i = 0; i < batchSize; i++) {
+            evaluator.aggregateMetrics(evaluator.getMetricsPerTs(gtRows.get(i), pastTargetRows.get(i), forecasts.get(i)));
+        }
+        return evaluator;
+    }
+
+    @Benchmark
+    public M5ForecastingEvaluator batchFromForecasts() {
+        M5ForecastingEvaluator evaluator = new M5ForecastingEvaluator(QUANTILES);
+        evaluator.aggregateBatchMetrics(evaluator.getMetricsPerBatch(gt, pastTarget, forecasts));
+        return evaluator;
+    }
+
+    @Benchmark
+    public M5ForecastingEvaluator batchFromSamples() {
+        M5ForecastingEvaluator evaluator = new M5ForecastingEvaluator(QUANTILES);
+        evaluator.aggregateBatchMetrics(evaluator.getMetricsPerBatch(gt, pastTarget, samples));
+        return evaluator;
+    }
+}
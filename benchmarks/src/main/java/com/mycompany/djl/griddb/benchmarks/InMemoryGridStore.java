@@ -0,0 +1,1209 @@
+package com.mycompany.djl.griddb.benchmarks;
+
+import com.toshiba.mwcloud.gs.Aggregation;
+import com.toshiba.mwcloud.gs.AggregationResult;
+import com.toshiba.mwcloud.gs.Collection;
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.FetchOption;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.Geometry;
+import com.toshiba.mwcloud.gs.GeometryOperator;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.IndexInfo;
+import com.toshiba.mwcloud.gs.IndexType;
+import com.toshiba.mwcloud.gs.InterpolationMode;
+import com.toshiba.mwcloud.gs.PartitionController;
+import com.toshiba.mwcloud.gs.Query;
+import com.toshiba.mwcloud.gs.QueryOrder;
+import com.toshiba.mwcloud.gs.Row;
+import com.toshiba.mwcloud.gs.RowKey;
+import com.toshiba.mwcloud.gs.RowKeyPredicate;
+import com.toshiba.mwcloud.gs.RowSet;
+import com.toshiba.mwcloud.gs.TimeOperator;
+import com.toshiba.mwcloud.gs.TimeSeries;
+import com.toshiba.mwcloud.gs.TimeSeriesProperties;
+import com.toshiba.mwcloud.gs.TimeUnit;
+import com.toshiba.mwcloud.gs.TriggerInfo;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.sql.Blob;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process {@link GridStore} stand-in holding {@link Row} collections in
+ * memory, for benchmarks and for running the data layer without a cluster.
+ *
+ * <p>
+ * Only the parts of the API used by this project are implemented: row-based
+ * collections, keyed by one or more columns or by none, through
+ * {@code putContainer}/{@code getContainer}/{@code dropContainer},
+ * {@code multiPut}, {@code fetchAll} and {@code Select *} queries with an
+ * optional {@code order by} and {@code limit}, other TQL being rejected
+ * rather than answered with every row, and time series of row objects
+ * through {@code putTimeSeries}/{@code getTimeSeries} with time range
+ * queries, written to by {@code multiPut} too. {@link #close()} keeps the
+ * data, so one instance can be handed out to every caller that closes its
+ * store when done.
+ */
+public class InMemoryGridStore implements GridStore {
+
+    /**
+     * The only TQL evaluated: every column of every row, optionally ordered
+     * by one column and limited.
+     */
+    private static final Pattern SELECT_ALL = Pattern.compile(
+            "\\s*select\\s+\\*(?:\\s+order\\s+by\\s+(\\w+)(?:\\s+(asc|desc))?)?(?:\\s+limit\\s+(\\d+))?\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    private final Map<String, InMemoryContainer> containers = new ConcurrentHashMap<>();
+    private final Map<String, InMemoryTimeSeries<?>> timeSeries = new ConcurrentHashMap<>();
+
+    @Override
+    public <K> Container<K, Row> putContainer(String name, ContainerInfo info, boolean modifiable)
+            throws GSException {
+        return putCollection(name, info, modifiable);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> Collection<K, Row> putCollection(String name, ContainerInfo info, boolean modifiable)
+            throws GSException {
+        ContainerInfo schema = new ContainerInfo(info);
+        schema.setName(name);
+        if (schema.getType() == null) {
+            schema.setType(ContainerType.COLLECTION);
+        }
+        InMemoryContainer container = containers.computeIfAbsent(key(name), k -> new InMemoryContainer(schema));
+        if (modifiable && container.info.getColumnCount() < schema.getColumnCount()) {
+            container.info = schema;
+        }
+        return (Collection<K, Row>) container;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> Container<K, Row> getContainer(String name) throws GSException {
+        return (Container<K, Row>) containers.get(key(name));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> Collection<K, Row> getCollection(String name) throws GSException {
+        return (Collection<K, Row>) containers.get(key(name));
+    }
+
+    @Override
+    public ContainerInfo getContainerInfo(String name) throws GSException {
+        InMemoryContainer container = containers.get(key(name));
+        if (container != null) {
+            return new ContainerInfo(container.info);
+        }
+        InMemoryTimeSeries<?> series = timeSeries.get(key(name));
+        return series == null ? null : series.getInfo();
+    }
+
+    @Override
+    public void dropContainer(String name) throws GSException {
+        containers.remove(key(name));
+        timeSeries.remove(key(name));
+    }
+
+    @Override
+    public void dropCollection(String name) throws GSException {
+        dropContainer(name);
+    }
+
+    @Override
+    public Row createRow(ContainerInfo info) throws GSException {
+        return new InMemoryRow(info);
+    }
+
+    @Override
+    public void multiPut(Map<String, List<Row>> containerRowsMap) throws GSException {
+        for (Map.Entry<String, List<Row>> entry : containerRowsMap.entrySet()) {
+            InMemoryContainer container = containers.get(key(entry.getKey()));
+            InMemoryTimeSeries<?> series = timeSeries.get(key(entry.getKey()));
+            if (container != null) {
+                container.put(entry.getValue());
+            } else if (series != null) {
+                series.putRows(entry.getValue());
+            } else {
+                throw new GSException("Container not found: " + entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void fetchAll(List<? extends Query<?>> queryList) throws GSException {
+        for (Query<?> query : queryList) {
+            query.fetch();
+        }
+    }
+
+    /**
+     * Keeps the stored containers; drop them explicitly to free the memory.
+     */
+    @Override
+    public void close() throws GSException {
+    }
+
+    /**
+     * Returns the number of rows held by every container, for sanity checks in
+     * benchmarks.
+     */
+    public long getRowCount() {
+        long rows = 0;
+        for (InMemoryContainer container : containers.values()) {
+            rows += container.size();
+        }
+        for (InMemoryTimeSeries<?> series : timeSeries.values()) {
+            rows += series.size();
+        }
+        return rows;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public boolean put(String pathKey, Object rowObject) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public Object get(String pathKey) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <R> R get(String pathKey, Class<R> rowType) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean remove(String pathKey) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <K, R> Collection<K, R> putCollection(String name, Class<R> rowType) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <K, R> Collection<K, R> putCollection(String name, Class<R> rowType, boolean modifiable)
+            throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> TimeSeries<R> putTimeSeries(String name, Class<R> rowType) throws GSException {
+        InMemoryTimeSeries<?> series = timeSeries.computeIfAbsent(key(name), k -> new InMemoryTimeSeries<>(name, rowType));
+        if (series.rowType != rowType) {
+            throw new GSException("Time series " + name + " holds " + series.rowType.getName());
+        }
+        return (TimeSeries<R>) series;
+    }
+
+    @Override
+    public <R> TimeSeries<R> putTimeSeries(String name, Class<R> rowType, TimeSeriesProperties props,
+            boolean modifiable) throws GSException {
+        return putTimeSeries(name, rowType);
+    }
+
+    @Override
+    public <K, R> Collection<K, R> getCollection(String name, Class<R> rowType) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> TimeSeries<R> getTimeSeries(String name, Class<R> rowType) throws GSException {
+        InMemoryTimeSeries<?> series = timeSeries.get(key(name));
+        if (series != null && series.rowType != rowType) {
+            throw new GSException("Time series " + name + " holds " + series.rowType.getName());
+        }
+        return (TimeSeries<R>) series;
+    }
+
+    @Override
+    public void dropTimeSeries(String name) throws GSException {
+        dropContainer(name);
+    }
+
+    @Override
+    public TimeSeries<Row> putTimeSeries(String name, ContainerInfo info, boolean modifiable)
+            throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public TimeSeries<Row> getTimeSeries(String name) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <K, R, C extends Container<K, R>> C getContainer(String name, Container.BindType<K, R, C> bindType)
+            throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <K, R, C extends Container<K, R>> C putContainer(String name, Container.BindType<K, R, C> bindType)
+            throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <K, R, C extends Container<K, R>> C putContainer(String name, Container.BindType<K, R, C> bindType,
+            ContainerInfo info, boolean modifiable) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public Row.Key createRowKey(ContainerInfo info) throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public Map<String, List<Row>> multiGet(Map<String, ? extends RowKeyPredicate<?>> containerPredicateMap)
+            throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public PartitionController getPartitionController() throws GSException {
+        throw unsupported();
+    }
+
+    @Override
+    public <K, R> Container<K, R> putContainer(String name, Class<R> rowType, ContainerInfo info,
+            boolean modifiable) throws GSException {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not supported by InMemoryGridStore");
+    }
+
+    static class InMemoryContainer implements Collection<Object, Row> {
+
+        private final Map<Object, Row> rows = new LinkedHashMap<>();
+        private volatile ContainerInfo info;
+        private long sequence;
+
+        InMemoryContainer(ContainerInfo info) {
+            this.info = info;
+        }
+
+        synchronized int size() {
+            return rows.size();
+        }
+
+        synchronized List<Row> snapshot() {
+            return new ArrayList<>(rows.values());
+        }
+
+        private Object keyOf(Row row) throws GSException {
+            List<Integer> keyColumns = info.getRowKeyColumnList();
+            if (keyColumns.isEmpty()) {
+                return sequence++;
+            }
+            if (keyColumns.size() == 1) {
+                return row.getValue(keyColumns.get(0));
+            }
+            List<Object> key = new ArrayList<>(keyColumns.size());
+            for (int column : keyColumns) {
+                key.add(row.getValue(column));
+            }
+            return key;
+        }
+
+        @Override
+        public synchronized boolean put(Row row) throws GSException {
+            return rows.put(keyOf(row), row) != null;
+        }
+
+        @Override
+        public synchronized boolean put(Object key, Row row) throws GSException {
+            row.setValue(0, key);
+            return put(row);
+        }
+
+        @Override
+        public synchronized boolean put(java.util.Collection<Row> rowCollection) throws GSException {
+            for (Row row : rowCollection) {
+                put(row);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized Row get(Object key) throws GSException {
+            return rows.get(key);
+        }
+
+        @Override
+        public Row get(Object key, boolean forUpdate) throws GSException {
+            return get(key);
+        }
+
+        @Override
+        public synchronized boolean remove(Object key) throws GSException {
+            return rows.remove(key) != null;
+        }
+
+        @Override
+        public Query<Row> query(String tql) throws GSException {
+            Matcher matcher = SELECT_ALL.matcher(tql);
+            if (!matcher.matches()) {
+                // a where clause or a column list would silently be ignored
+                throw new GSException("InMemoryGridStore only evaluates Select * [order by <column> [asc|desc]]"
+                        + " [limit <n>], not: " + tql);
+            }
+            return new InMemoryQuery(this, matcher);
+        }
+
+        @Override
+        public <S> Query<S> query(String tql, Class<S> rowType) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public Query<Row> query(String column, Geometry geometry, GeometryOperator geometryOp)
+                throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public Query<Row> query(String column, Geometry geometryIntersection, Geometry geometryDisjoint)
+                throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public Row createRow() throws GSException {
+            return new InMemoryRow(info);
+        }
+
+        @Override
+        public ContainerType getType() throws GSException {
+            return info.getType();
+        }
+
+        @Override
+        public Blob createBlob() throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void commit() throws GSException {
+        }
+
+        @Override
+        public void abort() throws GSException {
+        }
+
+        @Override
+        public void setAutoCommit(boolean enabled) throws GSException {
+        }
+
+        @Override
+        public void createIndex(String columnName) throws GSException {
+        }
+
+        @Override
+        public void createIndex(String columnName, IndexType type) throws GSException {
+        }
+
+        @Override
+        public void createIndex(IndexInfo info) throws GSException {
+        }
+
+        @Override
+        public void dropIndex(String columnName) throws GSException {
+        }
+
+        @Override
+        public void dropIndex(String columnName, IndexType type) throws GSException {
+        }
+
+        @Override
+        public void dropIndex(IndexInfo info) throws GSException {
+        }
+
+        @Override
+        public void createEventNotification(URL url) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void dropEventNotification(URL url) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void createTrigger(TriggerInfo info) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void dropTrigger(String name) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void flush() throws GSException {
+        }
+
+        @Override
+        public void close() throws GSException {
+        }
+
+        @Override
+        public Container.BindType<Object, Row, ? extends Container<Object, Row>> getBindType()
+                throws GSException {
+            throw unsupported();
+        }
+    }
+
+    /**
+     * A time series of row objects, keyed by the {@link RowKey} field of the
+     * row class.
+     */
+    static class InMemoryTimeSeries<R> implements TimeSeries<R> {
+
+        private final String name;
+        private final Class<R> rowType;
+        private final Field keyField;
+        private final NavigableMap<Date, R> rows = new TreeMap<>();
+
+        InMemoryTimeSeries(String name, Class<R> rowType) {
+            this.name = name;
+            this.rowType = rowType;
+            this.keyField = keyField(rowType);
+        }
+
+        private static Field keyField(Class<?> rowType) {
+            for (Field field : rowType.getFields()) {
+                if (field.isAnnotationPresent(RowKey.class) && field.getType() == Date.class) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException(rowType.getName() + " has no Date row key");
+        }
+
+        synchronized int size() {
+            return rows.size();
+        }
+
+        ContainerInfo getInfo() {
+            List<ColumnInfo> columnInfoList = new ArrayList<>();
+            columnInfoList.add(new ColumnInfo(keyField.getName(), GSType.TIMESTAMP));
+            for (Field field : rowType.getFields()) {
+                if (!field.equals(keyField) && !Modifier.isStatic(field.getModifiers())) {
+                    columnInfoList.add(new ColumnInfo(field.getName(), null));
+                }
+            }
+            ContainerInfo info = new ContainerInfo();
+            info.setName(name);
+            info.setType(ContainerType.TIME_SERIES);
+            info.setColumnInfoList(columnInfoList);
+            info.setRowKeyAssigned(true);
+            return info;
+        }
+
+        private Date keyOf(R row) throws GSException {
+            try {
+                return (Date) keyField.get(row);
+            } catch (IllegalAccessException ex) {
+                throw new GSException(ex);
+            }
+        }
+
+        /**
+         * Stores general rows as row objects, setting the field of every
+         * column by name.
+         */
+        synchronized void putRows(List<Row> rowList) throws GSException {
+            try {
+                for (Row row : rowList) {
+                    R object = rowType.newInstance();
+                    ContainerInfo info = row.getSchema();
+                    for (int i = 0; i < info.getColumnCount(); i++) {
+                        rowType.getField(info.getColumnInfo(i).getName()).set(object, row.getValue(i));
+                    }
+                    put(object);
+                }
+            } catch (ReflectiveOperationException ex) {
+                throw new GSException(ex);
+            }
+        }
+
+        @Override
+        public synchronized boolean append(R row) throws GSException {
+            return put(row);
+        }
+
+        @Override
+        public synchronized boolean put(R row) throws GSException {
+            return rows.put(keyOf(row), row) != null;
+        }
+
+        @Override
+        public synchronized boolean put(Date key, R row) throws GSException {
+            return rows.put(key, row) != null;
+        }
+
+        @Override
+        public synchronized boolean put(java.util.Collection<R> rowCollection) throws GSException {
+            for (R row : rowCollection) {
+                put(row);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized R get(Date key) throws GSException {
+            return rows.get(key);
+        }
+
+        @Override
+        public R get(Date key, boolean forUpdate) throws GSException {
+            return get(key);
+        }
+
+        @Override
+        public synchronized R get(Date base, TimeOperator timeOp) throws GSException {
+            Map.Entry<Date, R> entry;
+            switch (timeOp) {
+                case NEXT:
+                    entry = rows.ceilingEntry(base);
+                    break;
+                case NEXT_ONLY:
+                    entry = rows.higherEntry(base);
+                    break;
+                case PREVIOUS:
+                    entry = rows.floorEntry(base);
+                    break;
+                default:
+                    entry = rows.lowerEntry(base);
+                    break;
+            }
+            return entry == null ? null : entry.getValue();
+        }
+
+        @Override
+        public synchronized boolean remove(Date key) throws GSException {
+            return rows.remove(key) != null;
+        }
+
+        /**
+         * Returns the rows from {@code start} to {@code end}, both inclusive; a
+         * {@code null} bound is open.
+         */
+        @Override
+        public Query<R> query(Date start, Date end) throws GSException {
+            return query(start, end, QueryOrder.ASCENDING);
+        }
+
+        @Override
+        public Query<R> query(Date start, Date end, QueryOrder order) throws GSException {
+            return new InMemoryRangeQuery<>(getInfo(), () -> {
+                synchronized (this) {
+                    NavigableMap<Date, R> range = rows;
+                    if (start != null) {
+                        range = range.tailMap(start, true);
+                    }
+                    if (end != null) {
+                        range = range.headMap(end, true);
+                    }
+                    List<R> result = new ArrayList<>(range.values());
+                    if (order == QueryOrder.DESCENDING) {
+                        Collections.reverse(result);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        @Override
+        public Query<R> query(Date start, Date end, Set<String> columnSet, InterpolationMode mode,
+                int interval, TimeUnit intervalUnit) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public Query<R> query(Date start, Date end, Set<String> columnSet, int interval,
+                TimeUnit intervalUnit) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public R interpolate(Date base, String column) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public AggregationResult aggregate(Date start, Date end, String column, Aggregation aggregation)
+                throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public Query<R> query(String tql) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public <S> Query<S> query(String tql, Class<S> rowType) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public R createRow() throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public ContainerType getType() throws GSException {
+            return ContainerType.TIME_SERIES;
+        }
+
+        @Override
+        public Blob createBlob() throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void commit() throws GSException {
+        }
+
+        @Override
+        public void abort() throws GSException {
+        }
+
+        @Override
+        public void setAutoCommit(boolean enabled) throws GSException {
+        }
+
+        @Override
+        public void createIndex(String columnName) throws GSException {
+        }
+
+        @Override
+        public void createIndex(String columnName, IndexType type) throws GSException {
+        }
+
+        @Override
+        public void createIndex(IndexInfo info) throws GSException {
+        }
+
+        @Override
+        public void dropIndex(String columnName) throws GSException {
+        }
+
+        @Override
+        public void dropIndex(String columnName, IndexType type) throws GSException {
+        }
+
+        @Override
+        public void dropIndex(IndexInfo info) throws GSException {
+        }
+
+        @Override
+        public void createEventNotification(URL url) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void dropEventNotification(URL url) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void createTrigger(TriggerInfo info) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void dropTrigger(String name) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void flush() throws GSException {
+        }
+
+        @Override
+        public void close() throws GSException {
+        }
+
+        @Override
+        public Container.BindType<Date, R, ? extends Container<Date, R>> getBindType() throws GSException {
+            throw unsupported();
+        }
+    }
+
+    /**
+     * A query whose rows are computed when it is fetched.
+     */
+    static class InMemoryRangeQuery<R> implements Query<R> {
+
+        private final ContainerInfo info;
+        private final Supplier<List<R>> rows;
+        private long limit = Long.MAX_VALUE;
+        private RowSet<R> rowSet;
+
+        InMemoryRangeQuery(ContainerInfo info, Supplier<List<R>> rows) {
+            this.info = info;
+            this.rows = rows;
+        }
+
+        @Override
+        public void setFetchOption(FetchOption option, Object value) throws GSException {
+            if (option == FetchOption.LIMIT) {
+                limit = Math.min(limit, ((Number) value).longValue());
+            }
+        }
+
+        @Override
+        public RowSet<R> fetch() throws GSException {
+            List<R> result = rows.get();
+            if (result.size() > limit) {
+                result = result.subList(0, (int) limit);
+            }
+            rowSet = new InMemoryRowSet<>(info, result);
+            return rowSet;
+        }
+
+        @Override
+        public RowSet<R> fetch(boolean forUpdate) throws GSException {
+            return fetch();
+        }
+
+        @Override
+        public RowSet<R> getRowSet() throws GSException {
+            return rowSet;
+        }
+
+        @Override
+        public void close() throws GSException {
+        }
+    }
+
+    static class InMemoryQuery implements Query<Row> {
+
+        private final InMemoryContainer container;
+        private final String orderBy;
+        private final boolean descending;
+        private long limit = Long.MAX_VALUE;
+        private RowSet<Row> rowSet;
+
+        /**
+         * @param tql a match of {@link #SELECT_ALL}
+         */
+        InMemoryQuery(InMemoryContainer container, Matcher tql) {
+            this.container = container;
+            this.orderBy = tql.group(1);
+            this.descending = "desc".equalsIgnoreCase(tql.group(2));
+            if (tql.group(3) != null) {
+                limit = Long.parseLong(tql.group(3));
+            }
+        }
+
+        @Override
+        public void setFetchOption(FetchOption option, Object value) throws GSException {
+            if (option == FetchOption.LIMIT) {
+                limit = Math.min(limit, ((Number) value).longValue());
+            }
+        }
+
+        @Override
+        public RowSet<Row> fetch() throws GSException {
+            List<Row> rows = container.snapshot();
+            if (orderBy != null) {
+                int column = columnIndex(container.info, orderBy);
+                Comparator<Row> comparator = Comparator.comparing(row -> valueOf(row, column));
+                if (descending) {
+                    comparator = comparator.reversed();
+                }
+                rows.sort(comparator);
+            }
+            if (rows.size() > limit) {
+                rows = rows.subList(0, (int) limit);
+            }
+            rowSet = new InMemoryRowSet<>(container.info, rows);
+            return rowSet;
+        }
+
+        @Override
+        public RowSet<Row> fetch(boolean forUpdate) throws GSException {
+            return fetch();
+        }
+
+        @Override
+        public RowSet<Row> getRowSet() throws GSException {
+            return rowSet;
+        }
+
+        @Override
+        public void close() throws GSException {
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Comparable valueOf(Row row, int column) {
+            try {
+                return (Comparable) row.getValue(column);
+            } catch (GSException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private static int columnIndex(ContainerInfo info, String name) throws GSException {
+            for (int i = 0; i < info.getColumnCount(); i++) {
+                if (info.getColumnInfo(i).getName().equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            throw new GSException("Column not found: " + name);
+        }
+    }
+
+    static class InMemoryRowSet<R> implements RowSet<R> {
+
+        private final ContainerInfo info;
+        private final List<R> rows;
+        private int position;
+
+        InMemoryRowSet(ContainerInfo info, List<R> rows) {
+            this.info = info;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() throws GSException {
+            return position < rows.size();
+        }
+
+        @Override
+        public R next() throws GSException {
+            return rows.get(position++);
+        }
+
+        @Override
+        public void remove() throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public void update(R row) throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+
+        @Override
+        public ContainerInfo getSchema() throws GSException {
+            return info;
+        }
+
+        @Override
+        public void close() throws GSException {
+        }
+    }
+
+    static class InMemoryRow implements Row {
+
+        private final ContainerInfo info;
+        private final Object[] values;
+
+        InMemoryRow(ContainerInfo info) {
+            this.info = info;
+            this.values = new Object[info.getColumnCount()];
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T get(int column) {
+            return (T) values[column];
+        }
+
+        @Override
+        public ContainerInfo getSchema() throws GSException {
+            return info;
+        }
+
+        @Override
+        public void setValue(int column, Object value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public Object getValue(int column) throws GSException {
+            return values[column];
+        }
+
+        @Override
+        public void setString(int column, String value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public String getString(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setBool(int column, boolean value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public boolean getBool(int column) throws GSException {
+            return this.<Boolean>get(column);
+        }
+
+        @Override
+        public void setByte(int column, byte value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public byte getByte(int column) throws GSException {
+            return this.<Byte>get(column);
+        }
+
+        @Override
+        public void setShort(int column, short value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public short getShort(int column) throws GSException {
+            return this.<Short>get(column);
+        }
+
+        @Override
+        public void setInteger(int column, int value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public int getInteger(int column) throws GSException {
+            return this.<Integer>get(column);
+        }
+
+        @Override
+        public void setLong(int column, long value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public long getLong(int column) throws GSException {
+            return this.<Long>get(column);
+        }
+
+        @Override
+        public void setFloat(int column, float value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public float getFloat(int column) throws GSException {
+            return this.<Float>get(column);
+        }
+
+        @Override
+        public void setDouble(int column, double value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public double getDouble(int column) throws GSException {
+            return this.<Double>get(column);
+        }
+
+        @Override
+        public void setTimestamp(int column, Date value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public Date getTimestamp(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setPreciseTimestamp(int column, Timestamp value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public Timestamp getPreciseTimestamp(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setGeometry(int column, Geometry value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public Geometry getGeometry(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setBlob(int column, Blob value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public Blob getBlob(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setStringArray(int column, String[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public String[] getStringArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setBoolArray(int column, boolean[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public boolean[] getBoolArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setByteArray(int column, byte[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public byte[] getByteArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setShortArray(int column, short[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public short[] getShortArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setIntegerArray(int column, int[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public int[] getIntegerArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setLongArray(int column, long[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public long[] getLongArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setFloatArray(int column, float[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public float[] getFloatArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setDoubleArray(int column, double[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public double[] getDoubleArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setTimestampArray(int column, Date[] value) throws GSException {
+            values[column] = value;
+        }
+
+        @Override
+        public Date[] getTimestampArray(int column) throws GSException {
+            return get(column);
+        }
+
+        @Override
+        public void setNull(int column) throws GSException {
+            values[column] = null;
+        }
+
+        @Override
+        public boolean isNull(int column) throws GSException {
+            return values[column] == null;
+        }
+
+        @Override
+        public Row createRow() throws GSException {
+            InMemoryRow row = new InMemoryRow(info);
+            System.arraycopy(values, 0, row.values, 0, values.length);
+            return row;
+        }
+
+        @Override
+        public Row.Key createKey() throws GSException {
+            throw unsupported();
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+}
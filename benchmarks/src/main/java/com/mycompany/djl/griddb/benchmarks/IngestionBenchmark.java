@@ -0,0 +1,87 @@
+package com.mycompany.djl.griddb.benchmarks;
+
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.db.BulkIngester;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Measures {@link BulkIngester} throughput in rows/s against an
+ * {@link InMemoryGridStore}, so the numbers reflect the client-side cost of
+ * reading, encoding and batching rather than the network.
+ *
+ * <p>
+ * The bundled CSV files are replicated up to the requested number of rows
+ * per container. Usage:
+ * {@code java -cp benchmarks/target/benchmarks.jar com.mycompany.djl.griddb.benchmarks.IngestionBenchmark 30490 1,100,1000,5000}
+ */
+public class IngestionBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(IngestionBenchmark.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 30490;
+        String[] batchSizes = (args.length > 1 ? args[1] : "1,100,1000,5000").split(",");
+
+        Map<String, URL> sources = new LinkedHashMap<>();
+        sources.put(GridDBDataset.TRAINING_COLLECTION_NAME,
+                replicate("data/weekly_sales_train_validation.csv", rows));
+        sources.put(GridDBDataset.VALIDATION_COLLECTION_NAME,
+                replicate("data/weekly_sales_train_evaluation.csv", rows));
+
+        for (String batchSize : batchSizes) {
+            InMemoryGridStore store = new InMemoryGridStore();
+            BulkIngester ingester = new BulkIngester(() -> store)
+                    .optBatchSize(Integer.parseInt(batchSize.trim()));
+
+            long begin = System.nanoTime();
+            long written = ingester.ingest(sources);
+            double seconds = (System.nanoTime() - begin) / 1e9;
+
+            long reseedBegin = System.nanoTime();
+            ingester.ingest(sources);
+            double reseedMillis = (System.nanoTime() - reseedBegin) / 1e6;
+
+            LOGGER.info(String.format("batch %5s: %8d rows in %6.2f s, %10.0f rows/s, unchanged reseed %6.1f ms",
+                    batchSize.trim(), written, seconds, written / seconds, reseedMillis));
+        }
+    }
+
+    /**
+     * Writes a temporary copy of a bundled CSV with its rows repeated until it
+     * holds {@code rows} rows, giving every copy a unique id.
+     */
+    private static URL replicate(String resource, int rows) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String header;
+        try ( BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Forecaster.class.getClassLoader().getResource(resource).openStream(), StandardCharsets.UTF_8))) {
+            header = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        File file = File.createTempFile("ingest-", ".csv");
+        file.deleteOnExit();
+        try ( PrintWriter pw = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            pw.println(header);
+            for (int i = 0; i < rows; i++) {
+                String line = lines.get(i % lines.size());
+                pw.println(i < lines.size() ? line : i + "_" + line);
+            }
+        }
+        return file.toURI().toURL();
+    }
+}
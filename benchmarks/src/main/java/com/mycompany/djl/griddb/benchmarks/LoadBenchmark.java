@@ -0,0 +1,96 @@
+package com.mycompany.djl.griddb.benchmarks;
+
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures getting the M5 data into a dataset against an
+ * {@link InMemoryGridStore}, so the numbers reflect the client-side work
+ * rather than the network:
+ * <ul>
+ * <li>{@code seedDatabase} ingests the bundled CSV files into an empty
+ * store,</li>
+ * <li>{@code fetch} reads the training container with
+ * {@link GridDBDataset.GridDBBuilder#initData()} in each load mode,</li>
+ * <li>{@code prepare} builds the dataset from the fetched data and runs
+ * {@link GridDBDataset#prepare}.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LoadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Seeded {
+
+        @Param({"CSV", "STREAM"})
+        private GridDBDataset.LoadMode loadMode;
+
+        GridDBDataset.GridDBBuilder builder;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            InMemoryGridStore store = new InMemoryGridStore();
+            builder = GridDBDataset.gridDBBuilder(() -> store);
+            int contextLength = Forecaster.getDeepARModel(
+                    new NegativeBinomialOutput(), builder.getCardinality(), true).getContextLength();
+            builder.optUsage(Dataset.Usage.TRAIN)
+                    .optLoadMode(loadMode)
+                    .setTransformation(new ArrayList<>())
+                    .setContextLength(contextLength)
+                    .setSize(Forecaster.BATCH_SIZE)
+                    .setStartTime(Forecaster.START_TIME)
+                    .setRandom(false)
+                    .setMaxWeek(273);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Fetched {
+
+        GridDBDataset.GridDBBuilder builder;
+
+        @Setup(Level.Trial)
+        public void setUp(Seeded seeded) throws Exception {
+            builder = seeded.builder.initData();
+        }
+    }
+
+    @Benchmark
+    public InMemoryGridStore seedDatabase() throws Exception {
+        InMemoryGridStore store = new InMemoryGridStore();
+        GridDBDataset.gridDBBuilder(() -> store);
+        return store;
+    }
+
+    @Benchmark
+    public GridDBDataset.GridDBBuilder fetch(Seeded seeded) throws Exception {
+        return seeded.builder.initData();
+    }
+
+    @Benchmark
+    public GridDBDataset prepare(Fetched fetched) throws Exception {
+        GridDBDataset dataset = fetched.builder.build();
+        dataset.prepare(null);
+        return dataset;
+    }
+}
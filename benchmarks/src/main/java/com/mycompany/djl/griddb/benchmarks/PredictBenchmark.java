@@ -0,0 +1,132 @@
+package com.mycompany.djl.griddb.benchmarks;
+
+import ai.djl.Model;
+import ai.djl.inference.Predictor;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.TimeSeriesData;
+import ai.djl.timeseries.dataset.FieldName;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.translate.TranslateException;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.inference.ForecastBatch;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Predictor#batchPredict} of the model trained by
+ * {@link Forecaster} at several batch sizes, on series of the test set.
+ *
+ * <p>
+ * Needs the trained parameters in {@code outputs}, so run it from the project
+ * directory. Every call gets fresh copies of its inputs in a manager that is
+ * closed afterwards, which also frees the forecasts the translator attaches
+ * to them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PredictBenchmark {
+
+    @Param({"1", "32", "128", "512"})
+    private int batchSize;
+
+    private Model model;
+    private Predictor<TimeSeriesData, Forecast> predictor;
+    private NDManager manager;
+    private final List<ForecastBatch> testBatches = new ArrayList<>();
+    private final List<TimeSeriesData> series = new ArrayList<>();
+    private NDManager callManager;
+    private List<TimeSeriesData> inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InMemoryGridStore store = new InMemoryGridStore();
+        GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder(() -> store);
+
+        model = Model.newInstance("deepar");
+        DeepARNetwork network = Forecaster.getDeepARModel(new NegativeBinomialOutput(),
+                Forecaster.getCheckpointCardinality(Paths.get(Forecaster.MODEL_OUTPUT_DIR), builder), false);
+        model.setBlock(network);
+        model.load(Paths.get(Forecaster.MODEL_OUTPUT_DIR));
+        M5Forecast testSet = Forecaster.getDataset(
+                builder, new ArrayList<>(), network.getContextLength(), Dataset.Usage.TEST);
+
+        manager = model.getNDManager().newSubManager();
+        long sequence = 0;
+        for (Batch batch : testSet.getData(manager)) {
+            ForecastBatch prepared = ForecastBatch.prepare(
+                    sequence++, batch, Forecaster.START_TIME, Forecaster.PREDICTION_LENGTH);
+            testBatches.add(prepared);
+            series.addAll(prepared.getInputs());
+            if (series.size() >= batchSize) {
+                break;
+            }
+        }
+        predictor = model.newPredictor(Forecaster.getTranslator());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        predictor.close();
+        for (ForecastBatch batch : testBatches) {
+            batch.close();
+        }
+        manager.close();
+        model.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyInputs() {
+        callManager = manager.newSubManager();
+        inputs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            TimeSeriesData source = series.get(i % series.size());
+            TimeSeriesData input = new TimeSeriesData(10);
+            input.setStartTime(source.getStartTime());
+            input.setField(FieldName.TARGET, copy(source.get(FieldName.TARGET)));
+            input.setField(FieldName.FEAT_STATIC_CAT, copy(source.get(FieldName.FEAT_STATIC_CAT)));
+            inputs.add(input);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeInputs() {
+        callManager.close();
+    }
+
+    @Benchmark
+    public List<Forecast> batchPredict() throws TranslateException {
+        return predictor.batchPredict(inputs);
+    }
+
+    private NDArray copy(NDArray array) {
+        NDArray copy = array.duplicate();
+        copy.attach(callManager);
+        return copy;
+    }
+}
@@ -0,0 +1,93 @@
+package com.mycompany.djl.griddb.benchmarks;
+
+import ai.djl.Model;
+import ai.djl.metric.Metrics;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.DistributionOutput;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.timeseries.transform.TimeSeriesTransform;
+import ai.djl.training.EasyTrain;
+import ai.djl.training.Trainer;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.PrefetchingDataset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one DeepAR training step, forward, backward and parameter update,
+ * on a fixed batch of the training set, with the trainer set up as in
+ * {@link Forecaster}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TrainStepBenchmark {
+
+    @Param({"32", "128"})
+    private int batchSize;
+
+    private Model model;
+    private Trainer trainer;
+    private Batch batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InMemoryGridStore store = new InMemoryGridStore();
+        GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder(() -> store);
+
+        model = Model.newInstance("deepar");
+        DistributionOutput distributionOutput = new NegativeBinomialOutput();
+        DeepARNetwork network
+                = Forecaster.getDeepARModel(distributionOutput, builder.getCardinality(), true);
+        model.setBlock(network);
+        List<TimeSeriesTransform> transformation
+                = Forecaster.getSeededTransformation(network, distributionOutput, model.getNDManager());
+        M5Forecast trainSet = Forecaster.getDataset(
+                builder, transformation, network.getContextLength(), Dataset.Usage.TRAIN);
+
+        trainer = model.newTrainer(Forecaster.newTrainingConfig(distributionOutput));
+        trainer.setMetrics(new Metrics());
+        trainer.initialize(Forecaster.getInputShapes(network));
+
+        try ( PrefetchingDataset loader = new PrefetchingDataset(trainSet, batchSize, true)
+                .optWorkers(1)
+                .optPrefetch(1)
+                .optSeed(Forecaster.SEED)) {
+            batch = loader.getData(model.getNDManager()).iterator().next();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batch.close();
+        trainer.close();
+        model.close();
+    }
+
+    @Benchmark
+    public Trainer trainStep() {
+        EasyTrain.trainBatch(trainer, batch);
+        trainer.step();
+        return trainer;
+    }
+}
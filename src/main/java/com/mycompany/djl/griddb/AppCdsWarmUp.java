@@ -0,0 +1,106 @@
+package com.mycompany.djl.griddb;
+
+import ai.djl.Model;
+import ai.djl.metric.Metrics;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.DistributionOutput;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.timeseries.transform.TimeSeriesTransform;
+import ai.djl.training.EasyTrain;
+import ai.djl.training.Trainer;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.PrefetchingDataset;
+import com.mycompany.djl.griddb.datasets.SeriesTable;
+import com.mycompany.djl.griddb.serving.ForecastRequest;
+import com.mycompany.djl.griddb.serving.ForecastResponse;
+import com.mycompany.djl.griddb.serving.ForecastService;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs the start-up path of the {@code train} or {@code serve} entry point
+ * once, so that a JVM started with {@code -XX:ArchiveClassesAtExit} records
+ * every class it loads into an AppCDS archive: connecting to the GridDB
+ * cluster of {@code griddb.properties}, seeding and reading the bundled data,
+ * the engine and DeepAR network set-up, and either one training step or one
+ * forecast through {@link ForecastService}. Seeding leaves containers that
+ * already hold the bundled data untouched.
+ *
+ * <p>
+ * Run by the {@code appcds} Maven profile. {@code serve} needs a model
+ * trained by {@link Forecaster} in {@code outputs}.
+ */
+public class AppCdsWarmUp {
+
+    private static final Logger LOGGER = Logger.getLogger(AppCdsWarmUp.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String entryPoint = args.length > 0 ? args[0] : "serve";
+        GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+        long start = System.nanoTime();
+        if ("train".equals(entryPoint)) {
+            trainStep(builder);
+        } else {
+            forecast(builder);
+        }
+        LOGGER.info(String.format("Warmed up %s in %d ms", entryPoint,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static void trainStep(GridDBDataset.GridDBBuilder builder) throws Exception {
+        try ( Model model = Model.newInstance("deepar")) {
+            DistributionOutput distributionOutput = new NegativeBinomialOutput();
+            DeepARNetwork network
+                    = Forecaster.getDeepARModel(distributionOutput, builder.getCardinality(), true);
+            model.setBlock(network);
+            List<TimeSeriesTransform> transformation
+                    = Forecaster.getSeededTransformation(network, distributionOutput, model.getNDManager());
+            M5Forecast trainSet = Forecaster.getDataset(
+                    builder, transformation, network.getContextLength(), Dataset.Usage.TRAIN);
+
+            try ( Trainer trainer = model.newTrainer(Forecaster.newTrainingConfig(distributionOutput));  PrefetchingDataset loader
+                    = new PrefetchingDataset(trainSet, Forecaster.BATCH_SIZE, true).optSeed(Forecaster.SEED)) {
+                trainer.setMetrics(new Metrics());
+                trainer.initialize(Forecaster.getInputShapes(network));
+                try ( Batch batch = loader.getData(model.getNDManager()).iterator().next()) {
+                    EasyTrain.trainBatch(trainer, batch);
+                    trainer.step();
+                }
+            }
+        }
+    }
+
+    private static void forecast(GridDBDataset.GridDBBuilder builder) throws Exception {
+        Path modelDir = Paths.get(Forecaster.MODEL_OUTPUT_DIR);
+        if (!Files.isDirectory(modelDir)) {
+            throw new IllegalStateException("No model in " + modelDir.toAbsolutePath() + " to warm up serving with");
+        }
+        try ( Model model = Model.newInstance("deepar")) {
+            DeepARNetwork network = Forecaster.getDeepARModel(new NegativeBinomialOutput(),
+                    Forecaster.getCheckpointCardinality(modelDir, builder), false);
+            model.setBlock(network);
+            model.load(modelDir);
+            builder.optUsage(Dataset.Usage.TEST)
+                    .optLoadMode(GridDBDataset.LoadMode.STREAM)
+                    .setTransformation(new ArrayList<>())
+                    .setContextLength(network.getContextLength())
+                    .setStartTime(Forecaster.START_TIME)
+                    .setMaxWeek(builder.getStoredLastWeek())
+                    .initData();
+            SeriesTable table = builder.getTable();
+            try ( ForecastService service = new ForecastService(
+                    model, Forecaster.getTranslator(), table, Forecaster.START_TIME).start()) {
+                ForecastResponse response = service.forecast(new ForecastRequest(table.getId(0))).get();
+                LOGGER.fine(() -> "Warm-up forecast of " + response.id);
+            }
+        }
+    }
+}
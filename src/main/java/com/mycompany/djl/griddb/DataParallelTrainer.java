@@ -0,0 +1,601 @@
+package com.mycompany.djl.griddb;
+
+import ai.djl.Device;
+import ai.djl.Model;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDScope;
+import ai.djl.ndarray.index.NDIndex;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.nn.Parameter;
+import ai.djl.training.EasyTrain;
+import ai.djl.training.GradientCollector;
+import ai.djl.training.Trainer;
+import ai.djl.training.TrainingConfig;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.training.listener.TrainingListener;
+import ai.djl.translate.TranslateException;
+import ai.djl.util.Pair;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Trains one network in several local worker processes, each on its own
+ * shard of every batch, with the gradients combined across the workers
+ * before every step.
+ *
+ * <p>
+ * The leader, worker 0, is an ordinary {@link Trainer} in the calling
+ * process, with the listeners, evaluators and model that single-worker
+ * training would have. The other workers are JVMs started with the classpath
+ * of this one, each building the same {@link Replica} from
+ * {@link Replica#getArguments()}: its own model, trainer, optimizer and
+ * {@link GradientCollector}, which PyTorch allows only one of per process,
+ * and its own training set, which builds only the worker's shard of every
+ * batch. They start from the leader's parameters and draw the same seeded
+ * batches, so together the shards hold exactly the windows a single worker
+ * would train on, in the same order.
+ *
+ * <p>
+ * The gradients are all-reduced over loopback sockets: every worker sends
+ * the gradient of its mean loss and its number of rows to the leader, which
+ * averages them weighted by the rows, in rank order, and sends the result
+ * back. That is the gradient of the mean loss over the whole batch. Every
+ * optimizer then applies the same gradient to the same parameters, so the
+ * workers stay identical and training follows the single-worker run, up to
+ * the order floating point sums are taken in and the dropout masks drawn.
+ * With {@code numaNodes} set, worker {@code i} is started under
+ * {@code numactl} on node {@code i % numaNodes}; the leader stays where it
+ * was started.
+ *
+ * <p>
+ * The leader's listeners see the leader's shard of every batch, and
+ * validation runs on the leader. The phases of a step are timed as
+ * {@code train.parallel.compute}, {@code train.parallel.allreduce} and
+ * {@code train.parallel.step} in the {@link MetricsRegistry}.
+ */
+public class DataParallelTrainer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(DataParallelTrainer.class.getName());
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final long STOP = 0;
+    private static final int CONNECT_TIMEOUT_MILLIS = 600_000;
+    private static final List<String> FORWARDED_PROPERTIES = Arrays.asList(
+            "ai.djl.default_engine", "ai.djl.pytorch.num_threads", "ai.djl.pytorch.num_interop_threads");
+
+    private final Trainer leader;
+    private final Dataset trainSet;
+    private final List<Parameter> parameters;
+    private final int gradientSize;
+    private final Process[] processes;
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    private final DataOutputStream[] outputs;
+    private final ExecutorService executor;
+
+    /**
+     * What every worker trains, built again in each worker process from the
+     * same arguments.
+     */
+    public interface Replica extends AutoCloseable {
+
+        /**
+         * Returns the arguments of the {@code String[]} constructor that
+         * builds this replica in a worker process.
+         */
+        String[] getArguments();
+
+        Block getBlock();
+
+        /**
+         * Returns the loss and optimizer of the leader, without the
+         * evaluators and listeners, which only the leader runs.
+         */
+        TrainingConfig getConfig();
+
+        Shape[] getInputShapes();
+
+        /**
+         * Returns the training set building shard {@code shard} of
+         * {@code shards} of every batch, as
+         * {@link com.mycompany.djl.griddb.datasets.PrefetchingDataset#optShard}
+         * does: the same batches in every process, cut the same way.
+         */
+        Dataset getTrainSet(int shard, int shards);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * A message to a worker.
+     */
+    private interface Message {
+
+        void writeTo(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Starts the other workers and copies the leader's parameters to them.
+     *
+     * @param leader the initialized trainer whose model is trained
+     * @param workers the number of workers, the leader included
+     * @param replica the replica of the leader, whose class and arguments
+     * build the replicas of the other workers
+     * @param numaNodes the number of NUMA nodes to spread the workers over, 0
+     * to leave their placement to the operating system
+     */
+    public DataParallelTrainer(Trainer leader, int workers, Replica replica, int numaNodes) throws IOException {
+        this.leader = leader;
+        this.trainSet = replica.getTrainSet(shardOf(0, workers), Math.max(1, workers));
+        this.parameters = gradientParameters(leader);
+        this.gradientSize = size(parameters);
+        int count = Math.max(1, workers);
+        processes = new Process[count];
+        sockets = new Socket[count];
+        inputs = new DataInputStream[count];
+        outputs = new DataOutputStream[count];
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(count, r -> {
+            Thread thread = new Thread(r, "data-parallel-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (count == 1) {
+            return;
+        }
+        try ( ServerSocket server = new ServerSocket(0, count, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            for (int rank = 1; rank < count; rank++) {
+                processes[rank] = new ProcessBuilder(workerCommand(
+                        server.getLocalPort(), rank, count, numaNodes, replica)).inheritIO().start();
+            }
+            for (int i = 1; i < count; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                int rank = input.readInt();
+                int size = input.readInt();
+                sockets[rank] = socket;
+                inputs[rank] = input;
+                outputs[rank] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if (size != gradientSize) {
+                    throw new IllegalStateException(String.format(
+                            "Worker %d has %d gradient values, the leader %d", rank, size, gradientSize));
+                }
+            }
+            byte[] initial = toBytes(flatten(allParameters(leader), false));
+            for (int rank = 1; rank < count; rank++) {
+                outputs[rank].write(initial);
+                outputs[rank].flush();
+            }
+            LOGGER.info(String.format("Started %d workers, %d gradient values per step", count - 1, gradientSize));
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    public int getWorkers() {
+        return processes.length;
+    }
+
+    /**
+     * Returns the training set of the leader, whose batches
+     * {@link #trainBatch(Batch)} takes.
+     */
+    public Dataset getTrainSet() {
+        return trainSet;
+    }
+
+    /**
+     * Trains like {@link EasyTrain#fit}, on the training set of the replica.
+     */
+    public void fit(int epochs, Dataset validateSet) throws IOException, TranslateException {
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (Batch batch : leader.iterateDataset(trainSet)) {
+                trainBatch(batch);
+                batch.close();
+            }
+            if (validateSet != null) {
+                EasyTrain.evaluateDataset(leader, validateSet);
+            }
+            leader.notifyListeners(listener -> listener.onEpoch(leader));
+        }
+    }
+
+    /**
+     * Computes the gradients of a batch on the workers, each from its shard,
+     * combines them and steps every worker's optimizer.
+     *
+     * @param batch the next batch of {@link #getTrainSet()}
+     * @return the number of rows the workers trained on
+     */
+    public long trainBatch(Batch batch) {
+        long progress = batch.getProgress();
+        long start = System.nanoTime();
+        List<Callable<float[]>> receive = new ArrayList<>(processes.length - 1);
+        for (int rank = 1; rank < processes.length; rank++) {
+            int worker = rank;
+            send(worker, output -> output.writeLong(progress));
+            receive.add(() -> {
+                float[] gradients = new float[gradientSize + 1];
+                gradients[gradientSize] = inputs[worker].readInt();
+                byte[] bytes = new byte[gradientSize * Float.BYTES];
+                inputs[worker].readFully(bytes);
+                ByteBuffer.wrap(bytes).asFloatBuffer().get(gradients, 0, gradientSize);
+                return gradients;
+            });
+        }
+        NDList[] shard = computeGradients(leader, batch);
+        float[] sum = flatten(parameters, true);
+        METRICS.timer("train.parallel.compute").recordSince(start);
+
+        start = System.nanoTime();
+        long rows = batch.getSize();
+        if (processes.length > 1) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] *= rows;
+            }
+            for (float[] gradients : invokeAll(receive)) {
+                float weight = gradients[gradientSize];
+                rows += (long) weight;
+                if (weight > 0) {
+                    for (int i = 0; i < sum.length; i++) {
+                        sum[i] += weight * gradients[i];
+                    }
+                }
+            }
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] /= rows;
+            }
+            byte[] bytes = toBytes(sum);
+            for (int rank = 1; rank < processes.length; rank++) {
+                send(rank, output -> output.write(bytes));
+            }
+            setGradients(parameters, sum);
+        }
+        METRICS.timer("train.parallel.allreduce").recordSince(start);
+
+        start = System.nanoTime();
+        leader.step();
+        METRICS.timer("train.parallel.step").recordSince(start);
+
+        Device device = batch.getData().head().getDevice();
+        TrainingListener.BatchData batchData = new TrainingListener.BatchData(batch,
+                Collections.singletonMap(device, shard[0]),
+                Collections.singletonMap(device, shard[1]));
+        leader.notifyListeners(listener -> listener.onTrainingBatch(leader, batchData));
+        return rows;
+    }
+
+    /**
+     * Stops the other workers and waits for them to exit; the leader is left
+     * to its owner.
+     */
+    @Override
+    public void close() {
+        for (int rank = 1; rank < processes.length; rank++) {
+            if (outputs[rank] != null) {
+                try {
+                    outputs[rank].writeLong(STOP);
+                    outputs[rank].flush();
+                } catch (IOException ex) {
+                    LOGGER.warning(String.format("Could not stop worker %d: %s", rank, ex));
+                }
+            }
+        }
+        for (int rank = 1; rank < processes.length; rank++) {
+            if (processes[rank] != null) {
+                try {
+                    if (!processes[rank].waitFor(30, TimeUnit.SECONDS)) {
+                        processes[rank].destroyForcibly();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    processes[rank].destroyForcibly();
+                }
+            }
+            if (sockets[rank] != null) {
+                try {
+                    sockets[rank].close();
+                } catch (IOException ex) {
+                    LOGGER.warning(String.format("Could not close the socket of worker %d: %s", rank, ex));
+                }
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a worker: {@code <port> <rank> <workers> <replica class> [replica
+     * arguments...]}. Started by the leader, never by hand.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        int rank = Integer.parseInt(args[1]);
+        int workers = Integer.parseInt(args[2]);
+        Class<? extends Replica> replicaClass = Class.forName(args[3]).asSubclass(Replica.class);
+        String[] replicaArgs = Arrays.copyOfRange(args, 4, args.length);
+        try ( Replica replica = replicaClass.getConstructor(String[].class).newInstance((Object) replicaArgs);
+                 Model model = Model.newInstance("replica-" + rank)) {
+            model.setBlock(replica.getBlock());
+            try ( Trainer trainer = model.newTrainer(replica.getConfig());
+                     Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                trainer.initialize(replica.getInputShapes());
+                socket.setTcpNoDelay(true);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                List<Parameter> parameters = gradientParameters(trainer);
+                int gradientSize = size(parameters);
+                output.writeInt(rank);
+                output.writeInt(gradientSize);
+                output.flush();
+
+                List<Parameter> all = allParameters(trainer);
+                byte[] initial = new byte[size(all) * Float.BYTES];
+                input.readFully(initial);
+                setArrays(all, toFloats(initial), false);
+
+                Dataset trainSet = replica.getTrainSet(shardOf(rank, workers), workers);
+                byte[] bytes = new byte[gradientSize * Float.BYTES];
+                while (true) {
+                    for (Batch batch : trainer.iterateDataset(trainSet)) {
+                        long progress = input.readLong();
+                        if (progress == STOP) {
+                            batch.close();
+                            return;
+                        }
+                        if (progress != batch.getProgress()) {
+                            throw new IllegalStateException(String.format("Worker %d is out of step: batch %d,"
+                                    + " batch %d on the leader", rank, batch.getProgress(), progress));
+                        }
+                        float[] gradients;
+                        if (batch.getSize() == 0) {
+                            gradients = new float[gradientSize];
+                        } else {
+                            computeGradients(trainer, batch);
+                            gradients = flatten(parameters, true);
+                        }
+                        output.writeInt(batch.getSize());
+                        output.write(toBytes(gradients));
+                        output.flush();
+                        input.readFully(bytes);
+                        setGradients(parameters, toFloats(bytes));
+                        trainer.step();
+                        batch.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the forward and backward passes of a worker's shard of a batch and
+     * returns the labels and the predictions.
+     */
+    private static NDList[] computeGradients(Trainer trainer, Batch batch) {
+        NDList data = batch.getData();
+        NDList labels = batch.getLabels();
+        try ( GradientCollector collector = trainer.newGradientCollector()) {
+            NDList predictions = trainer.forward(data, labels);
+            long time = System.nanoTime();
+            collector.backward(trainer.getLoss().evaluate(labels, predictions));
+            trainer.addMetric("backward", time);
+            return new NDList[]{labels, predictions};
+        }
+    }
+
+    /**
+     * Returns the shard of the batches worker {@code rank} trains on: the
+     * leader takes the last one, which is never empty.
+     */
+    private static int shardOf(int rank, int workers) {
+        return Math.max(1, workers) - 1 - rank;
+    }
+
+    private static List<Parameter> allParameters(Trainer trainer) {
+        List<Parameter> all = new ArrayList<>();
+        for (Pair<String, Parameter> pair : trainer.getModel().getBlock().getParameters()) {
+            all.add(pair.getValue());
+        }
+        return all;
+    }
+
+    private static List<Parameter> gradientParameters(Trainer trainer) {
+        List<Parameter> trained = new ArrayList<>();
+        for (Parameter parameter : allParameters(trainer)) {
+            if (parameter.requiresGradient()) {
+                trained.add(parameter);
+            }
+        }
+        return trained;
+    }
+
+    private static int size(List<Parameter> parameters) {
+        long size = 0;
+        for (Parameter parameter : parameters) {
+            size += parameter.getArray().size();
+        }
+        return Math.toIntExact(size);
+    }
+
+    /**
+     * Copies the values, or the gradients, of {@code parameters} into one
+     * array, in order.
+     */
+    private static float[] flatten(List<Parameter> parameters, boolean gradients) {
+        float[] values = new float[size(parameters)];
+        int offset = 0;
+        for (Parameter parameter : parameters) {
+            try ( NDScope scope = new NDScope()) {
+                NDArray array = parameter.getArray();
+                float[] part = (gradients ? array.getGradient() : array).toFloatArray();
+                System.arraycopy(part, 0, values, offset, part.length);
+                offset += part.length;
+            }
+        }
+        return values;
+    }
+
+    private static void setGradients(List<Parameter> parameters, float[] values) {
+        setArrays(parameters, values, true);
+    }
+
+    /**
+     * Copies {@code values}, as laid out by {@link #flatten}, into the values
+     * or the gradients of {@code parameters}.
+     */
+    private static void setArrays(List<Parameter> parameters, float[] values, boolean gradients) {
+        int offset = 0;
+        for (Parameter parameter : parameters) {
+            try ( NDScope scope = new NDScope()) {
+                NDArray array = parameter.getArray();
+                NDArray target = gradients ? array.getGradient() : array;
+                int length = Math.toIntExact(target.size());
+                // copyTo would point the tensor at a buffer freed with the scope
+                target.set(new NDIndex("..."),
+                        array.getManager().create(FloatBuffer.wrap(values, offset, length).slice(), target.getShape()));
+                offset += length;
+            }
+        }
+    }
+
+    private static byte[] toBytes(float[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+        buffer.asFloatBuffer().put(values);
+        return buffer.array();
+    }
+
+    private static float[] toFloats(byte[] bytes) {
+        float[] values = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    private void send(int rank, Message message) {
+        try {
+            message.writeTo(outputs[rank]);
+            outputs[rank].flush();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Worker " + rank + " is gone", ex);
+        }
+    }
+
+    /**
+     * Runs {@code tasks} on the worker threads and returns their results, or
+     * rethrows the first failure.
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        Throwable failure = null;
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException("A worker failed", failure);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the command starting worker {@code rank}: this JVM's java, JVM
+     * options, engine settings and classpath, under {@code numactl} when the
+     * workers are spread over NUMA nodes.
+     */
+    private static List<String> workerCommand(int port, int rank, int workers, int numaNodes, Replica replica) {
+        List<String> command = new ArrayList<>();
+        if (numaNodes > 0) {
+            int node = rank % numaNodes;
+            command.add("numactl");
+            command.add("--cpunodebind=" + node);
+            command.add("--membind=" + node);
+        }
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // a debugger or agent port cannot be shared with the leader
+            if (!option.startsWith("-agentlib") && !option.startsWith("-javaagent")) {
+                command.add(option);
+            }
+        }
+        for (String property : FORWARDED_PROPERTIES) {
+            String value = System.getProperty(property);
+            if (value != null) {
+                command.add("-D" + property + "=" + value);
+            }
+        }
+        command.add("-cp");
+        command.add(classPath());
+        command.add(DataParallelTrainer.class.getName());
+        command.add(Integer.toString(port));
+        command.add(Integer.toString(rank));
+        command.add(Integer.toString(workers));
+        command.add(replica.getClass().getName());
+        command.addAll(Arrays.asList(replica.getArguments()));
+        return command;
+    }
+
+    /**
+     * Returns the classpath of this JVM, with the entries of the class
+     * loaders in between, such as the one {@code mvn exec:java} runs the
+     * project in.
+     */
+    private static String classPath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (ClassLoader loader = DataParallelTrainer.class.getClassLoader(); loader != null;
+                loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        entries.add(new File(url.getPath()).getPath());
+                    }
+                }
+            }
+        }
+        entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+        return String.join(File.pathSeparator, entries);
+    }
+
+}
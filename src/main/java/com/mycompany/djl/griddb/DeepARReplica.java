@@ -0,0 +1,117 @@
+package com.mycompany.djl.griddb;
+
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.DistributionOutput;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.training.TrainingConfig;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.PrefetchingDataset;
+import java.util.List;
+
+/**
+ * The DeepAR training network and training set of {@link Forecaster}, as
+ * every worker of a {@link DataParallelTrainer} builds them: the network of
+ * {@link Forecaster#getDeepARModel}, optionally with another dropout rate,
+ * and the training container read through {@link Forecaster#getDataset} in
+ * batches drawn with {@link Forecaster#SEED}, of which the worker builds its
+ * shard on its share of the cores.
+ */
+public class DeepARReplica implements DataParallelTrainer.Replica {
+
+    private final String[] arguments;
+    private final DistributionOutput distributionOutput = new NegativeBinomialOutput();
+    private final List<Integer> cardinality;
+    private final DeepARNetwork network;
+    private final int batchSize;
+    private final NDManager manager;
+    private final M5Forecast data;
+    private PrefetchingDataset trainSet;
+
+    /**
+     * @param batchSize the windows per batch, across all workers
+     * @param dropRate the dropout rate, or a negative value for the
+     * network's default
+     */
+    public DeepARReplica(int batchSize, float dropRate) throws Exception {
+        this(new String[]{Integer.toString(batchSize), Float.toString(dropRate)});
+    }
+
+    /**
+     * @param args the batch size and the dropout rate, as given to
+     * {@link #DeepARReplica(int, float)}
+     */
+    public DeepARReplica(String[] args) throws Exception {
+        this.arguments = args.clone();
+        batchSize = Integer.parseInt(args[0]);
+        float dropRate = Float.parseFloat(args[1]);
+        GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+        cardinality = builder.getCardinality();
+        DeepARNetwork.Builder networkBuilder = Forecaster.newDeepARBuilder(distributionOutput, cardinality);
+        if (dropRate >= 0) {
+            networkBuilder.optDropRate(dropRate);
+        }
+        network = networkBuilder.buildTrainingNetwork();
+        manager = NDManager.newBaseManager();
+        try {
+            data = Forecaster.getDataset(builder,
+                    Forecaster.getSeededTransformation(network, distributionOutput, manager),
+                    network.getContextLength(), Dataset.Usage.TRAIN);
+        } catch (Exception ex) {
+            manager.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public String[] getArguments() {
+        return arguments.clone();
+    }
+
+    @Override
+    public Block getBlock() {
+        return network;
+    }
+
+    @Override
+    public TrainingConfig getConfig() {
+        return Forecaster.newReplicaConfig(distributionOutput);
+    }
+
+    @Override
+    public Shape[] getInputShapes() {
+        return Forecaster.getInputShapes(network);
+    }
+
+    @Override
+    public synchronized Dataset getTrainSet(int shard, int shards) {
+        if (trainSet != null) {
+            trainSet.close();
+        }
+        trainSet = new PrefetchingDataset(data, batchSize, true)
+                .optSeed(Forecaster.SEED)
+                .optShard(shard, shards)
+                .optWorkers(Math.max(1, Runtime.getRuntime().availableProcessors() / shards));
+        return trainSet;
+    }
+
+    public DistributionOutput getDistributionOutput() {
+        return distributionOutput;
+    }
+
+    public List<Integer> getCardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (trainSet != null) {
+            trainSet.close();
+        }
+        manager.close();
+    }
+}
@@ -2,15 +2,10 @@ package com.mycompany.djl.griddb;
 
 import ai.djl.Model;
 import ai.djl.ModelException;
-import ai.djl.inference.Predictor;
 import ai.djl.metric.Metrics;
-import ai.djl.ndarray.NDArray;
-import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.Parameter;
-import ai.djl.timeseries.Forecast;
-import ai.djl.timeseries.TimeSeriesData;
 import ai.djl.timeseries.dataset.FieldName;
 import ai.djl.timeseries.dataset.M5Forecast;
 import ai.djl.timeseries.distribution.DistributionLoss;
@@ -19,13 +14,15 @@ import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
 import ai.djl.timeseries.evaluator.Rmsse;
 import ai.djl.timeseries.model.deepar.DeepARNetwork;
 import ai.djl.timeseries.timefeature.TimeFeature;
+import ai.djl.timeseries.transform.InstanceSampler;
+import ai.djl.timeseries.transform.PredictionSplitSampler;
 import ai.djl.timeseries.transform.TimeSeriesTransform;
+import ai.djl.timeseries.transform.split.InstanceSplit;
 import ai.djl.timeseries.translator.DeepARTranslator;
 import ai.djl.training.DefaultTrainingConfig;
 import ai.djl.training.EasyTrain;
 import ai.djl.training.Trainer;
 import ai.djl.training.TrainingResult;
-import ai.djl.training.dataset.Batch;
 import ai.djl.training.dataset.Dataset;
 import ai.djl.training.initializer.XavierInitializer;
 import ai.djl.training.listener.SaveModelTrainingListener;
@@ -33,16 +30,34 @@ import ai.djl.training.listener.TrainingListener;
 import ai.djl.training.util.ProgressBar;
 import ai.djl.translate.TranslateException;
 import ai.djl.util.Progress;
+import ai.djl.util.Utils;
 import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.PrefetchingDataset;
+import com.mycompany.djl.griddb.datasets.SampledWindowDataset;
+import com.mycompany.djl.griddb.datasets.SeriesTable;
+import com.mycompany.djl.griddb.inference.DeepARArtifact;
+import com.mycompany.djl.griddb.inference.ForecastCache;
+import com.mycompany.djl.griddb.inference.ForecastWriter;
+import com.mycompany.djl.griddb.inference.ParallelInference;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import com.mycompany.djl.griddb.metrics.MetricsServer;
+import com.mycompany.djl.griddb.metrics.MetricsTrainingListener;
 import com.toshiba.mwcloud.gs.GSException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -51,83 +66,131 @@ import java.util.logging.Logger;
  */
 public class Forecaster {
 
-    final static String FREQ = "W";
-    final static int PREDICTION_LENGTH = 4;
-    final static LocalDateTime START_TIME = LocalDateTime.parse("2011-01-29T00:00");
-    final static String MODEL_OUTPUT_DIR = "outputs";
+    public final static String FREQ = "W";
+    public final static int PREDICTION_LENGTH = 4;
+    public final static LocalDateTime START_TIME = LocalDateTime.parse("2011-01-29T00:00");
+    public final static String MODEL_OUTPUT_DIR = "outputs";
+    public final static String EXPORT_DIR = "export";
+    public final static String METRICS_DIR = "metrics";
+    public final static String CHECKPOINT_PROPERTIES = "deepar.properties";
+    public final static int BATCH_SIZE = 32;
+    public final static long SEED = 42;
 
     public static void main(String[] args) throws Exception {
         Logger.getAnonymousLogger().info("Starting...");        
-        startTraining();
-        final Map<String, Float> result = predict();
-        for (Map.Entry<String, Float> entry : result.entrySet()) {
-            Logger.getAnonymousLogger().info(String.format("metric: %s:\t%.2f", entry.getKey(), entry.getValue()));
+        String command = args.length > 0 ? args[0] : "train";
+        try ( MetricsServer metricsServer = MetricsServer.startFromProperty()) {
+            if ("finetune".equals(command)) {
+                fineTune(args.length > 1 ? Integer.parseInt(args[1]) : 2);
+            } else if ("sampled".equals(command)) {
+                startSampledTraining(args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+            } else if ("parallel".equals(command)) {
+                startParallelTraining(args.length > 1 ? Integer.parseInt(args[1]) : 2,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 0);
+            } else if ("export".equals(command)) {
+                exportModel();
+                return;
+            } else if (!"predict".equals(command)) {
+                startTraining();
+            }
+            final Map<String, Float> result = predict();
+            for (Map.Entry<String, Float> entry : result.entrySet()) {
+                Logger.getAnonymousLogger().info(String.format("metric: %s:\t%.2f", entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            dumpMetrics(command);
+        }
+    }
+
+    /**
+     * Writes the {@link MetricsRegistry} of the run to
+     * {@code outputs/metrics/<command>-<time>.json}.
+     */
+    private static void dumpMetrics(String command) {
+        Path file = Paths.get(MODEL_OUTPUT_DIR, METRICS_DIR, String.format("%s-%s.json",
+                command, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))));
+        try {
+            MetricsRegistry.getDefault().dump(file);
+            Logger.getAnonymousLogger().info("Metrics written to " + file);
+        } catch (IOException ex) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Could not write " + file, ex);
         }
     }
 
     public static Map<String, Float> predict()
             throws IOException, TranslateException, ModelException, Exception {
         try ( Model model = Model.newInstance("deepar")) {
-            DeepARNetwork predictionNetwork = getDeepARModel(new NegativeBinomialOutput(), false);
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            DeepARNetwork predictionNetwork = getDeepARModel(new NegativeBinomialOutput(),
+                    getCheckpointCardinality(Paths.get(MODEL_OUTPUT_DIR), builder), false);
             model.setBlock(predictionNetwork);
             model.load(Paths.get(MODEL_OUTPUT_DIR));
 
             M5Forecast testSet
                     = getDataset(
+                            builder,
                             new ArrayList<>(),
                             predictionNetwork.getContextLength(),
                             Dataset.Usage.TEST);
 
-            Map<String, Object> arguments = new ConcurrentHashMap<>();
-            arguments.put("prediction_length", PREDICTION_LENGTH);
-            arguments.put("freq", FREQ);
-            arguments.put("use_" + FieldName.FEAT_DYNAMIC_REAL.name().toLowerCase(), false);
-            arguments.put("use_" + FieldName.FEAT_STATIC_CAT.name().toLowerCase(), true);
-            arguments.put("use_" + FieldName.FEAT_STATIC_REAL.name().toLowerCase(), false);
-            DeepARTranslator translator = DeepARTranslator.builder(arguments).build();
+            DeepARTranslator translator = getTranslator();
 
             M5ForecastingEvaluator evaluator
                     = new M5ForecastingEvaluator(0.5f, 0.67f, 0.95f, 0.99f);
             Progress progress = new ProgressBar();
             progress.reset("Inferring", testSet.size());
-            try ( Predictor<TimeSeriesData, Forecast> predictor = model.newPredictor(translator)) {
-                for (Batch batch : testSet.getData(model.getNDManager().newSubManager())) {
-                    NDList data = batch.getData();
-                    NDArray target = data.head();
-                    NDArray featStaticCat = data.get(1);
-
-                    NDArray gt = target.get(":, {}:", -PREDICTION_LENGTH);
-                    NDArray pastTarget = target.get(":, :{}", -PREDICTION_LENGTH);
-
-                    NDList gtSplit = gt.split(batch.getSize());
-                    NDList pastTargetSplit = pastTarget.split(batch.getSize());
-                    NDList featStaticCatSplit = featStaticCat.split(batch.getSize());
-
-                    List<TimeSeriesData> batchInput = new ArrayList<>(batch.getSize());
-                    for (int i = 0; i < batch.getSize(); i++) {
-                        TimeSeriesData input = new TimeSeriesData(10);
-                        input.setStartTime(START_TIME);
-                        input.setField(FieldName.TARGET, pastTargetSplit.get(i).squeeze(0));
-                        input.setField(
-                                FieldName.FEAT_STATIC_CAT, featStaticCatSplit.get(i).squeeze(0));
-                        batchInput.add(input);
-                    }
-                    List<Forecast> forecasts = predictor.batchPredict(batchInput);
-                    for (int i = 0; i < forecasts.size(); i++) {
-                        evaluator.aggregateMetrics(
-                                evaluator.getMetricsPerTs(
-                                        gtSplit.get(i).squeeze(0),
-                                        pastTargetSplit.get(i).squeeze(0),
-                                        forecasts.get(i)));
-                    }
-                    progress.increment(batch.getSize());
-                    batch.close();
+            SeriesTable table = builder.getTable();
+            HierarchicalAggregator aggregator = new HierarchicalAggregator(table, PREDICTION_LENGTH);
+            String checkpoint = ForecastCache.checkpointOf(Paths.get(MODEL_OUTPUT_DIR), "deepar");
+            int lastWeek = table.getLastWeek() - PREDICTION_LENGTH;
+            try ( ForecastCache cache = ForecastCache.fromProperties(
+                    GridDBDataset.getStorePool(), evaluator.getQuantiles());  ForecastWriter writer = new ForecastWriter(
+                            GridDBDataset.getStorePool(), START_TIME, checkpoint, evaluator.getQuantiles())) {
+                ParallelInference inference
+                        = new ParallelInference(model, translator, START_TIME, PREDICTION_LENGTH)
+                                .optProgress(progress)
+                                .optCache(cache, checkpoint, table::getId, lastWeek)
+                                .optWriter(writer, table::getId, lastWeek)
+                                .optAggregator(aggregator)
+                                .optScopedMemory(true);
+                Map<String, Float> metrics;
+                try ( NDManager inferenceManager = model.getNDManager().newSubManager()) {
+                    metrics = inference.run(testSet, inferenceManager, evaluator);
+                }
+                writer.close();
+                Logger.getAnonymousLogger().info(inference.getStats().toString());
+                Logger.getAnonymousLogger().info("Memory: " + inference.getLeakDetector());
+                if (cache != null) {
+                    Logger.getAnonymousLogger().info("Forecast cache: " + cache);
                 }
-                return evaluator.computeTotalMetrics();
+                Logger.getAnonymousLogger().info("Forecasts: " + writer);
+                metrics.putAll(aggregator.computeMetrics());
+                return metrics;
             }
         }
     }
 
+    /**
+     * Packages the last checkpoint in {@code outputs/export} as a
+     * {@link DeepARArtifact}, to be served on any engine.
+     */
+    public static String exportModel() throws Exception {
+        GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+        Path modelDir = Paths.get(MODEL_OUTPUT_DIR);
+        return DeepARArtifact.export(modelDir, "deepar", getCheckpointCardinality(modelDir, builder),
+                modelDir.resolve(EXPORT_DIR));
+    }
+
+    public static DeepARTranslator getTranslator() {
+        Map<String, Object> arguments = new ConcurrentHashMap<>();
+        arguments.put("prediction_length", PREDICTION_LENGTH);
+        arguments.put("freq", FREQ);
+        arguments.put("use_" + FieldName.FEAT_DYNAMIC_REAL.name().toLowerCase(), false);
+        arguments.put("use_" + FieldName.FEAT_STATIC_CAT.name().toLowerCase(), true);
+        arguments.put("use_" + FieldName.FEAT_STATIC_REAL.name().toLowerCase(), false);
+        return DeepARTranslator.builder(arguments).build();
+    }
+
     private static void startTraining() throws IOException, TranslateException, Exception {
 
         try ( Model model = Model.newInstance("deepar")) {
@@ -136,48 +199,256 @@ public class Forecaster {
             DefaultTrainingConfig config = setupTrainingConfig(distributionOutput);
 
             NDManager manager = model.getNDManager();
-            DeepARNetwork trainingNetwork = getDeepARModel(distributionOutput, true);
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            List<Integer> cardinality = builder.getCardinality();
+            DeepARNetwork trainingNetwork = getDeepARModel(distributionOutput, cardinality, true);
             model.setBlock(trainingNetwork);
 
             List<TimeSeriesTransform> trainingTransformation
-                    = trainingNetwork.createTrainingTransformation(manager);
+                    = getSeededTransformation(trainingNetwork, distributionOutput, manager);
             int contextLength = trainingNetwork.getContextLength();
 
             M5Forecast trainSet
-                    = getDataset(trainingTransformation, contextLength, Dataset.Usage.TRAIN);
+                    = getDataset(builder, trainingTransformation, contextLength, Dataset.Usage.TRAIN);
+
+            try ( Trainer trainer = model.newTrainer(config);  PrefetchingDataset trainLoader
+                    = new PrefetchingDataset(trainSet, BATCH_SIZE, true).optSeed(SEED)) {
+                trainer.setMetrics(new Metrics());
+
+                trainer.initialize(getInputShapes(trainingNetwork));
+                saveCheckpointCardinality(Paths.get(MODEL_OUTPUT_DIR), cardinality);
+                int epoch = 10;
+                EasyTrain.fit(trainer, epoch, trainLoader, null);
+            }
+        }
+    }
+
+    /**
+     * Trains like {@link #startTraining()}, with every batch split across
+     * {@code workers} processes, each training a replica of the network,
+     * whose gradients are averaged before every step
+     * ({@link DataParallelTrainer}).
+     *
+     * @param numaNodes the NUMA nodes to spread the workers over, 0 to leave
+     * their placement to the operating system
+     */
+    private static void startParallelTraining(int workers, int numaNodes) throws Exception {
+        try ( Model model = Model.newInstance("deepar");  DeepARReplica replica = new DeepARReplica(BATCH_SIZE, -1)) {
+            DefaultTrainingConfig config = setupTrainingConfig(replica.getDistributionOutput());
+            model.setBlock(replica.getBlock());
 
             try ( Trainer trainer = model.newTrainer(config)) {
                 trainer.setMetrics(new Metrics());
 
-                int historyLength = trainingNetwork.getHistoryLength();
-                Shape[] inputShapes = new Shape[9];
-                // (N, num_cardinality)
-                inputShapes[0] = new Shape(1, 5);
-                // (N, num_real) if use_feat_stat_real else (N, 1)
-                inputShapes[1] = new Shape(1, 1);
-                // (N, history_length, num_time_feat + num_age_feat)
-                inputShapes[2]
-                        = new Shape(
-                                1,
-                                historyLength,
-                                TimeFeature.timeFeaturesFromFreqStr(FREQ).size() + 1);
-                inputShapes[3] = new Shape(1, historyLength);
-                inputShapes[4] = new Shape(1, historyLength);
-                inputShapes[5] = new Shape(1, historyLength);
-                inputShapes[6]
-                        = new Shape(
-                                1,
-                                PREDICTION_LENGTH,
-                                TimeFeature.timeFeaturesFromFreqStr(FREQ).size() + 1);
-                inputShapes[7] = new Shape(1, PREDICTION_LENGTH);
-                inputShapes[8] = new Shape(1, PREDICTION_LENGTH);
-                trainer.initialize(inputShapes);
+                trainer.initialize(replica.getInputShapes());
+                saveCheckpointCardinality(Paths.get(MODEL_OUTPUT_DIR), replica.getCardinality());
+                try ( DataParallelTrainer parallelTrainer
+                        = new DataParallelTrainer(trainer, workers, replica, numaNodes)) {
+                    int epoch = 10;
+                    parallelTrainer.fit(epoch, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Trains like {@link #startTraining()}, but on batches read from GridDB a
+     * window at a time ({@link GridDBDataset.GridDBBuilder#buildSampled})
+     * instead of the whole table, for data that does not fit the client.
+     */
+    private static void startSampledTraining(int batchesPerEpoch) throws Exception {
+        try ( Model model = Model.newInstance("deepar")) {
+            DistributionOutput distributionOutput = new NegativeBinomialOutput();
+            DefaultTrainingConfig config = setupTrainingConfig(distributionOutput);
+
+            NDManager manager = model.getNDManager();
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            List<Integer> cardinality = builder.getCardinality();
+            DeepARNetwork trainingNetwork = getDeepARModel(distributionOutput, cardinality, true);
+            model.setBlock(trainingNetwork);
+
+            builder.optUsage(Dataset.Usage.TRAIN)
+                    .optLoadMode(GridDBDataset.LoadMode.SAMPLED)
+                    .optWindowLength(trainingNetwork.getHistoryLength() + PREDICTION_LENGTH)
+                    .setTransformation(trainingNetwork.createTrainingTransformation(manager))
+                    .setContextLength(trainingNetwork.getContextLength())
+                    .setSize(BATCH_SIZE)
+                    .setStartTime(START_TIME)
+                    .setRandom(true)
+                    .setMaxWeek(273);
+
+            try ( Trainer trainer = model.newTrainer(config);  SampledWindowDataset trainSet = builder
+                    .buildSampled(GridDBDataset.connectToGridDBSql(), batchesPerEpoch)
+                    .optSeed(SEED)) {
+                trainSet.prepare(new ProgressBar());
+                trainer.setMetrics(new Metrics());
+
+                trainer.initialize(getInputShapes(trainingNetwork));
+                saveCheckpointCardinality(Paths.get(MODEL_OUTPUT_DIR), cardinality);
                 int epoch = 10;
                 EasyTrain.fit(trainer, epoch, trainSet, null);
             }
         }
     }
 
+    /**
+     * Continues training the last model saved in {@link #MODEL_OUTPUT_DIR} on
+     * the latest weeks only ({@link #getDeltaDataset}), instead of training
+     * from scratch on the whole history. The result is saved as the next
+     * epoch, so {@link #predict()} picks it up.
+     */
+    public static void fineTune(int epochs) throws IOException, TranslateException, Exception {
+        try ( Model model = Model.newInstance("deepar")) {
+            DistributionOutput distributionOutput = new NegativeBinomialOutput();
+            NDManager manager = model.getNDManager();
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            Path modelDir = Paths.get(MODEL_OUTPUT_DIR);
+            DeepARNetwork trainingNetwork
+                    = getDeepARModel(distributionOutput, getCheckpointCardinality(modelDir, builder), true);
+            model.setBlock(trainingNetwork);
+            model.load(modelDir, "deepar");
+            int lastEpoch = Utils.getCurrentEpoch(modelDir, "deepar");
+
+            M5Forecast deltaSet = getDeltaDataset(builder, trainingNetwork, distributionOutput, manager);
+            DefaultTrainingConfig config = newTrainingConfig(distributionOutput)
+                    .addTrainingListeners(TrainingListener.Defaults.logging(MODEL_OUTPUT_DIR));
+
+            try ( Trainer trainer = model.newTrainer(config);  PrefetchingDataset trainLoader
+                    = new PrefetchingDataset(deltaSet, BATCH_SIZE, true).optSeed(SEED)) {
+                trainer.setMetrics(new Metrics());
+                // only parameters missing from the loaded model are initialized
+                trainer.initialize(getInputShapes(trainingNetwork));
+                EasyTrain.fit(trainer, epochs, trainLoader, null);
+
+                model.setProperty("Epoch", String.valueOf(lastEpoch + epochs));
+                model.setProperty("Loss", String.format("%.5f", trainer.getTrainingResult().getTrainLoss()));
+                model.save(modelDir, "deepar");
+            }
+        }
+    }
+
+    /**
+     * Returns a training dataset of the newest windows only: every series
+     * yields a single window whose forecast part ends at the last stored week,
+     * so every appended week, up to {@link #PREDICTION_LENGTH} of them, is a
+     * training target. Only the weeks those windows span are read, through
+     * the {@code TIME_SERIES} load mode, so the cost does not grow with the
+     * length of the history.
+     */
+    public static M5Forecast getDeltaDataset(GridDBDataset.GridDBBuilder builder, DeepARNetwork trainingNetwork,
+            DistributionOutput distributionOutput, NDManager manager) throws Exception {
+        builder.optUsage(Dataset.Usage.TRAIN);
+        int lastWeek = builder.getStoredLastWeek();
+        builder.optLoadMode(GridDBDataset.LoadMode.TIME_SERIES)
+                .optCacheDir(Paths.get(MODEL_OUTPUT_DIR, "cache"))
+                .optWindowLength(trainingNetwork.getHistoryLength() + PREDICTION_LENGTH)
+                .setTransformation(getDeltaTransformation(trainingNetwork, distributionOutput, manager))
+                .setContextLength(trainingNetwork.getContextLength())
+                .setSize(BATCH_SIZE)
+                .setStartTime(START_TIME)
+                .setRandom(true)
+                .setMaxWeek(lastWeek)
+                .initData();
+
+        M5Forecast m5Forecast = builder.build();
+
+        m5Forecast.prepare(new ProgressBar());
+        return m5Forecast;
+    }
+
+    /**
+     * Returns the training transformation with the random choice of where a
+     * window ends made reproducible under {@link PrefetchingDataset#optSeed}.
+     */
+    public static List<TimeSeriesTransform> getSeededTransformation(DeepARNetwork trainingNetwork,
+            DistributionOutput distributionOutput, NDManager manager) {
+        return withSampler(trainingNetwork, distributionOutput, manager,
+                PrefetchingDataset.seededSampler(PREDICTION_LENGTH));
+    }
+
+    /**
+     * Returns the training transformation with the random choice of where a
+     * window ends replaced by the latest possible point.
+     */
+    public static List<TimeSeriesTransform> getDeltaTransformation(DeepARNetwork trainingNetwork,
+            DistributionOutput distributionOutput, NDManager manager) {
+        return withSampler(trainingNetwork, distributionOutput, manager,
+                PredictionSplitSampler.newValidationSplitSampler(PREDICTION_LENGTH));
+    }
+
+    private static List<TimeSeriesTransform> withSampler(DeepARNetwork trainingNetwork,
+            DistributionOutput distributionOutput, NDManager manager, InstanceSampler sampler) {
+        List<TimeSeriesTransform> transformation
+                = new ArrayList<>(trainingNetwork.createTrainingTransformation(manager));
+        for (int i = 0; i < transformation.size(); i++) {
+            if (transformation.get(i) instanceof InstanceSplit) {
+                transformation.set(i, new InstanceSplit(
+                        FieldName.TARGET,
+                        FieldName.IS_PAD,
+                        FieldName.START,
+                        FieldName.FORECAST_START,
+                        sampler,
+                        trainingNetwork.getHistoryLength(),
+                        PREDICTION_LENGTH,
+                        new FieldName[]{FieldName.FEAT_TIME, FieldName.OBSERVED_VALUES},
+                        distributionOutput.getValueInSupport()));
+            }
+        }
+        return transformation;
+    }
+
+    /**
+     * Returns the shapes of the training network inputs for a single series,
+     * used to initialize the trainer.
+     */
+    public static Shape[] getInputShapes(DeepARNetwork trainingNetwork) {
+        int historyLength = trainingNetwork.getHistoryLength();
+        Shape[] inputShapes = new Shape[9];
+        // (N, num_cardinality)
+        inputShapes[0] = new Shape(1, 5);
+        // (N, num_real) if use_feat_stat_real else (N, 1)
+        inputShapes[1] = new Shape(1, 1);
+        // (N, history_length, num_time_feat + num_age_feat)
+        inputShapes[2]
+                = new Shape(
+                        1,
+                        historyLength,
+                        TimeFeature.timeFeaturesFromFreqStr(FREQ).size() + 1);
+        inputShapes[3] = new Shape(1, historyLength);
+        inputShapes[4] = new Shape(1, historyLength);
+        inputShapes[5] = new Shape(1, historyLength);
+        inputShapes[6]
+                = new Shape(
+                        1,
+                        PREDICTION_LENGTH,
+                        TimeFeature.timeFeaturesFromFreqStr(FREQ).size() + 1);
+        inputShapes[7] = new Shape(1, PREDICTION_LENGTH);
+        inputShapes[8] = new Shape(1, PREDICTION_LENGTH);
+        return inputShapes;
+    }
+
+    /**
+     * Returns the loss, evaluator and initializer used for training, and the
+     * listener timing its steps into the {@link MetricsRegistry}, without the
+     * listeners that log and save the model.
+     */
+    public static DefaultTrainingConfig newTrainingConfig(DistributionOutput distributionOutput) {
+        return new DefaultTrainingConfig(new DistributionLoss("Loss", distributionOutput))
+                .addEvaluator(new Rmsse(distributionOutput))
+                .optInitializer(new XavierInitializer(), Parameter.Type.WEIGHT)
+                .addTrainingListeners(new MetricsTrainingListener(MetricsRegistry.getDefault()));
+    }
+
+    /**
+     * Returns the configuration of the replicas the workers of a
+     * {@link DataParallelTrainer} train: the loss and optimizer of
+     * {@link #newTrainingConfig}, without the evaluators and listeners, which
+     * only the leader runs.
+     */
+    public static DefaultTrainingConfig newReplicaConfig(DistributionOutput distributionOutput) {
+        return new DefaultTrainingConfig(new DistributionLoss("Loss", distributionOutput));
+    }
+
     private static DefaultTrainingConfig setupTrainingConfig(DistributionOutput distributionOutput) {
 
         SaveModelTrainingListener listener = new SaveModelTrainingListener(MODEL_OUTPUT_DIR);
@@ -185,52 +456,118 @@ public class Forecaster {
                 trainer -> {
                     TrainingResult result = trainer.getTrainingResult();
                     Model model = trainer.getModel();
-                    float rmsse = result.getValidateEvaluation("RMSSE");
-                    model.setProperty("RMSSE", String.format("%.5f", rmsse));
-                    model.setProperty("Loss", String.format("%.5f", result.getValidateLoss()));
+                    Float rmsse = result.getValidateEvaluation("RMSSE");
+                    if (rmsse != null) {
+                        model.setProperty("RMSSE", String.format("%.5f", rmsse));
+                        model.setProperty("Loss", String.format("%.5f", result.getValidateLoss()));
+                    } else {
+                        // trained without a validation set
+                        model.setProperty("Loss", String.format("%.5f", result.getTrainLoss()));
+                    }
                 });
 
-        return new DefaultTrainingConfig(new DistributionLoss("Loss", distributionOutput))
-                .addEvaluator(new Rmsse(distributionOutput))
-                .optInitializer(new XavierInitializer(), Parameter.Type.WEIGHT)
+        return newTrainingConfig(distributionOutput)
                 .addTrainingListeners(TrainingListener.Defaults.logging(MODEL_OUTPUT_DIR))
                 .addTrainingListeners(listener);
     }
 
-    private static DeepARNetwork getDeepARModel(DistributionOutput distributionOutput, boolean training) {
-
+    /**
+     * Returns the category cardinalities the checkpoints in {@code modelDir}
+     * were trained with, as recorded by {@link #saveCheckpointCardinality},
+     * and those of the stored dictionary when none are recorded. The
+     * embeddings of a checkpoint are sized by them, so a network built from
+     * the stored dictionary alone would not load a checkpoint trained on
+     * other data.
+     *
+     * @throws IOException when the stored dictionary has more labels than the
+     * checkpoint has embeddings for
+     */
+    public static List<Integer> getCheckpointCardinality(Path modelDir, GridDBDataset.GridDBBuilder builder)
+            throws IOException, GSException {
+        List<Integer> stored = builder.getCardinality();
+        Path file = modelDir.resolve(CHECKPOINT_PROPERTIES);
+        if (!Files.isRegularFile(file)) {
+            return stored;
+        }
+        Properties properties = new Properties();
+        try ( InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        }
         List<Integer> cardinality = new ArrayList<>();
-        cardinality.add(3);
-        cardinality.add(10);
-        cardinality.add(3);
-        cardinality.add(7);
-        cardinality.add(3049);
+        for (String part : properties.getProperty("cardinality", "").split(",")) {
+            cardinality.add(Integer.parseInt(part.trim()));
+        }
+        if (cardinality.size() != stored.size()) {
+            throw new IOException(String.format("%s holds %d cardinalities, the store has %d categories",
+                    file, cardinality.size(), stored.size()));
+        }
+        for (int i = 0; i < cardinality.size(); i++) {
+            if (stored.get(i) > cardinality.get(i)) {
+                throw new IOException(String.format("The checkpoints in %s embed %d labels of %s, the store has %d;"
+                        + " retrain", modelDir, cardinality.get(i), GridDBDataset.STATIC_CATEGORIES.get(i),
+                        stored.get(i)));
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Records the category cardinalities of the checkpoints training saves in
+     * {@code modelDir}, for {@link #getCheckpointCardinality}.
+     */
+    public static void saveCheckpointCardinality(Path modelDir, List<Integer> cardinality) throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (Integer each : cardinality) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(each);
+        }
+        Properties properties = new Properties();
+        properties.setProperty("cardinality", value.toString());
+        Files.createDirectories(modelDir);
+        try ( OutputStream os = Files.newOutputStream(modelDir.resolve(CHECKPOINT_PROPERTIES))) {
+            properties.store(os, "Category cardinalities of the deepar checkpoints");
+        }
+    }
 
-        DeepARNetwork.Builder builder = DeepARNetwork.builder()
+    public static DeepARNetwork getDeepARModel(
+            DistributionOutput distributionOutput, List<Integer> cardinality, boolean training) {
+        DeepARNetwork.Builder builder = newDeepARBuilder(distributionOutput, cardinality);
+        return training ? builder.buildTrainingNetwork() : builder.buildPredictionNetwork();
+    }
+
+    /**
+     * Returns the DeepAR builder of this project's data, with the network's
+     * own defaults for everything else.
+     */
+    public static DeepARNetwork.Builder newDeepARBuilder(
+            DistributionOutput distributionOutput, List<Integer> cardinality) {
+        // cardinality of state_id, store_id, cat_id, dept_id and item_id
+        return DeepARNetwork.builder()
                 .setCardinality(cardinality)
                 .setFreq(FREQ)
                 .setPredictionLength(PREDICTION_LENGTH)
                 .optDistrOutput(distributionOutput)
                 .optUseFeatStaticCat(true);
-
-        return training ? builder.buildTrainingNetwork() : builder.buildPredictionNetwork();
     }
 
-    private static M5Forecast getDataset(
+    public static M5Forecast getDataset(GridDBDataset.GridDBBuilder builder,
             List<TimeSeriesTransform> transformation, int contextLength, Dataset.Usage usage)
             throws IOException, GSException, FileNotFoundException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException, Exception {
         // In order to create a TimeSeriesDataset, you must specify the transformation of the data
         // preprocessing
-        GridDBDataset.GridDBBuilder builder
-                = GridDBDataset.gridDBBuilder()
-                        .optUsage(usage)
-                        .setTransformation(transformation)
-                        .setContextLength(contextLength)
-                        .setSize(32)
-                        .setStartTime(START_TIME)
-                        .setRandom(usage == Dataset.Usage.TRAIN)
-                        .setMaxWeek(usage == Dataset.Usage.TRAIN ? 273 : 277)
-                        .initData();
+        builder.optUsage(usage);
+        int lastWeek = builder.getStoredLastWeek();
+        builder.optLoadMode(GridDBDataset.LoadMode.STREAM)
+                .optCacheDir(Paths.get(MODEL_OUTPUT_DIR, "cache"))
+                .setTransformation(transformation)
+                .setContextLength(contextLength)
+                .setSize(BATCH_SIZE)
+                .setStartTime(START_TIME)
+                .setRandom(usage == Dataset.Usage.TRAIN)
+                .setMaxWeek(lastWeek)
+                .initData();
 
         M5Forecast m5Forecast = builder.build();
 
@@ -0,0 +1,171 @@
+package com.mycompany.djl.griddb;
+
+import com.mycompany.djl.griddb.datasets.SeriesTable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sums forecasts and ground truth of the bottom-level series up the 12
+ * aggregation levels of the M5 competition, from the total down to item by
+ * store, and computes their weighted RMSSE.
+ *
+ * <p>
+ * Each series is added once, as its batch is scored, to one running total per
+ * level. Forecasts and ground truth are not kept per bottom-level series:
+ * the sums take memory in proportion to the number of aggregates (42,840
+ * for the full M5 data) times the prediction length, and the only per-series
+ * state is the index of its aggregate at each level, 12 {@code int}s per
+ * series, built once from the table. Neither grows with the number of
+ * samples or batches. Only the mean forecast is summed: it is all
+ * RMSSE looks at, and the mean of summed sample paths is the sum of their
+ * means. RMSSE follows {@link M5ForecastingEvaluator#rmsse}. The M5 weights
+ * are the dollar sales of the last 28 days before the forecast; with no sell
+ * prices in the data, each aggregate is weighted by its unit sales over the
+ * last {@code predictionLength} weeks of the context instead. The WRMSSE is
+ * the mean of the 12 level scores.
+ *
+ * <p>
+ * Not thread-safe: {@link com.mycompany.djl.griddb.inference.ParallelInference}
+ * feeds it from its single evaluating thread.
+ */
+public class HierarchicalAggregator {
+
+    private static final String[] LEVEL_NAMES = {
+        "Total", "State", "Store", "Category", "Department", "State/Category", "State/Department",
+        "Store/Category", "Store/Department", "Item", "Item/State", "Item/Store"};
+    private static final String[][] LEVEL_CATEGORIES = {
+        {}, {"state_id"}, {"store_id"}, {"cat_id"}, {"dept_id"}, {"state_id", "cat_id"},
+        {"state_id", "dept_id"}, {"store_id", "cat_id"}, {"store_id", "dept_id"}, {"item_id"},
+        {"item_id", "state_id"}, {"item_id", "store_id"}};
+
+    private final int predictionLength;
+    private final int[][] aggregateOf;
+    private final int[] aggregates;
+    private final double[][] forecastSums;
+    private final double[][] gtSums;
+    private final double[][] volumes;
+    private long series;
+
+    /**
+     * @param table the bottom-level series, in the order they are added
+     * @param predictionLength the number of forecast weeks
+     */
+    public HierarchicalAggregator(SeriesTable table, int predictionLength) {
+        this.predictionLength = predictionLength;
+        int levels = LEVEL_NAMES.length;
+        aggregateOf = new int[levels][table.size()];
+        aggregates = new int[levels];
+        forecastSums = new double[levels][];
+        gtSums = new double[levels][];
+        volumes = new double[levels][];
+        for (int level = 0; level < levels; level++) {
+            int[] categories = new int[LEVEL_CATEGORIES[level].length];
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] = table.getCategoryNames().indexOf(LEVEL_CATEGORIES[level][i]);
+                if (categories[i] < 0) {
+                    throw new IllegalArgumentException("The table has no " + LEVEL_CATEGORIES[level][i] + " column");
+                }
+            }
+            Map<Long, Integer> index = new HashMap<>();
+            for (int row = 0; row < table.size(); row++) {
+                long key = 0;
+                for (int category : categories) {
+                    key = (key << 32) | (table.getCode(row, category) & 0xffffffffL);
+                }
+                Integer aggregate = index.get(key);
+                if (aggregate == null) {
+                    aggregate = index.size();
+                    index.put(key, aggregate);
+                }
+                aggregateOf[level][row] = aggregate;
+            }
+            aggregates[level] = index.size();
+            forecastSums[level] = new double[index.size() * predictionLength];
+            gtSums[level] = new double[index.size() * predictionLength];
+            volumes[level] = new double[index.size()];
+        }
+    }
+
+    /**
+     * Returns the number of aggregate series over all levels.
+     */
+    public int getAggregateCount() {
+        int count = 0;
+        for (int levelAggregates : aggregates) {
+            count += levelAggregates;
+        }
+        return count;
+    }
+
+    public List<String> getLevelNames() {
+        return Arrays.asList(LEVEL_NAMES);
+    }
+
+    /**
+     * Adds a batch of consecutive series.
+     *
+     * @param firstRow the table row of the first series
+     * @param gt the ground truth, (batch, prediction_length) row-major
+     * @param meanFcst the mean forecasts, laid out like {@code gt}
+     * @param volumes the unit sales of every series over the weighting
+     * period
+     */
+    public void add(int firstRow, float[] gt, float[] meanFcst, float[] volumes) {
+        for (int i = 0; i < volumes.length; i++) {
+            int row = firstRow + i;
+            int from = i * predictionLength;
+            for (int level = 0; level < aggregateOf.length; level++) {
+                int aggregate = aggregateOf[level][row];
+                double[] levelForecasts = forecastSums[level];
+                double[] levelGt = gtSums[level];
+                int offset = aggregate * predictionLength;
+                for (int t = 0; t < predictionLength; t++) {
+                    levelForecasts[offset + t] += meanFcst[from + t];
+                    levelGt[offset + t] += gt[from + t];
+                }
+                this.volumes[level][aggregate] += volumes[i];
+            }
+        }
+        series += volumes.length;
+    }
+
+    /**
+     * Returns the WRMSSE over all levels and of every level, named
+     * {@code WRMSSE} and {@code WRMSSE[<level>]}.
+     */
+    public Map<String, Float> computeMetrics() {
+        Map<String, Float> metrics = new LinkedHashMap<>((LEVEL_NAMES.length + 1) * 2);
+        double total = 0;
+        List<Float> levelScores = new ArrayList<>(LEVEL_NAMES.length);
+        for (int level = 0; level < LEVEL_NAMES.length; level++) {
+            double volume = 0;
+            for (double aggregateVolume : volumes[level]) {
+                volume += aggregateVolume;
+            }
+            double score = 0;
+            for (int aggregate = 0; aggregate < aggregates[level]; aggregate++) {
+                double weight = volume == 0 ? 1.0 / aggregates[level] : volumes[level][aggregate] / volume;
+                score += weight * M5ForecastingEvaluator.rmsse(
+                        gtSums[level], forecastSums[level], aggregate * predictionLength, predictionLength);
+            }
+            levelScores.add((float) score);
+            total += score;
+        }
+        metrics.put("WRMSSE", (float) (total / LEVEL_NAMES.length));
+        for (int level = 0; level < LEVEL_NAMES.length; level++) {
+            metrics.put("WRMSSE[" + LEVEL_NAMES[level] + "]", levelScores.get(level));
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the number of bottom-level series added so far.
+     */
+    public long getSeries() {
+        return series;
+    }
+}
@@ -0,0 +1,447 @@
+package com.mycompany.djl.griddb;
+
+import ai.djl.Model;
+import ai.djl.engine.Engine;
+import ai.djl.metric.Metrics;
+import ai.djl.ndarray.NDManager;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.DistributionOutput;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.distribution.output.StudentTOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.timeseries.transform.TimeSeriesTransform;
+import ai.djl.training.EasyTrain;
+import ai.djl.training.Trainer;
+import ai.djl.training.TrainingResult;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.training.listener.TrainingListener;
+import ai.djl.training.optimizer.Optimizer;
+import ai.djl.training.tracker.Tracker;
+import ai.djl.training.util.ProgressBar;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.PrefetchingDataset;
+import com.mycompany.djl.griddb.inference.DeepARArtifact;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Trains several DeepAR configurations one after the other on one loaded copy
+ * of the training data, stops each once it no longer improves, and ranks them
+ * by validation RMSSE.
+ *
+ * <p>
+ * The training container is read from GridDB, or the table cache, once;
+ * every configuration gets its own model, trainer and datasets over that
+ * read-only {@link com.mycompany.djl.griddb.datasets.SeriesTable}. Training
+ * windows end by week {@value #TRAIN_LAST_WEEK}, and validation scores the
+ * window ending at week {@value #VALIDATION_LAST_WEEK}, split as in
+ * {@link Forecaster#getDeltaTransformation}, so its forecast weeks are never
+ * trained on. Every configuration is set up with the engine seeded, so all
+ * start from the same initialization, and trains alone with every core: as
+ * many prefetch workers, and PyTorch threads unless
+ * {@code ai.djl.pytorch.num_threads} is set. Configurations do not train side
+ * by side, since PyTorch allows one gradient collector per process and would
+ * run their training steps one at a time anyway.
+ *
+ * <p>
+ * After every epoch the validation RMSSE the trainer's evaluator recorded,
+ * the value {@link Forecaster} stores with each checkpoint, is compared with
+ * the best so far: an improvement saves the model to
+ * {@code outputs/sweep/<configuration>}, and {@code patience} epochs without
+ * one stop the configuration early. The ranked results are logged and written
+ * to {@code outputs/sweep/results.csv}.
+ *
+ * <p>
+ * Usage: {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.HyperparameterSweep -Dexec.args="3 output=negbin,epochs=20 output=studentt,context=8,batch=64"},
+ * the arguments being the patience in epochs and the configurations, in the
+ * syntax of
+ * {@link Config#parse}; without configurations a small default grid runs.
+ */
+public class HyperparameterSweep {
+
+    public static final String SWEEP_DIR = "sweep";
+    public static final int VALIDATION_LAST_WEEK = 273;
+    public static final int TRAIN_LAST_WEEK = VALIDATION_LAST_WEEK - Forecaster.PREDICTION_LENGTH;
+
+    private static final Logger LOGGER = Logger.getLogger(HyperparameterSweep.class.getName());
+    private static final String[] DEFAULT_GRID = {
+        "output=negbin", "output=negbin,context=8", "output=negbin,batch=64", "output=studentt"};
+
+    private final GridDBDataset.GridDBBuilder builder;
+    private int patience = 3;
+    private Path outputDir = Paths.get(Forecaster.MODEL_OUTPUT_DIR, SWEEP_DIR);
+
+    public HyperparameterSweep(GridDBDataset.GridDBBuilder builder) {
+        this.builder = builder;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int patience = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        List<Config> configs = new ArrayList<>();
+        for (String spec : args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_GRID) {
+            configs.add(Config.parse(spec));
+        }
+        new HyperparameterSweep(GridDBDataset.gridDBBuilder())
+                .optPatience(patience)
+                .run(configs);
+    }
+
+    /**
+     * Sets how many epochs without a better validation RMSSE stop a
+     * configuration.
+     */
+    public HyperparameterSweep optPatience(int patience) {
+        this.patience = patience;
+        return this;
+    }
+
+    public HyperparameterSweep optOutputDir(Path outputDir) {
+        this.outputDir = outputDir;
+        return this;
+    }
+
+    /**
+     * Trains every configuration and returns the results, best first.
+     */
+    public List<Result> run(List<Config> configs) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (System.getProperty("ai.djl.pytorch.num_threads") == null) {
+            DeepARArtifact.setPyTorchThreads(threads);
+        }
+        builder.optUsage(Dataset.Usage.TRAIN)
+                .optLoadMode(GridDBDataset.LoadMode.STREAM)
+                .optCacheDir(Paths.get(Forecaster.MODEL_OUTPUT_DIR, "cache"))
+                .setStartTime(Forecaster.START_TIME)
+                .setTransformation(new ArrayList<>())
+                .setMaxWeek(VALIDATION_LAST_WEEK)
+                .initData();
+        List<Integer> cardinality = builder.getCardinality();
+        LOGGER.info(String.format("Sweeping %d configurations over %d series, one at a time with %d threads",
+                configs.size(), builder.getTable().size(), threads));
+
+        List<Result> results = new ArrayList<>(configs.size());
+        for (Config config : configs) {
+            try ( Trial trial = newTrial(config, cardinality, threads)) {
+                results.add(trial.train());
+            }
+        }
+        results.sort(Comparator.comparingDouble(Result::getBestRmsse));
+        writeResults(results);
+        return results;
+    }
+
+    /**
+     * Builds the model, trainer and datasets of {@code config}, with the
+     * engine reseeded, so every configuration starts from the same
+     * initialization whatever the order they run in.
+     */
+    private Trial newTrial(Config config, List<Integer> cardinality, int threads) throws Exception {
+        Engine.getInstance().setRandomSeed((int) Forecaster.SEED);
+        Model model = Model.newInstance("deepar");
+        try {
+            DistributionOutput distributionOutput = config.newDistributionOutput();
+            DeepARNetwork network = config.newNetwork(distributionOutput, cardinality);
+            model.setBlock(network);
+            NDManager manager = model.getNDManager();
+
+            M5Forecast trainSet = newDataset(Forecaster.getSeededTransformation(network, distributionOutput, manager),
+                    network, config, TRAIN_LAST_WEEK, true);
+            M5Forecast validateSet = newDataset(
+                    Forecaster.getDeltaTransformation(network, distributionOutput, manager),
+                    network, config, VALIDATION_LAST_WEEK, false);
+
+            Trainer trainer = model.newTrainer(Forecaster.newTrainingConfig(distributionOutput)
+                    .optOptimizer(Optimizer.adam().optLearningRateTracker(Tracker.fixed(config.learningRate)).build())
+                    .addTrainingListeners(TrainingListener.Defaults.basic()));
+            trainer.setMetrics(new Metrics());
+            trainer.initialize(Forecaster.getInputShapes(network));
+            return new Trial(config, model, trainer,
+                    new PrefetchingDataset(trainSet, config.batchSize, true).optSeed(Forecaster.SEED).optWorkers(threads),
+                    new PrefetchingDataset(validateSet, config.batchSize, false).optWorkers(threads));
+        } catch (Exception ex) {
+            model.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Builds a dataset over the shared table, which the builder keeps across
+     * builds.
+     */
+    private M5Forecast newDataset(List<TimeSeriesTransform> transformation, DeepARNetwork network, Config config,
+            int lastWeek, boolean random) throws Exception {
+        builder.setTransformation(transformation)
+                .setContextLength(network.getContextLength())
+                .setSize(config.batchSize)
+                .setRandom(random)
+                .setMaxWeek(lastWeek);
+        M5Forecast dataset = builder.build();
+        dataset.prepare(new ProgressBar());
+        return dataset;
+    }
+
+    private void writeResults(List<Result> results) throws IOException {
+        StringBuilder table = new StringBuilder(String.format("%n%4s  %8s  %8s  %8s  %10s  %8s  %s",
+                "rank", "RMSSE", "val loss", "loss", "best/run", "seconds", "configuration"));
+        Files.createDirectories(outputDir);
+        Path file = outputDir.resolve("results.csv");
+        try ( PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.println("rank,configuration,rmsse,validate_loss,train_loss,best_epoch,epochs,seconds,directory");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                Config config = result.getConfig();
+                table.append(String.format(Locale.ROOT, "%n%4d  %8.4f  %8.4f  %8.4f  %4d/%-5d  %8.1f  %s",
+                        i + 1, result.getBestRmsse(), result.getValidateLoss(), result.getTrainLoss(),
+                        result.getBestEpoch(), result.getEpochs(), result.getSeconds(), config));
+                writer.println(String.format(Locale.ROOT, "%d,\"%s\",%.5f,%.5f,%.5f,%d,%d,%.1f,%s",
+                        i + 1, config, result.getBestRmsse(), result.getValidateLoss(), result.getTrainLoss(),
+                        result.getBestEpoch(), result.getEpochs(), result.getSeconds(),
+                        outputDir.resolve(config.getName())));
+            }
+        }
+        LOGGER.info(table + String.format("%nWritten to %s", file));
+    }
+
+    /**
+     * One configuration being trained.
+     */
+    private final class Trial implements AutoCloseable {
+
+        private final Config config;
+        private final Model model;
+        private final Trainer trainer;
+        private final PrefetchingDataset trainLoader;
+        private final PrefetchingDataset validateLoader;
+
+        Trial(Config config, Model model, Trainer trainer, PrefetchingDataset trainLoader,
+                PrefetchingDataset validateLoader) {
+            this.config = config;
+            this.model = model;
+            this.trainer = trainer;
+            this.trainLoader = trainLoader;
+            this.validateLoader = validateLoader;
+        }
+
+        Result train() throws Exception {
+            Result result = new Result(config);
+            Path modelDir = outputDir.resolve(config.getName());
+            long start = System.nanoTime();
+            int sinceBest = 0;
+            for (int epoch = 1; epoch <= config.epochs; epoch++) {
+                EasyTrain.fit(trainer, 1, trainLoader, validateLoader);
+                TrainingResult epochResult = trainer.getTrainingResult();
+                Float rmsse = epochResult.getValidateEvaluation("RMSSE");
+                result.epochs = epoch;
+                result.trainLoss = epochResult.getTrainLoss();
+                if (rmsse != null && rmsse < result.bestRmsse) {
+                    result.bestRmsse = rmsse;
+                    result.validateLoss = epochResult.getValidateLoss();
+                    result.bestEpoch = epoch;
+                    sinceBest = 0;
+                    model.setProperty("Epoch", String.valueOf(epoch));
+                    model.setProperty("RMSSE", String.format("%.5f", rmsse));
+                    model.setProperty("Loss", String.format("%.5f", result.validateLoss));
+                    model.save(modelDir, "deepar");
+                } else {
+                    sinceBest++;
+                }
+                LOGGER.info(String.format("%s epoch %d: loss %.4f, validation RMSSE %.4f, best %.4f at epoch %d",
+                        config, epoch, result.trainLoss, rmsse == null ? Float.NaN : rmsse,
+                        result.bestRmsse, result.bestEpoch));
+                if (sinceBest >= patience) {
+                    LOGGER.info(String.format("%s stopped early after %d epochs", config, epoch));
+                    break;
+                }
+            }
+            result.seconds = (System.nanoTime() - start) / 1e9;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            trainLoader.close();
+            validateLoader.close();
+            try {
+                trainer.close();
+            } finally {
+                model.close();
+            }
+        }
+    }
+
+    /**
+     * A DeepAR configuration. Unset hyperparameters keep the values
+     * {@link Forecaster} trains with: the negative binomial output, the
+     * network's default context length, size and dropout, batches of
+     * {@value Forecaster#BATCH_SIZE}, 10 epochs and Adam at 0.001.
+     */
+    public static class Config {
+
+        private final String spec;
+        private String output = "negbin";
+        private int contextLength;
+        private int hiddenSize;
+        private int layers;
+        private float dropout = -1;
+        private int batchSize = Forecaster.BATCH_SIZE;
+        private int epochs = 10;
+        private float learningRate = 0.001f;
+
+        private Config(String spec) {
+            this.spec = spec;
+        }
+
+        /**
+         * Parses comma-separated {@code key=value} pairs; the keys are
+         * {@code output} ({@code negbin} or {@code studentt}), {@code context},
+         * {@code hidden}, {@code layers}, {@code dropout}, {@code batch},
+         * {@code epochs} and {@code lr}.
+         */
+        public static Config parse(String spec) {
+            Config config = new Config(spec.trim());
+            for (String pair : spec.split(",")) {
+                if (pair.trim().isEmpty()) {
+                    continue;
+                }
+                String[] keyValue = pair.split("=", 2);
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Expected key=value, got " + pair);
+                }
+                String value = keyValue[1].trim();
+                switch (keyValue[0].trim().toLowerCase(Locale.ROOT)) {
+                    case "output":
+                        config.output = value.toLowerCase(Locale.ROOT);
+                        config.newDistributionOutput();
+                        break;
+                    case "context":
+                        config.contextLength = Integer.parseInt(value);
+                        break;
+                    case "hidden":
+                        config.hiddenSize = Integer.parseInt(value);
+                        break;
+                    case "layers":
+                        config.layers = Integer.parseInt(value);
+                        break;
+                    case "dropout":
+                        config.dropout = Float.parseFloat(value);
+                        break;
+                    case "batch":
+                        config.batchSize = Integer.parseInt(value);
+                        break;
+                    case "epochs":
+                        config.epochs = Integer.parseInt(value);
+                        break;
+                    case "lr":
+                        config.learningRate = Float.parseFloat(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown hyperparameter " + keyValue[0] + " in " + spec);
+                }
+            }
+            return config;
+        }
+
+        DistributionOutput newDistributionOutput() {
+            switch (output) {
+                case "negbin":
+                    return new NegativeBinomialOutput();
+                case "studentt":
+                    return new StudentTOutput();
+                default:
+                    throw new IllegalArgumentException("Unknown output " + output + "; use negbin or studentt");
+            }
+        }
+
+        DeepARNetwork newNetwork(DistributionOutput distributionOutput, List<Integer> cardinality) {
+            DeepARNetwork.Builder builder = Forecaster.newDeepARBuilder(distributionOutput, cardinality);
+            if (contextLength > 0) {
+                builder.optContextLength(contextLength);
+            }
+            if (hiddenSize > 0) {
+                builder.optHiddenSize(hiddenSize);
+            }
+            if (layers > 0) {
+                builder.optNumLayers(layers);
+            }
+            if (dropout >= 0) {
+                builder.optDropRate(dropout);
+            }
+            return builder.buildTrainingNetwork();
+        }
+
+        /**
+         * Returns the name of the directory the model is saved in.
+         */
+        public String getName() {
+            String name = spec.replaceAll("[^A-Za-z0-9.]+", "_");
+            return name.isEmpty() ? "default" : name;
+        }
+
+        @Override
+        public String toString() {
+            return spec.isEmpty() ? "default" : spec;
+        }
+    }
+
+    /**
+     * The outcome of a configuration, at its best epoch.
+     */
+    public static class Result {
+
+        private final Config config;
+        private float bestRmsse = Float.POSITIVE_INFINITY;
+        private float validateLoss = Float.NaN;
+        private float trainLoss = Float.NaN;
+        private int bestEpoch;
+        private int epochs;
+        private double seconds;
+
+        Result(Config config) {
+            this.config = config;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        /**
+         * Returns the best validation RMSSE, infinite when no epoch had one.
+         */
+        public float getBestRmsse() {
+            return bestRmsse;
+        }
+
+        public float getValidateLoss() {
+            return validateLoss;
+        }
+
+        /**
+         * Returns the training loss of the last epoch run.
+         */
+        public float getTrainLoss() {
+            return trainLoss;
+        }
+
+        public int getBestEpoch() {
+            return bestEpoch;
+        }
+
+        public int getEpochs() {
+            return epochs;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+    }
+}
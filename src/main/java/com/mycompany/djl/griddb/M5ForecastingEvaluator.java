@@ -12,9 +12,10 @@ import ai.djl.timeseries.Forecast;
 import ai.djl.training.loss.Loss;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -26,20 +27,38 @@ public class M5ForecastingEvaluator {
      * An evaluator that calculates performance metrics.
      */
     private float[] quantiles;
-    Map<String, Float> totalMetrics;
-    Map<String, Integer> totalNum;
+    private final String[] quantileLossNames;
+    private final String[] coverageNames;
+    private final Map<String, Integer> metricIndex;
+    private final MetricAccumulator totals;
 
     public M5ForecastingEvaluator(float... quantiles) {
         this.quantiles = quantiles;
-        totalMetrics = new ConcurrentHashMap<>();
-        totalNum = new ConcurrentHashMap<>();
-        init();
+        quantileLossNames = new String[quantiles.length];
+        coverageNames = new String[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            quantileLossNames[i] = String.format("QuantileLoss[%.2f]", quantiles[i]);
+            coverageNames[i] = String.format("Coverage[%.2f]", quantiles[i]);
+        }
+        List<String> metricNames = metricNames();
+        metricIndex = new HashMap<>(metricNames.size() * 2);
+        for (int i = 0; i < metricNames.size(); i++) {
+            metricIndex.put(metricNames.get(i), i);
+        }
+        totals = new MetricAccumulator(metricNames.toArray(new String[0]));
+    }
+
+    /**
+     * Returns the quantiles whose loss and coverage are evaluated.
+     */
+    public float[] getQuantiles() {
+        return quantiles.clone();
     }
 
     public Map<String, Float> getMetricsPerTs(
             NDArray gtTarget, NDArray pastTarget, Forecast forecast) {
         Map<String, Float> retMetrics
-                = new ConcurrentHashMap<>((8 + quantiles.length * 2) * 3 / 2);
+                = new HashMap<>((8 + quantiles.length * 2) * 3 / 2);
         NDArray meanFcst = forecast.mean();
         NDArray medianFcst = forecast.median();
 
@@ -51,7 +70,7 @@ public class M5ForecastingEvaluator {
 
         retMetrics.put("RMSSE", rmsse.getFloat());
 
-        retMetrics.put("MSE", gtTarget.sub(meanFcst).square().mean().getFloat());
+        retMetrics.put("MSE", meanSquare.getFloat());
         retMetrics.put("abs_error", gtTarget.sub(medianFcst).abs().sum().getFloat());
         retMetrics.put("abs_target_sum", gtTarget.abs().sum().getFloat());
         retMetrics.put("abs_target_mean", gtTarget.abs().mean().getFloat());
@@ -67,33 +86,162 @@ public class M5ForecastingEvaluator {
                         .getFloat());
         retMetrics.put("ND", retMetrics.get("abs_error") / retMetrics.get("abs_target_sum"));
 
-        for (float quantile : quantiles) {
-            NDArray forecastQuantile = forecast.quantile(quantile);
+        for (int i = 0; i < quantiles.length; i++) {
+            NDArray forecastQuantile = forecast.quantile(quantiles[i]);
             NDArray quantileLoss
-                    = Loss.quantileL1Loss(quantile)
+                    = Loss.quantileL1Loss(quantiles[i])
                             .evaluate(new NDList(gtTarget), new NDList(forecastQuantile));
             NDArray quantileCoverage
                     = gtTarget.lt(forecastQuantile).toType(DataType.FLOAT32, false).mean();
-            retMetrics.put(
-                    String.format("QuantileLoss[%.2f]", quantile), quantileLoss.getFloat());
-            retMetrics.put(
-                    String.format("Coverage[%.2f]", quantile), quantileCoverage.getFloat());
+            retMetrics.put(quantileLossNames[i], quantileLoss.getFloat());
+            retMetrics.put(coverageNames[i], quantileCoverage.getFloat());
         }
         return retMetrics;
     }
 
+    /**
+     * Computes the metrics of a whole batch of forecasts at once.
+     *
+     * @param gtTarget the ground truth, of shape (batch, prediction_length)
+     * @param pastTarget the context, of shape (batch, context_length)
+     * @param forecasts the forecast of every row
+     * @return the per-series values of every metric, in row order
+     * @see #getMetricsPerBatch(NDArray, NDArray, NDArray, NDArray, NDArray[])
+     */
+    public Map<String, float[]> getMetricsPerBatch(
+            NDArray gtTarget, NDArray pastTarget, List<Forecast> forecasts) {
+        NDList means = new NDList(forecasts.size());
+        NDList medians = new NDList(forecasts.size());
+        NDList[] forecastQuantiles = new NDList[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            forecastQuantiles[i] = new NDList(forecasts.size());
+        }
+        for (Forecast forecast : forecasts) {
+            means.add(forecast.mean());
+            medians.add(forecast.median());
+            for (int i = 0; i < quantiles.length; i++) {
+                forecastQuantiles[i].add(forecast.quantile(quantiles[i]));
+            }
+        }
+        NDArray[] stackedQuantiles = new NDArray[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            stackedQuantiles[i] = NDArrays.stack(forecastQuantiles[i]);
+        }
+        return getMetricsPerBatch(
+                gtTarget, pastTarget, NDArrays.stack(means), NDArrays.stack(medians), stackedQuantiles);
+    }
+
+    /**
+     * Computes the metrics of a whole batch from stacked forecast samples of
+     * shape (batch, num_samples, prediction_length), taking quantiles the
+     * same way as {@link ai.djl.timeseries.SampleForecast}.
+     */
+    public Map<String, float[]> getMetricsPerBatch(
+            NDArray gtTarget, NDArray pastTarget, NDArray samples) {
+        long numSamples = samples.getShape().get(1);
+        NDArray sorted = samples.sort(1);
+        NDArray[] forecastQuantiles = new NDArray[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            forecastQuantiles[i] = sorted.get(":, {}, :", Math.round((numSamples - 1) * quantiles[i]));
+        }
+        NDArray median = sorted.get(":, {}, :", Math.round((numSamples - 1) * 0.5f));
+        return getMetricsPerBatch(
+                gtTarget, pastTarget, samples.mean(new int[]{1}), median, forecastQuantiles);
+    }
+
+    /**
+     * Computes every metric of {@link #getMetricsPerTs} for a batch of series
+     * as (batch,) tensors and copies them to the host in a single transfer.
+     * The quantile loss is the per-series mean of
+     * {@code 2 * |(forecast - target) * (1[forecast >= target] - quantile)|},
+     * as in {@link Loss#quantileL1Loss(float)}.
+     *
+     * @param gtTarget the ground truth, of shape (batch, prediction_length)
+     * @param pastTarget the context, of shape (batch, context_length)
+     * @param meanFcst the forecast means, shaped like {@code gtTarget}
+     * @param medianFcst the forecast medians, shaped like {@code gtTarget}
+     * @param forecastQuantiles the forecast of every evaluated quantile,
+     * shaped like {@code gtTarget}
+     * @return the per-series values of every metric, in row order
+     */
+    public Map<String, float[]> getMetricsPerBatch(NDArray gtTarget, NDArray pastTarget,
+            NDArray meanFcst, NDArray medianFcst, NDArray[] forecastQuantiles) {
+        int[] timeAxis = {1};
+        NDArray meanSquare = gtTarget.sub(meanFcst).square().mean(timeAxis);
+        NDArray scaleDenom
+                = gtTarget.get(":, 1:").sub(gtTarget.get(":, :-1")).square().mean(timeAxis);
+        NDArray rmsse = meanSquare.div(scaleDenom).sqrt();
+        rmsse = NDArrays.where(scaleDenom.eq(0), rmsse.onesLike(), rmsse);
+
+        NDArray absGt = gtTarget.abs();
+        NDArray absError = gtTarget.sub(medianFcst).abs();
+
+        NDList columns = new NDList(8 + quantiles.length * 2);
+        columns.add(rmsse);
+        columns.add(meanSquare);
+        columns.add(absError.sum(timeAxis));
+        columns.add(absGt.sum(timeAxis));
+        columns.add(absGt.mean(timeAxis));
+        columns.add(absError.div(absGt).mean(timeAxis));
+        columns.add(absError.div(absGt.add(medianFcst.abs())).mean(timeAxis).mul(2));
+        for (int i = 0; i < quantiles.length; i++) {
+            NDArray error = forecastQuantiles[i].sub(gtTarget);
+            NDArray weight = forecastQuantiles[i].gte(gtTarget).toType(DataType.FLOAT32, false).sub(quantiles[i]);
+            columns.add(error.mul(weight).abs().mul(2).mean(timeAxis));
+            columns.add(gtTarget.lt(forecastQuantiles[i]).toType(DataType.FLOAT32, false).mean(timeAxis));
+        }
+        float[] values = NDArrays.stack(columns).toFloatArray();
+
+        int batchSize = Math.toIntExact(gtTarget.getShape().get(0));
+        String[] names = {"RMSSE", "MSE", "abs_error", "abs_target_sum", "abs_target_mean", "MAPE", "sMAPE"};
+        Map<String, float[]> retMetrics = new LinkedHashMap<>((8 + quantiles.length * 2) * 3 / 2);
+        int column = 0;
+        for (String name : names) {
+            retMetrics.put(name, Arrays.copyOfRange(values, column * batchSize, ++column * batchSize));
+        }
+        for (int i = 0; i < quantiles.length; i++) {
+            retMetrics.put(quantileLossNames[i], Arrays.copyOfRange(values, column * batchSize, ++column * batchSize));
+            retMetrics.put(coverageNames[i], Arrays.copyOfRange(values, column * batchSize, ++column * batchSize));
+        }
+        float[] absErrorSum = retMetrics.get("abs_error");
+        float[] absTargetSum = retMetrics.get("abs_target_sum");
+        float[] nd = new float[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            nd[i] = absErrorSum[i] / absTargetSum[i];
+        }
+        retMetrics.put("ND", nd);
+        return retMetrics;
+    }
+
     public void aggregateMetrics(Map<String, Float> metrics) {
         for (Map.Entry<String, Float> entry : metrics.entrySet()) {
-            totalMetrics.compute(entry.getKey(), (k, v) -> v + entry.getValue());
-            totalNum.compute(entry.getKey(), (k, v) -> v + 1);
+            totals.add(indexOf(entry.getKey()), entry.getValue());
         }
     }
 
+    /**
+     * Adds the per-series metrics of a batch to the totals, series by series,
+     * giving the same totals as {@link #aggregateMetrics(Map)} on each series.
+     */
+    public void aggregateBatchMetrics(Map<String, float[]> metrics) {
+        for (Map.Entry<String, float[]> entry : metrics.entrySet()) {
+            totals.add(indexOf(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the mean of every metric over the series aggregated so far, the
+     * total of the {@code sum} metrics, and the RMSE and NRMSE derived from
+     * them. The totals are left untouched, so this can be called at any time
+     * and as often as needed, also while other threads keep aggregating.
+     */
     public Map<String, Float> computeTotalMetrics() {
-        for (Map.Entry<String, Integer> entry : totalNum.entrySet()) {
-            if (!entry.getKey().contains("sum")) {
-                totalMetrics.compute(entry.getKey(), (k, v) -> v / (float) entry.getValue());
-            }
+        MetricAccumulator.Snapshot snapshot = totals.snapshot();
+        Map<String, Float> totalMetrics = new LinkedHashMap<>((snapshot.size() + 2) * 2);
+        for (int i = 0; i < snapshot.size(); i++) {
+            String name = snapshot.getName(i);
+            double total = name.contains("sum") ? snapshot.getSum(i) : snapshot.getMean(i);
+            totalMetrics.put(name, (float) total);
         }
 
         totalMetrics.put("RMSE", (float) Math.sqrt(totalMetrics.get("MSE")));
@@ -102,7 +250,41 @@ public class M5ForecastingEvaluator {
         return totalMetrics;
     }
 
-    private void init() {
+    /**
+     * Computes the RMSSE of one series on the host as
+     * {@link #getMetricsPerBatch(NDArray, NDArray, NDArray, NDArray, NDArray[])}
+     * does: the mean squared error of the mean forecast scaled by the mean
+     * squared week-to-week change of the ground truth, or 1 when the ground
+     * truth is flat.
+     *
+     * @param gt the ground truth, {@code length} values from {@code offset}
+     * @param meanFcst the mean forecast, laid out like {@code gt}
+     */
+    public static double rmsse(double[] gt, double[] meanFcst, int offset, int length) {
+        double meanSquare = 0;
+        for (int i = offset; i < offset + length; i++) {
+            double error = gt[i] - meanFcst[i];
+            meanSquare += error * error;
+        }
+        meanSquare /= length;
+        double scaleDenom = 0;
+        for (int i = offset + 1; i < offset + length; i++) {
+            double change = gt[i] - gt[i - 1];
+            scaleDenom += change * change;
+        }
+        scaleDenom /= length - 1;
+        return scaleDenom == 0 ? 1 : Math.sqrt(meanSquare / scaleDenom);
+    }
+
+    private int indexOf(String metricName) {
+        Integer index = metricIndex.get(metricName);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown metric: " + metricName);
+        }
+        return index;
+    }
+
+    private List<String> metricNames() {
         List<String> metricNames
                 = new ArrayList<>(
                         Arrays.asList(
@@ -114,14 +296,11 @@ public class M5ForecastingEvaluator {
                                 "MAPE",
                                 "sMAPE",
                                 "ND"));
-        for (float quantile : quantiles) {
-            metricNames.add(String.format("QuantileLoss[%.2f]", quantile));
-            metricNames.add(String.format("Coverage[%.2f]", quantile));
-        }
-        for (String metricName : metricNames) {
-            totalMetrics.put(metricName, 0f);
-            totalNum.put(metricName, 0);
+        for (int i = 0; i < quantiles.length; i++) {
+            metricNames.add(quantileLossNames[i]);
+            metricNames.add(coverageNames[i]);
         }
+        return metricNames;
     }
 
 }
@@ -0,0 +1,148 @@
+package com.mycompany.djl.griddb;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sums a fixed set of metrics into primitive {@code double} totals and
+ * {@code long} counts, addressed by the index of the metric name.
+ *
+ * <p>
+ * Every thread adds into its own stripe. Each {@code add} still locks the
+ * stripe, so that {@link #snapshot()} and {@link #reset()} see whole
+ * updates, but threads recording at the same time take different locks and
+ * only wait while a snapshot or a reset holds theirs. A snapshot sums the
+ * stripes into a copy and leaves the accumulator as it was.
+ */
+public class MetricAccumulator {
+
+    private final String[] names;
+    private final List<Stripe> stripes = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Stripe> stripe;
+
+    public MetricAccumulator(String... names) {
+        this.names = names.clone();
+        stripe = ThreadLocal.withInitial(() -> {
+            Stripe newStripe = new Stripe(this.names.length);
+            stripes.add(newStripe);
+            return newStripe;
+        });
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int metric) {
+        return names[metric];
+    }
+
+    /**
+     * Adds one value to a metric.
+     */
+    public void add(int metric, double value) {
+        Stripe local = stripe.get();
+        synchronized (local) {
+            local.sums[metric] += value;
+            local.counts[metric]++;
+        }
+    }
+
+    /**
+     * Adds every value of an array to a metric, in order.
+     */
+    public void add(int metric, float[] values) {
+        Stripe local = stripe.get();
+        synchronized (local) {
+            double sum = local.sums[metric];
+            for (float value : values) {
+                sum += value;
+            }
+            local.sums[metric] = sum;
+            local.counts[metric] += values.length;
+        }
+    }
+
+    /**
+     * Returns the totals added so far by all threads.
+     */
+    public Snapshot snapshot() {
+        double[] sums = new double[names.length];
+        long[] counts = new long[names.length];
+        for (Stripe each : stripes) {
+            synchronized (each) {
+                for (int i = 0; i < names.length; i++) {
+                    sums[i] += each.sums[i];
+                    counts[i] += each.counts[i];
+                }
+            }
+        }
+        return new Snapshot(names, sums, counts);
+    }
+
+    /**
+     * Clears the totals of all threads.
+     */
+    public void reset() {
+        for (Stripe each : stripes) {
+            synchronized (each) {
+                Arrays.fill(each.sums, 0);
+                Arrays.fill(each.counts, 0);
+            }
+        }
+    }
+
+    /**
+     * The totals of a {@link MetricAccumulator} at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final String[] names;
+        private final double[] sums;
+        private final long[] counts;
+
+        Snapshot(String[] names, double[] sums, long[] counts) {
+            this.names = names;
+            this.sums = sums;
+            this.counts = counts;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int metric) {
+            return names[metric];
+        }
+
+        public double getSum(int metric) {
+            return sums[metric];
+        }
+
+        public long getCount(int metric) {
+            return counts[metric];
+        }
+
+        /**
+         * Returns the mean of a metric, {@code NaN} when nothing was added.
+         */
+        public double getMean(int metric) {
+            return sums[metric] / counts[metric];
+        }
+    }
+
+    /**
+     * The totals of one thread.
+     */
+    private static final class Stripe {
+
+        final double[] sums;
+        final long[] counts;
+
+        Stripe(int size) {
+            sums = new double[size];
+            counts = new long[size];
+        }
+    }
+}
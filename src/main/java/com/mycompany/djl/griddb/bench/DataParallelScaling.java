@@ -0,0 +1,138 @@
+package com.mycompany.djl.griddb.bench;
+
+import ai.djl.Model;
+import ai.djl.engine.Engine;
+import ai.djl.nn.Parameter;
+import ai.djl.training.Trainer;
+import ai.djl.training.dataset.Batch;
+import ai.djl.util.Pair;
+import com.mycompany.djl.griddb.DataParallelTrainer;
+import com.mycompany.djl.griddb.DeepARReplica;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.inference.DeepARArtifact;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Measures how {@link DataParallelTrainer} scales: the same number of steps,
+ * on the same seeded batches and from the same initial parameters, is trained
+ * with each number of worker processes, and the training throughput, the
+ * scaling efficiency and the largest parameter difference from the run with
+ * the fewest workers are reported.
+ *
+ * <p>
+ * The efficiency at {@code n} workers is the throughput divided by
+ * {@code n / m} times that of the run with the fewest, {@code m}, workers; 1
+ * is linear scaling. Every worker process, the leader included, gets the
+ * given number of engine threads, by default an even share of the cores for
+ * the largest run, and optionally a NUMA node of its own. Dropout is off,
+ * since its masks depend on how the batch is split; the parameters then have
+ * to agree to within the tolerance, relative to the largest parameter.
+ * Usage:
+ * {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.bench.DataParallelScaling -Dexec.args="1,2,4,8 256 50 1 2"},
+ * the arguments being the numbers of workers, the batch size, the timed
+ * steps, the engine threads per worker and the NUMA nodes to spread the
+ * workers over, 0 by default.
+ */
+public class DataParallelScaling {
+
+    private static final Logger LOGGER = Logger.getLogger(DataParallelScaling.class.getName());
+    private static final int WARM_UP_STEPS = 3;
+    private static final float TOLERANCE = 1e-3f;
+
+    public static void main(String[] args) throws Exception {
+        String[] counts = (args.length > 0 ? args[0] : "1,2,4,8").split(",");
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 8 * Forecaster.BATCH_SIZE;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int[] workers = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            workers[i] = Integer.parseInt(counts[i].trim());
+        }
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / workers[workers.length - 1]);
+        int numaNodes = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        DeepARArtifact.setPyTorchThreads(threads);
+
+        List<float[]> baseline = null;
+        double baseThroughput = 0;
+        int baseWorkers = 0;
+        StringBuilder table = new StringBuilder(String.format("%n%7s  %12s  %10s  %10s  %14s",
+                "workers", "windows/s", "speedup", "efficiency", "max rel. diff"));
+        for (int count : workers) {
+            List<float[]> parameters = new ArrayList<>();
+            double throughput = run(count, batchSize, steps, numaNodes, parameters);
+            if (baseline == null) {
+                baseline = parameters;
+                baseThroughput = throughput;
+                baseWorkers = count;
+            }
+            double speedup = throughput / baseThroughput;
+            float difference = relativeDifference(baseline, parameters);
+            table.append(String.format("%n%7d  %12.1f  %9.2fx  %10.2f  %14.2e%s", count, throughput, speedup,
+                    speedup * baseWorkers / count, difference, difference > TOLERANCE ? "  over tolerance" : ""));
+        }
+        LOGGER.info(String.format("%d steps of %d windows, %d engine threads per worker:%s",
+                steps, batchSize, threads, table));
+    }
+
+    /**
+     * Trains {@link #WARM_UP_STEPS} and then {@code steps} steps with
+     * {@code workers} workers, returns the windows trained per second over the
+     * timed steps and adds the final parameters to {@code parameters}.
+     */
+    private static double run(int workers, int batchSize, int steps, int numaNodes, List<float[]> parameters)
+            throws Exception {
+        Engine.getInstance().setRandomSeed((int) Forecaster.SEED);
+        try ( DeepARReplica replica = new DeepARReplica(batchSize, 0);  Model model = Model.newInstance("deepar")) {
+            model.setBlock(replica.getBlock());
+            try ( Trainer trainer = model.newTrainer(replica.getConfig())) {
+                trainer.initialize(replica.getInputShapes());
+                try ( DataParallelTrainer parallelTrainer
+                        = new DataParallelTrainer(trainer, workers, replica, numaNodes)) {
+                    int step = 0;
+                    long windows = 0;
+                    long start = 0;
+                    while (step < WARM_UP_STEPS + steps) {
+                        for (Batch batch : trainer.iterateDataset(parallelTrainer.getTrainSet())) {
+                            if (step == WARM_UP_STEPS) {
+                                start = System.nanoTime();
+                            }
+                            long trained = parallelTrainer.trainBatch(batch);
+                            if (step >= WARM_UP_STEPS) {
+                                windows += trained;
+                            }
+                            batch.close();
+                            if (++step == WARM_UP_STEPS + steps) {
+                                break;
+                            }
+                        }
+                    }
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    for (Pair<String, Parameter> pair : replica.getBlock().getParameters()) {
+                        parameters.add(pair.getValue().getArray().toFloatArray());
+                    }
+                    return windows / seconds;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the largest difference between the parameters of two runs,
+     * relative to the largest parameter of the first.
+     */
+    private static float relativeDifference(List<float[]> expected, List<float[]> actual) {
+        float scale = 0;
+        float difference = 0;
+        for (int p = 0; p < expected.size(); p++) {
+            float[] a = expected.get(p);
+            float[] b = actual.get(p);
+            for (int i = 0; i < a.length; i++) {
+                scale = Math.max(scale, Math.abs(a[i]));
+                difference = Math.max(difference, Math.abs(a[i] - b[i]));
+            }
+        }
+        return scale == 0 ? difference : difference / scale;
+    }
+}
@@ -0,0 +1,96 @@
+package com.mycompany.djl.griddb.bench;
+
+import ai.djl.engine.Engine;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.TimeSeriesData;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.M5ForecastingEvaluator;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.inference.DeepARArtifact;
+import com.mycompany.djl.griddb.inference.ParallelInference;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scores the test set with the exported {@link DeepARArtifact} on every
+ * engine that can run it and reports throughput, batch latency and RMSSE per
+ * engine, then names the fastest. Engines that are not on the classpath, or
+ * that need a graph the artifact lacks, are skipped.
+ *
+ * <p>
+ * Every row names the model it ran. Only the rows of the exported checkpoint
+ * compete for the fastest, since they compute the same forecasts; a graph
+ * traced from GluonTS is another model with other weights, so its rows are
+ * reported apart, as {@code traced}, and its RMSSE is not that of the
+ * checkpoint.
+ *
+ * <p>
+ * Needs an artifact in {@code outputs/export}, written by the {@code export}
+ * command of {@link Forecaster}. Usage:
+ * {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.bench.EngineComparison -Dexec.args="MXNet,PyTorch,OnnxRuntime 4 2"},
+ * the arguments being the engines, the inference threads and the intra-op
+ * threads of each engine.
+ */
+public class EngineComparison {
+
+    private static final Logger LOGGER = Logger.getLogger(EngineComparison.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String[] engines = (args.length > 0 ? args[0] : "MXNet,PyTorch,OnnxRuntime").split(",");
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int engineThreads = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        Path exportDir = Paths.get(Forecaster.MODEL_OUTPUT_DIR, Forecaster.EXPORT_DIR);
+
+        GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+        M5Forecast testSet = null;
+        String fastest = null;
+        double fastestThroughput = 0;
+        String checkpoint = DeepARArtifact.readProperties(exportDir).getProperty("checkpoint");
+        for (String name : engines) {
+            String engine = name.trim();
+            List<String> formats = DeepARArtifact.formatsFor(exportDir, engine);
+            if (!Engine.hasEngine(engine) || formats.isEmpty()) {
+                LOGGER.info(String.format("%-12s skipped: %s", engine, formats.isEmpty()
+                        ? "no runnable graph in " + exportDir : "the engine is not on the classpath"));
+                continue;
+            }
+            for (String format : formats) {
+                boolean traced = DeepARArtifact.isTraced(format);
+                String modelName = traced ? "traced" : checkpoint;
+                try ( ZooModel<TimeSeriesData, Forecast> model
+                        = DeepARArtifact.load(exportDir, engine, format, engineThreads)) {
+                    if (testSet == null) {
+                        int contextLength = Forecaster.getDeepARModel(
+                                new NegativeBinomialOutput(), builder.getCardinality(), false).getContextLength();
+                        testSet = Forecaster.getDataset(
+                                builder, new ArrayList<>(), contextLength, Dataset.Usage.TEST);
+                    }
+                    ParallelInference inference = new ParallelInference(
+                            model, Forecaster.getTranslator(), Forecaster.START_TIME, Forecaster.PREDICTION_LENGTH)
+                            .optThreads(threads);
+                    Map<String, Float> metrics = inference.run(testSet, model.getNDManager().newSubManager(),
+                            new M5ForecastingEvaluator(0.5f, 0.67f, 0.95f, 0.99f));
+                    LOGGER.info(String.format("%-12s %-11s %-24s %s, RMSSE %.4f",
+                            engine, format, modelName, inference.getStats(), metrics.get("RMSSE")));
+                    if (!traced && inference.getStats().getThroughput() > fastestThroughput) {
+                        fastestThroughput = inference.getStats().getThroughput();
+                        fastest = engine + " (" + format + ")";
+                    }
+                } catch (Exception ex) {
+                    LOGGER.log(Level.WARNING, engine + " failed as " + format, ex);
+                }
+            }
+        }
+        LOGGER.info(fastest == null ? "No engine could run " + checkpoint
+                : String.format("Fastest on %s: %s at %.1f series/s", checkpoint, fastest, fastestThroughput));
+    }
+}
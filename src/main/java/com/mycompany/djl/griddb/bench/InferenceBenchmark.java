@@ -0,0 +1,62 @@
+package com.mycompany.djl.griddb.bench;
+
+import ai.djl.Model;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.M5ForecastingEvaluator;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.inference.ParallelInference;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Scores the test set with {@link ParallelInference} at increasing thread
+ * counts and reports throughput, batch latency percentiles and the largest
+ * metric difference from the single-threaded run. DeepAR forecasts are
+ * sampled, so the metrics of two runs agree only up to sampling noise.
+ *
+ * <p>
+ * Needs a model trained by {@link Forecaster} in {@code outputs}. Usage:
+ * {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.bench.InferenceBenchmark -Dexec.args="1,2,4,8"}
+ */
+public class InferenceBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(InferenceBenchmark.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1,2,4,8").split(",");
+
+        try ( Model model = Model.newInstance("deepar")) {
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            DeepARNetwork network = Forecaster.getDeepARModel(new NegativeBinomialOutput(),
+                    Forecaster.getCheckpointCardinality(Paths.get(Forecaster.MODEL_OUTPUT_DIR), builder), false);
+            model.setBlock(network);
+            model.load(Paths.get(Forecaster.MODEL_OUTPUT_DIR));
+            M5Forecast testSet = Forecaster.getDataset(
+                    builder, new ArrayList<>(), network.getContextLength(), Dataset.Usage.TEST);
+
+            Map<String, Float> reference = null;
+            for (String threadCount : threadCounts) {
+                ParallelInference inference = new ParallelInference(
+                        model, Forecaster.getTranslator(), Forecaster.START_TIME, Forecaster.PREDICTION_LENGTH)
+                        .optThreads(Integer.parseInt(threadCount.trim()));
+                Map<String, Float> metrics = inference.run(testSet, model.getNDManager().newSubManager(),
+                        new M5ForecastingEvaluator(0.5f, 0.67f, 0.95f, 0.99f));
+                if (reference == null) {
+                    reference = metrics;
+                }
+                float maxDiff = 0;
+                for (Map.Entry<String, Float> entry : reference.entrySet()) {
+                    maxDiff = Math.max(maxDiff, Math.abs(entry.getValue() - metrics.get(entry.getKey())));
+                }
+                LOGGER.info(String.format("%2s threads: %s, RMSSE %.4f, max metric diff %.4f",
+                        threadCount.trim(), inference.getStats(), metrics.get("RMSSE"), maxDiff));
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mycompany.djl.griddb.bench;
+
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.training.util.ProgressBar;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.db.TimeSeriesStore;
+import com.toshiba.mwcloud.gs.GridStore;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Compares startup time and peak heap of the CSV and streaming load paths of
+ * {@link GridDBDataset}. Each mode is measured from {@code initData()} until
+ * the dataset is prepared, so the time spent seeding GridDB, and exporting
+ * the time series containers the {@code TIME_SERIES} mode reads, is left
+ * out.
+ *
+ * <p>
+ * Usage: {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.bench.LoadModeComparison -Dexec.args="3"}
+ */
+public class LoadModeComparison {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadModeComparison.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String shardBy = GridDBDataset.getConfig().getShardBy();
+        for (GridDBDataset.LoadMode mode : GridDBDataset.LoadMode.values()) {
+            if (shardBy != null && mode != GridDBDataset.LoadMode.STREAM) {
+                LOGGER.info(String.format("%-6s skipped, the containers are sharded by %s", mode, shardBy));
+                continue;
+            }
+            if (mode == GridDBDataset.LoadMode.TIME_SERIES) {
+                try ( GridStore store = GridDBDataset.connectToGridDB()) {
+                    new TimeSeriesStore(Forecaster.START_TIME).export(store, GridDBDataset.VALIDATION_COLLECTION_NAME);
+                }
+            }
+            long bestMillis = Long.MAX_VALUE;
+            long peakBytes = 0;
+            for (int i = 0; i < runs; i++) {
+                GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder()
+                        .optUsage(Dataset.Usage.TEST)
+                        .optLoadMode(mode)
+                        .setTransformation(new ArrayList<>())
+                        .setContextLength(Forecaster.PREDICTION_LENGTH)
+                        .setSize(32)
+                        .setStartTime(Forecaster.START_TIME)
+                        .setRandom(false)
+                        .setMaxWeek(277);
+
+                System.gc();
+                resetPeakHeap();
+                long begin = System.nanoTime();
+                M5Forecast dataset = builder.initData().build();
+                dataset.prepare(new ProgressBar());
+                long millis = (System.nanoTime() - begin) / 1_000_000;
+
+                bestMillis = Math.min(bestMillis, millis);
+                peakBytes = Math.max(peakBytes, peakHeap());
+            }
+            LOGGER.info(String.format("%-6s startup: %6d ms\tpeak heap: %8.1f MB",
+                    mode, bestMillis, peakBytes / (1024.0 * 1024.0)));
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
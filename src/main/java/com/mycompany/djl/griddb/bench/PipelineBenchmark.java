@@ -0,0 +1,75 @@
+package com.mycompany.djl.griddb.bench;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.timeseries.dataset.M5Forecast;
+import ai.djl.timeseries.distribution.output.DistributionOutput;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.timeseries.transform.TimeSeriesTransform;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.PrefetchingDataset;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Measures the samples/s of one training epoch of the DeepAR transformation
+ * chain, first through the dataset's own single-threaded iterator, then
+ * through {@link PrefetchingDataset} with an increasing number of workers.
+ * The checksum of the seeded runs must be the same for every worker count.
+ *
+ * <p>
+ * Usage: {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.bench.PipelineBenchmark -Dexec.args="1,2,4,8,16"}
+ */
+public class PipelineBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(PipelineBenchmark.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String[] workerCounts = (args.length > 0 ? args[0] : "1,2,4,8").split(",");
+
+        try ( NDManager manager = NDManager.newBaseManager()) {
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            DistributionOutput distributionOutput = new NegativeBinomialOutput();
+            DeepARNetwork network
+                    = Forecaster.getDeepARModel(distributionOutput, builder.getCardinality(), true);
+            List<TimeSeriesTransform> transformation
+                    = Forecaster.getSeededTransformation(network, distributionOutput, manager);
+            M5Forecast dataset = Forecaster.getDataset(
+                    builder, transformation, network.getContextLength(), Dataset.Usage.TRAIN);
+
+            double baseline = measure("serial", dataset, manager, 0);
+            for (String workerCount : workerCounts) {
+                int workers = Integer.parseInt(workerCount.trim());
+                try ( PrefetchingDataset loader = new PrefetchingDataset(dataset, Forecaster.BATCH_SIZE, true)
+                        .optWorkers(workers)
+                        .optPrefetch(2 * workers)
+                        .optSeed(Forecaster.SEED)) {
+                    measure(workers + " workers", loader, manager, baseline);
+                }
+            }
+        }
+    }
+
+    private static double measure(String name, Dataset dataset, NDManager manager, double baseline)
+            throws Exception {
+        long samples = 0;
+        double checksum = 0;
+        long begin = System.nanoTime();
+        for (Batch batch : dataset.getData(manager)) {
+            samples += batch.getSize();
+            for (NDArray array : batch.getData()) {
+                checksum += array.sum().getFloat();
+            }
+            batch.close();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        double throughput = samples / seconds;
+        LOGGER.info(String.format("%-12s %8.0f samples/s%s\tchecksum %.4f", name, throughput,
+                baseline > 0 ? String.format(" (x%.2f)", throughput / baseline) : "", checksum));
+        return throughput;
+    }
+}
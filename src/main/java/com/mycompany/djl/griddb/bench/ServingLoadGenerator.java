@@ -0,0 +1,195 @@
+package com.mycompany.djl.griddb.bench;
+
+import com.mycompany.djl.griddb.serving.ForecastServer;
+import com.opencsv.CSVReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Drives a running {@link ForecastServer} with closed-loop clients, each
+ * sending its next request as soon as the previous one is answered, and
+ * reports throughput, request latency percentiles and the mean batch size the
+ * server reached at every concurrency level.
+ *
+ * <p>
+ * The requests turn the server's forecast cache off, so every one is
+ * forecast by the model; pass {@code cached} as the fourth argument to
+ * measure a server answering from its cache instead.
+ *
+ * <p>
+ * Usage: {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.bench.ServingLoadGenerator -Dexec.args="http://localhost:8080 1,8,32,128 30"},
+ * the arguments being the server, the concurrency levels and the seconds each
+ * level runs.
+ */
+public class ServingLoadGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(ServingLoadGenerator.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String server = args.length > 0 ? args[0] : "http://localhost:8080";
+        String[] concurrencies = (args.length > 1 ? args[1] : "1,8,32,128").split(",");
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+        boolean cached = args.length > 3 && "cached".equals(args[3]);
+
+        List<String> ids = readIds();
+        URL forecast = new URL(server + "/forecast");
+        URL health = new URL(server + "/health");
+        for (String concurrency : concurrencies) {
+            String before = get(health);
+            Run run = new Run(forecast, ids, Integer.parseInt(concurrency.trim()), seconds, cached);
+            run.execute();
+            LOGGER.info(String.format("%3s clients: %s, health before %s, after %s",
+                    concurrency.trim(), run, before, get(health)));
+        }
+    }
+
+    private static List<String> readIds() throws IOException {
+        List<String> ids = new ArrayList<>();
+        try ( CSVReader csvReader = new CSVReader(new InputStreamReader(
+                ServingLoadGenerator.class.getClassLoader()
+                        .getResourceAsStream("data/weekly_sales_train_evaluation.csv"), StandardCharsets.UTF_8))) {
+            csvReader.readNext();
+            String[] nextRecord;
+            while ((nextRecord = csvReader.readNext()) != null) {
+                ids.add(nextRecord[0]);
+            }
+        }
+        return ids;
+    }
+
+    private static String get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try ( InputStream is = connection.getInputStream()) {
+            return new String(readAll(is), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * One concurrency level: its clients and the latencies they measured.
+     */
+    private static final class Run {
+
+        private final URL url;
+        private final List<String> ids;
+        private final int clients;
+        private final long seconds;
+        private final boolean cached;
+        private final AtomicLong errors = new AtomicLong();
+        private final long[][] latencies;
+        private final int[] counts;
+        private long elapsedNanos;
+
+        Run(URL url, List<String> ids, int clients, long seconds, boolean cached) {
+            this.url = url;
+            this.ids = ids;
+            this.clients = clients;
+            this.seconds = seconds;
+            this.cached = cached;
+            counts = new int[clients];
+            latencies = new long[clients][1024];
+        }
+
+        void execute() throws InterruptedException {
+            long start = System.nanoTime();
+            long deadline = start + seconds * 1_000_000_000L;
+            List<Thread> threads = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                Thread thread = new Thread(() -> runClient(client, deadline), "client-" + (i + 1));
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+
+        private void runClient(int client, long deadline) {
+            while (System.nanoTime() < deadline) {
+                String id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                long start = System.nanoTime();
+                try {
+                    post(("{\"id\":\"" + id + "\"" + (cached ? "" : ",\"cache\":false") + "}")
+                            .getBytes(StandardCharsets.UTF_8));
+                } catch (IOException ex) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                if (counts[client] == latencies[client].length) {
+                    latencies[client] = Arrays.copyOf(latencies[client], latencies[client].length * 2);
+                }
+                latencies[client][counts[client]++] = System.nanoTime() - start;
+            }
+        }
+
+        private void post(byte[] body) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try ( OutputStream os = connection.getOutputStream()) {
+                os.write(body);
+            }
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                InputStream error = connection.getErrorStream();
+                if (error != null) {
+                    error.close();
+                }
+                throw new IOException("HTTP " + status);
+            }
+            try ( InputStream is = connection.getInputStream()) {
+                readAll(is);
+            }
+        }
+
+        @Override
+        public String toString() {
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            long[] sorted = new long[total];
+            int offset = 0;
+            for (int i = 0; i < clients; i++) {
+                System.arraycopy(latencies[i], 0, sorted, offset, counts[i]);
+                offset += counts[i];
+            }
+            Arrays.sort(sorted);
+            return String.format("%.1f req/s, latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms, %d errors",
+                    total / (elapsedNanos / 1e9), percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), percentile(sorted, 100), errors.get());
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, rank)] / 1e6;
+        }
+    }
+}
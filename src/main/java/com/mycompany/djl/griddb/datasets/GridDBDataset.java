@@ -1,6 +1,8 @@
 package com.mycompany.djl.griddb.datasets;
 
 import ai.djl.basicdataset.tabular.utils.Feature;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
 import ai.djl.timeseries.dataset.FieldName;
 import ai.djl.timeseries.dataset.M5Forecast;
 import ai.djl.timeseries.dataset.TimeFeaturizers;
@@ -8,18 +10,27 @@ import ai.djl.timeseries.transform.TimeSeriesTransform;
 import ai.djl.training.dataset.Dataset;
 import ai.djl.util.Progress;
 import com.mycompany.djl.griddb.Forecaster;
-import com.opencsv.CSVReader;
+import com.mycompany.djl.griddb.db.BulkIngester;
+import com.mycompany.djl.griddb.db.CategoryDictionary;
+import com.mycompany.djl.griddb.db.ContainerMetadata;
+import com.mycompany.djl.griddb.db.DB;
+import com.mycompany.djl.griddb.db.GridDBConfig;
+import com.mycompany.djl.griddb.db.GridStorePool;
+import com.mycompany.djl.griddb.db.GridStoreSupplier;
+import com.mycompany.djl.griddb.db.SalesSchema;
+import com.mycompany.djl.griddb.db.SalesShards;
+import com.mycompany.djl.griddb.db.TimeSeriesStore;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
 import com.toshiba.mwcloud.gs.ColumnInfo;
 import com.toshiba.mwcloud.gs.Container;
 import com.toshiba.mwcloud.gs.ContainerInfo;
-import com.toshiba.mwcloud.gs.ContainerType;
 import com.toshiba.mwcloud.gs.GSException;
-import com.toshiba.mwcloud.gs.GSType;
 import com.toshiba.mwcloud.gs.GridStore;
 import com.toshiba.mwcloud.gs.GridStoreFactory;
 import com.toshiba.mwcloud.gs.Query;
 import com.toshiba.mwcloud.gs.Row;
 import com.toshiba.mwcloud.gs.RowSet;
+import com.toshiba.mwcloud.gs.TimeSeries;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -30,11 +41,23 @@ import java.io.PrintWriter;
 import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Properties;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -46,14 +69,40 @@ import org.apache.commons.csv.CSVParser;
  */
 public class GridDBDataset extends M5Forecast {
 
-    final static String TRAINING_COLLECTION_NAME = "NNTraining";
-    final static String VALIDATION_COLLECTION_NAME = "NNValidation";
+    public final static String TRAINING_COLLECTION_NAME = "NNTraining";
+    public final static String VALIDATION_COLLECTION_NAME = "NNValidation";
+    public final static List<String> STATIC_CATEGORIES
+            = Arrays.asList("state_id", "store_id", "cat_id", "dept_id", "item_id");
+
+    /**
+     * Where the dataset rows come from. {@code CSV} dumps the container into a
+     * CSV file and parses it back, {@code STREAM} reads the GridDB
+     * {@link RowSet} straight into a {@link SeriesTable}, and
+     * {@code TIME_SERIES} reads only the last
+     * {@link GridDBBuilder#getWindowLength()} weeks of every series from the
+     * time series containers of {@link TimeSeriesStore}, which must have been
+     * exported beforehand.
+     */
+    public enum LoadMode {
+        CSV,
+        STREAM,
+        TIME_SERIES,
+        SAMPLED
+    }
+
+    private static final int FETCH_BATCH_SIZE = 500;
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static GridDBConfig config;
+    private static GridStorePool storePool;
 
     private final File csvFile;
+    private final SeriesTable table;
 
     protected GridDBDataset(GridDBBuilder builder) throws GSException, FileNotFoundException {
         super(initializeParent(builder));
         this.csvFile = builder.csvFile;
+        this.table = builder.table;
     }
 
     static M5Forecast.Builder initializeParent(GridDBBuilder builder) {
@@ -61,23 +110,24 @@ public class GridDBDataset extends M5Forecast {
                 .optUsage(builder.getUsage())
                 .setTransformation(builder.getTransformation())
                 .setContextLength(builder.getContextLength())
-                .setSampling(builder.getSize(), builder.isRandom())
-                .optCsvFile(builder.csvFile.toPath());
+                .setSampling(builder.getSize(), builder.isRandom());
+        if (builder.csvFile != null) {
+            newBuilder.optCsvFile(builder.csvFile.toPath());
+        }
 
-        for (int i = 1; i <= builder.getMaxWeek(); i++) {
-            newBuilder.addFeature("w_" + i, FieldName.TARGET);
+        for (int i = builder.getFirstWeek(); i <= builder.getMaxWeek(); i++) {
+            newBuilder.addFeature(SeriesTable.WEEK_PREFIX + i, FieldName.TARGET);
         }
 
-        newBuilder.addFeature("state_id", FieldName.FEAT_STATIC_CAT)
-                .addFeature("store_id", FieldName.FEAT_STATIC_CAT)
-                .addFeature("cat_id", FieldName.FEAT_STATIC_CAT)
-                .addFeature("dept_id", FieldName.FEAT_STATIC_CAT)
-                .addFeature("item_id", FieldName.FEAT_STATIC_CAT)
-                .addFieldFeature(
+        for (String category : STATIC_CATEGORIES) {
+            newBuilder.addFeature(category, FieldName.FEAT_STATIC_CAT);
+        }
+        newBuilder.addFieldFeature(
                         FieldName.START,
                         new Feature(
                                 "date",
-                                TimeFeaturizers.getConstantTimeFeaturizer(builder.getStartTime())));
+                                TimeFeaturizers.getConstantTimeFeaturizer(
+                                        builder.getStartTime().plusWeeks(builder.getFirstWeek() - 1))));
 
         return newBuilder;
     }
@@ -87,14 +137,76 @@ public class GridDBDataset extends M5Forecast {
      */
     @Override
     public void prepare(Progress progress) throws IOException {
+        if (table != null) {
+            prepareFeaturizers();
+            return;
+        }
         csvUrl = this.csvFile.toURI().toURL();
+        long start = System.nanoTime();
         try ( Reader reader = new InputStreamReader(getCsvStream(), StandardCharsets.UTF_8)) {
             CSVParser csvParser = new CSVParser(reader, csvFormat);
             csvRecords = csvParser.getRecords();
         }
+        METRICS.timer("dataset.csv.parse").recordSince(start);
         prepareFeaturizers();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long availableSize() {
+        return table != null ? table.size() : super.availableSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getCell(long rowIndex, String featureName) {
+        if (table == null) {
+            return super.getCell(rowIndex, featureName);
+        }
+        return table.getCell(Math.toIntExact(rowIndex), featureName);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * When the rows come from a {@link SeriesTable} the target weeks are
+     * copied out as floats instead of being formatted and re-parsed cell by
+     * cell, and dictionary-coded categories are used as embedding indices
+     * as they are.
+     */
+    @Override
+    public NDArray getRowFeatures(NDManager manager, long index, List<Feature> selected) {
+        if (table != null && !selected.isEmpty()) {
+            if (table.hasGlobalCodes() && isStaticCategorySelection(selected)) {
+                return manager.create(table.getCodes(Math.toIntExact(index)));
+            }
+            int from = SeriesTable.weekOf(selected.get(0).getName());
+            int to = SeriesTable.weekOf(selected.get(selected.size() - 1).getName());
+            if (from >= table.getFirstWeek() && to <= table.getLastWeek()
+                    && to - from + 1 == selected.size()) {
+                return manager.create(table.getTargets(Math.toIntExact(index), from, to));
+            }
+        }
+        return super.getRowFeatures(manager, index, selected);
+    }
+
+    private static boolean isStaticCategorySelection(List<Feature> selected) {
+        if (selected.size() != STATIC_CATEGORIES.size()) {
+            return false;
+        }
+        for (int i = 0; i < selected.size(); i++) {
+            if (!STATIC_CATEGORIES.get(i).equals(selected.get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private InputStream getCsvStream() throws IOException {
         if (csvUrl.getFile().endsWith(".gz")) {
             return new GZIPInputStream(csvUrl.openStream());
@@ -102,30 +214,88 @@ public class GridDBDataset extends M5Forecast {
         return new BufferedInputStream(csvUrl.openStream());
     }
 
+    /**
+     * Returns the settings of the cluster, read once from the system
+     * properties, the environment and {@code griddb.properties}.
+     */
+    public static synchronized GridDBConfig getConfig() throws GSException {
+        if (config == null) {
+            try {
+                config = GridDBConfig.load();
+            } catch (IOException ex) {
+                throw new GSException(ex);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Returns the pool of stores shared by every builder of the process,
+     * closed on shutdown.
+     */
+    public static synchronized GridStorePool getStorePool() throws GSException {
+        if (storePool == null) {
+            GridDBConfig poolConfig = getConfig();
+            storePool = GridStorePool.of(poolConfig).optWaitRecorder(METRICS.timer("griddb.pool.wait")::record);
+            GridStorePool pool = storePool;
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "griddb-pool-shutdown"));
+            METRICS.gauge("griddb.pool.inUse", pool::getInUse);
+            METRICS.gauge("griddb.pool.acquisitions", pool::getAcquisitions);
+            Logger.getLogger(GridDBDataset.class.getName()).info("GridDB: " + poolConfig);
+        }
+        return storePool;
+    }
+
+    /**
+     * Opens a SQL connection to the cluster {@link #connectToGridDB()}
+     * connects to, for the queries TQL cannot express, such as selecting a
+     * subset of columns.
+     */
+    public static Connection connectToGridDBSql() throws SQLException, GSException {
+        GridDBConfig sqlConfig = getConfig();
+        return DriverManager.getConnection(sqlConfig.getSqlUrl(), sqlConfig.getUser(), sqlConfig.getPassword());
+    }
+
+    /**
+     * Opens a store of its own, outside the pool, for one-off tools.
+     */
     public static GridStore connectToGridDB() throws GSException {
-        Properties props = new Properties();
-        props.setProperty("notificationMember", "172.18.0.2:10001");
-        props.setProperty("clusterName", "defaultCluster");
-        props.setProperty("user", "admin");
-        props.setProperty("password", "admin");
-        return GridStoreFactory.getInstance().getGridStore(props);
+        return GridStoreFactory.getInstance().getGridStore(getConfig().getStoreProperties());
     }
 
     public static GridDBBuilder gridDBBuilder() throws Exception {
+        return gridDBBuilder(getStorePool());
+    }
+
+    /**
+     * Creates a builder that takes its stores from {@code stores}, for example
+     * an in-memory stand-in instead of a cluster.
+     */
+    public static GridDBBuilder gridDBBuilder(GridStoreSupplier stores) throws Exception {
         GridDBBuilder builder = null;
         try {
-            builder = new GridDBBuilder();
+            builder = new GridDBBuilder(stores);
         } catch (GSException ex) {
             Logger.getLogger(GridDBDataset.class.getName()).log(Level.SEVERE, null, ex);
         }
         return builder;
     }
 
+    /**
+     * Configures and builds a {@link GridDBDataset}. The builder holds no
+     * store between calls: each call that reads GridDB takes one from its
+     * {@link GridStoreSupplier}, or the one given to
+     * {@link #optStore(GridStore)}, and closes it when done, which returns a
+     * pooled store to its pool.
+     */
     public static class GridDBBuilder {
 
-        GridStore store;
+        private final GridStoreSupplier stores;
+        private GridStore store;
         public int dataLength = 0;
         File csvFile;
+        SeriesTable table;
+        private LoadMode loadMode = LoadMode.CSV;
         private Usage usage;
         private List<TimeSeriesTransform> transformation;
         private int contextLength;
@@ -133,22 +303,43 @@ public class GridDBDataset extends M5Forecast {
         private int size;
         private LocalDateTime startTime;
         private int maxWeek;
-
-        GridDBBuilder() throws GSException, Exception {
-            store = connectToGridDB();
-            seedDatabase();
+        private int windowLength;
+        private Path cacheDir;
+        private final String shardBy;
+        private int readThreads = Runtime.getRuntime().availableProcessors();
+
+        GridDBBuilder(GridStoreSupplier stores) throws GSException, Exception {
+            this.stores = stores;
+            this.shardBy = getConfig().getShardBy();
+            seedDatabase(stores, shardBy);
         }
 
         protected GridDBBuilder self() {
             return this;
         }
 
+        /**
+         * Uses {@code store} for the next call that reads GridDB, which
+         * closes it.
+         */
         public GridDBBuilder optStore(GridStore store) throws GSException {
-            this.store.close();
+            if (this.store != null) {
+                this.store.close();
+            }
             this.store = store;
             return this;
         }
 
+        /**
+         * Hands the store given to {@link #optStore(GridStore)}, or a new one
+         * from the supplier, to a caller that closes it.
+         */
+        private GridStore takeStore() throws GSException {
+            GridStore taken = store;
+            store = null;
+            return taken != null ? taken : stores.get();
+        }
+
         public GridDBBuilder setSize(int size) {
             this.size = size;
             return this;
@@ -174,6 +365,15 @@ public class GridDBDataset extends M5Forecast {
             return this;
         }
 
+        public GridDBBuilder optLoadMode(LoadMode loadMode) {
+            this.loadMode = loadMode;
+            return this;
+        }
+
+        public LoadMode getLoadMode() {
+            return loadMode;
+        }
+
         public GridDBBuilder setStartTime(LocalDateTime startTime) {
             this.startTime = startTime;
             return this;
@@ -192,6 +392,57 @@ public class GridDBDataset extends M5Forecast {
             return this;
         }
 
+        /**
+         * Sets how many weeks, ending at {@link #getMaxWeek()}, the
+         * {@code TIME_SERIES} load mode reads. Defaults to the context length
+         * plus {@link Forecaster#PREDICTION_LENGTH}; widen it when the model
+         * looks further back through lagged features.
+         */
+        public GridDBBuilder optWindowLength(int windowLength) {
+            this.windowLength = windowLength;
+            return this;
+        }
+
+        public int getWindowLength() {
+            return windowLength > 0 ? windowLength : contextLength + Forecaster.PREDICTION_LENGTH;
+        }
+
+        /**
+         * Returns the first week the dataset holds, 1 unless only a window is
+         * loaded.
+         */
+        public int getFirstWeek() {
+            return loadMode == LoadMode.TIME_SERIES || loadMode == LoadMode.SAMPLED
+                    ? Math.max(1, maxWeek - getWindowLength() + 1) : 1;
+        }
+
+        /**
+         * Keeps the tables loaded by the {@code STREAM} and
+         * {@code TIME_SERIES} modes in a {@link SeriesTableCache} under
+         * {@code cacheDir}, reused until the source container changes.
+         */
+        public GridDBBuilder optCacheDir(Path cacheDir) {
+            this.cacheDir = cacheDir;
+            return this;
+        }
+
+        /**
+         * Sets how many {@link SalesShards} of a sharded container are read at
+         * once, each with its own store.
+         */
+        public GridDBBuilder optReadThreads(int readThreads) {
+            this.readThreads = readThreads;
+            return this;
+        }
+
+        /**
+         * Returns the column the sales containers are sharded by, as
+         * configured by {@link GridDBConfig#LAYOUT_SHARD_BY}, or {@code null}.
+         */
+        public String getShardBy() {
+            return shardBy;
+        }
+
         public boolean isRandom() {
             return random;
         }
@@ -200,6 +451,14 @@ public class GridDBDataset extends M5Forecast {
             return csvFile;
         }
 
+        /**
+         * Returns the table loaded by {@link #initData()} in the
+         * {@code STREAM} and {@code TIME_SERIES} load modes.
+         */
+        public SeriesTable getTable() {
+            return table;
+        }
+
         public Usage getUsage() {
             return usage;
         }
@@ -220,71 +479,60 @@ public class GridDBDataset extends M5Forecast {
             return size;
         }
 
-        /*
-    We assume the database is already containing the timeseries data
+        /**
+         * Returns the last week stored for the container of the current
+         * usage, including the weeks
+         * {@link com.mycompany.djl.griddb.db.WeeklyAppender} appended to its
+         * time series containers.
          */
-        private static void seedDatabase() throws Exception {
-            URL trainingData = Forecaster.class.getClassLoader().getResource("data/weekly_sales_train_validation.csv");
-            URL validationData = Forecaster.class.getClassLoader().getResource("data/weekly_sales_train_evaluation.csv");
-            String[] nextRecord;
-            try ( GridStore store = GridDBDataset.connectToGridDB();  CSVReader csvReader = new CSVReader(new InputStreamReader(trainingData.openStream(), StandardCharsets.UTF_8));  CSVReader csvValidationReader = new CSVReader(new InputStreamReader(validationData.openStream(), StandardCharsets.UTF_8))) {
-                store.dropContainer(TRAINING_COLLECTION_NAME);
-                store.dropContainer(VALIDATION_COLLECTION_NAME);
-
-                List<ColumnInfo> columnInfoList = new ArrayList<>();
-
-                nextRecord = csvReader.readNext();
-                for (int i = 0; i < nextRecord.length; i++) {
-                    ColumnInfo columnInfo = new ColumnInfo(nextRecord[i], GSType.STRING);
-                    columnInfoList.add(columnInfo);
+        public int getStoredLastWeek() throws GSException {
+            try ( GridStore store2 = takeStore()) {
+                String containerName = getContainerName();
+                if (shardBy != null) {
+                    List<String> shards = SalesShards.shardNames(
+                            store2, CategoryDictionary.load(store2), containerName, shardBy);
+                    containerName = shards.isEmpty() ? containerName : shards.get(0);
                 }
-
-                ContainerInfo containerInfo = new ContainerInfo();
-                containerInfo.setColumnInfoList(columnInfoList);
-                containerInfo.setName(TRAINING_COLLECTION_NAME);
-                containerInfo.setType(ContainerType.COLLECTION);
-
-                Container<String, Row> container = store.putContainer(TRAINING_COLLECTION_NAME, containerInfo, false);
-
-                while ((nextRecord = csvReader.readNext()) != null) {
-                    Row row = container.createRow();
-                    for (int i = 0; i < nextRecord.length; i++) {
-                        row.setString(i, nextRecord[i]);
-                    }
-                    container.put(row);
-                }
-
-                nextRecord = csvValidationReader.readNext();
-                columnInfoList.clear();
-                for (int i = 0; i < nextRecord.length; i++) {
-                    ColumnInfo columnInfo = new ColumnInfo(nextRecord[i], GSType.STRING);
-                    columnInfoList.add(columnInfo);
+                ContainerInfo info = store2.getContainerInfo(containerName);
+                if (info == null) {
+                    return 0;
                 }
+                return Math.max(SalesSchema.lastWeek(info), shardBy == null
+                        ? TimeSeriesStore.getLastWeek(store2, containerName) : 0);
+            }
+        }
 
-                containerInfo = new ContainerInfo();
-                containerInfo.setName(VALIDATION_COLLECTION_NAME);
-                containerInfo.setColumnInfoList(columnInfoList);
-                containerInfo.setType(ContainerType.COLLECTION);
-
-                container = store.putContainer(VALIDATION_COLLECTION_NAME, containerInfo, false);
-                while ((nextRecord = csvValidationReader.readNext()) != null) {
-                    Row row = container.createRow();
-                    for (int i = 0; i < nextRecord.length; i++) {
-                        String cell = nextRecord[i];
-                        row.setString(i, cell);
-                    }
-                    container.put(row);
-                }
+        /**
+         * Returns the number of distinct labels of each static categorical
+         * feature, as recorded in the stored {@link CategoryDictionary}.
+         */
+        public List<Integer> getCardinality() throws GSException {
+            try ( GridStore store2 = takeStore()) {
+                return CategoryDictionary.load(store2).cardinality(STATIC_CATEGORIES);
             }
         }
 
+        /*
+    Loads the bundled M5 weekly sales into GridDB, unless the containers already hold the same files
+         */
+        private static void seedDatabase(GridStoreSupplier stores, String shardBy) throws Exception {
+            Map<String, URL> sources = new LinkedHashMap<>();
+            sources.put(TRAINING_COLLECTION_NAME, Forecaster.class.getClassLoader().getResource("data/weekly_sales_train_validation.csv"));
+            sources.put(VALIDATION_COLLECTION_NAME, Forecaster.class.getClassLoader().getResource("data/weekly_sales_train_evaluation.csv"));
+            new BulkIngester(stores).optShardBy(shardBy).ingest(sources);
+        }
+
         private File fetchDBDataAndSaveCSV(GridStore store) throws GSException, FileNotFoundException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
             File csvOutputFile = new File(this.getContainerName()+ ".csv");
             try ( GridStore store2 = store) {
                 Container container = store2.getContainer(this.getContainerName());
+                requireWideWeeks(store2.getContainerInfo(this.getContainerName()));
 
                 Query query = container.query("Select *");
+                long start = System.nanoTime();
                 RowSet<Row> rowSet = query.fetch();
+                METRICS.timer("griddb.fetch").recordSince(start);
+                start = System.nanoTime();
 
                 int columnCount = rowSet.getSchema().getColumnCount();
 
@@ -301,24 +549,318 @@ public class GridDBDataset extends M5Forecast {
                 csv.add(builder.toString());
 
                 //Load each row
+                long bytes = 0;
                 while (rowSet.hasNext()) {
                     Row row = rowSet.next();
                     builder = new StringBuilder();
                     for (int i = 0; i < columnCount; i++) {
-                        String val = row.getString(i);
+                        Object val = row.getValue(i);
                         builder.append(val);
                         appendComma(builder, i, columnCount);
                     }
+                    bytes += builder.length();
                     csv.add(builder.toString());
                 }
                 try ( PrintWriter pw = new PrintWriter(csvOutputFile)) {
                     csv.stream()
                             .forEach(pw::println);
                 }
+                METRICS.counter("griddb.rows").add(csv.size() - 1);
+                METRICS.counter("griddb.bytes").add(bytes);
+                METRICS.timer("dataset.csv.write").recordSince(start);
             }
             return csvOutputFile;
         }
 
+        /**
+         * Reads the container, and the weeks up to {@link #getMaxWeek()}
+         * appended to its time series containers since it was loaded.
+         */
+        private SeriesTable fetchDBDataAsTable(GridStore store) throws GSException {
+            try ( GridStore store2 = store) {
+                return fetchContainerAsTable(store2, CategoryDictionary.load(store2), this.getContainerName(), "Select *",
+                        new TimeSeriesStore(startTime), maxWeek);
+            }
+        }
+
+        /**
+         * Reads the {@link SalesShards} of the container concurrently, each
+         * ordered by id, and puts them one after the other in dictionary code
+         * order, so the rows come in the same order on every load.
+         */
+        private SeriesTable fetchShardsAsTable(GridStore store) throws GSException {
+            CategoryDictionary dictionary;
+            List<String> shards;
+            try ( GridStore store2 = store) {
+                dictionary = CategoryDictionary.load(store2);
+                shards = SalesShards.shardNames(store2, dictionary, this.getContainerName(), shardBy);
+            }
+            if (shards.isEmpty()) {
+                throw new GSException(String.format("%s has no shards by %s", this.getContainerName(), shardBy));
+            }
+            long start = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(readThreads, shards.size())));
+            try {
+                List<Future<SeriesTable>> reads = new ArrayList<>(shards.size());
+                for (String shard : shards) {
+                    reads.add(executor.submit(() -> {
+                        try ( GridStore shardStore = stores.get()) {
+                            return fetchContainerAsTable(shardStore, dictionary, shard,
+                                    "Select * order by " + SalesSchema.ID_COLUMN + " asc", null, 0);
+                        }
+                    }));
+                }
+                List<SeriesTable> tables = new ArrayList<>(shards.size());
+                for (Future<SeriesTable> read : reads) {
+                    tables.add(read.get());
+                }
+                SeriesTable merged = SeriesTable.concat(tables);
+                Logger.getLogger(GridDBDataset.class.getName()).info(String.format(
+                        "Read %d series from %d shards of %s in %.1f ms", merged.size(), shards.size(),
+                        this.getContainerName(), (System.nanoTime() - start) / 1e6));
+                return merged;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new GSException(ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof GSException) {
+                    throw (GSException) ex.getCause();
+                }
+                throw new GSException(ex.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Reads the rows of a container, extended to {@code maxWeek} from its
+         * time series containers when the container ends before.
+         */
+        private static SeriesTable fetchContainerAsTable(GridStore store, CategoryDictionary dictionary,
+                String containerName, String tql, TimeSeriesStore timeSeriesStore, int maxWeek) throws GSException {
+            Container container = store.getContainer(containerName);
+
+            Query query = container.query(tql);
+            long start = System.nanoTime();
+            RowSet<Row> rowSet = query.fetch();
+            METRICS.timer("griddb.fetch").recordSince(start);
+            start = System.nanoTime();
+            ContainerInfo cInfo = rowSet.getSchema();
+
+            int idColumn = -1;
+            int[] categoryColumns = new int[STATIC_CATEGORIES.size()];
+            int firstWeek = Integer.MAX_VALUE;
+            int lastWeek = 0;
+            for (int i = 0; i < cInfo.getColumnCount(); i++) {
+                String name = cInfo.getColumnInfo(i).getName();
+                int week = SeriesTable.weekOf(name);
+                if (week > 0) {
+                    firstWeek = Math.min(firstWeek, week);
+                    lastWeek = Math.max(lastWeek, week);
+                } else if ("id".equals(name)) {
+                    idColumn = i;
+                } else if (STATIC_CATEGORIES.contains(name)) {
+                    categoryColumns[STATIC_CATEGORIES.indexOf(name)] = i;
+                }
+            }
+            int[] weekColumns = new int[lastWeek - firstWeek + 1];
+            for (int i = 0; i < cInfo.getColumnCount(); i++) {
+                int week = SeriesTable.weekOf(cInfo.getColumnInfo(i).getName());
+                if (week > 0) {
+                    weekColumns[week - firstWeek] = i;
+                }
+            }
+            boolean typed = !SalesSchema.isStringLayout(cInfo);
+            Date from = null;
+            Date to = null;
+            if (maxWeek > lastWeek) {
+                TimeSeriesStore.requireExport(store, containerName, maxWeek);
+                from = timeSeriesStore.timeOf(lastWeek + 1);
+                to = timeSeriesStore.timeOf(maxWeek);
+            }
+            List<Query<DB.Entry>> appended = new ArrayList<>(FETCH_BATCH_SIZE);
+            int batchStart = 0;
+
+            SeriesTable.Builder table = new SeriesTable.Builder(
+                    STATIC_CATEGORIES, firstWeek, Math.max(lastWeek, maxWeek), rowSet.size());
+            if (typed) {
+                for (int i = 0; i < categoryColumns.length; i++) {
+                    table.useDictionary(i, dictionary.getLabels(STATIC_CATEGORIES.get(i)));
+                }
+            }
+            long bytes = 0;
+            while (rowSet.hasNext()) {
+                Row row = rowSet.next();
+                String id = idColumn >= 0 ? row.getString(idColumn) : null;
+                int index = table.addRow(id);
+                bytes += id == null ? 0 : id.length();
+                for (int i = 0; i < categoryColumns.length; i++) {
+                    if (typed) {
+                        table.setCategoryCode(index, i, row.getInteger(categoryColumns[i]));
+                    } else {
+                        String category = row.getString(categoryColumns[i]);
+                        table.setCategory(index, i, category);
+                        bytes += category.length();
+                    }
+                }
+                for (int i = 0; i < weekColumns.length; i++) {
+                    float value;
+                    if (typed) {
+                        value = row.getInteger(weekColumns[i]);
+                    } else {
+                        String cell = row.getString(weekColumns[i]);
+                        value = Float.parseFloat(cell);
+                        bytes += cell.length();
+                    }
+                    table.setTarget(index, firstWeek + i, value);
+                }
+                if (typed) {
+                    bytes += Integer.BYTES * (categoryColumns.length + weekColumns.length);
+                }
+                if (from != null) {
+                    TimeSeries<DB.Entry> series = store.getTimeSeries(TimeSeriesStore.seriesName(id), DB.Entry.class);
+                    appended.add(series.query(from, to));
+                    if (appended.size() == FETCH_BATCH_SIZE) {
+                        fetchWindows(store, timeSeriesStore, appended, table, batchStart);
+                        batchStart = index + 1;
+                        appended.clear();
+                    }
+                }
+            }
+            fetchWindows(store, timeSeriesStore, appended, table, batchStart);
+            SeriesTable decoded = table.build();
+            METRICS.timer("dataset.decode").recordSince(start);
+            METRICS.counter("griddb.rows").add(decoded.size());
+            METRICS.counter("griddb.bytes").add(bytes);
+            return decoded;
+        }
+
+        /**
+         * Loads the table of the current load mode from the cache, falling back
+         * to GridDB and refreshing the cache when the container hash recorded
+         * in {@link ContainerMetadata} changed.
+         */
+        private SeriesTable loadTable(GridStore store) throws GSException {
+            String hash;
+            try {
+                if (cacheDir == null) {
+                    hash = null;
+                } else if (shardBy == null) {
+                    // the index records the weeks appended since the container was loaded
+                    hash = TimeSeriesStore.isExported(store, this.getContainerName())
+                            ? ContainerMetadata.getHash(store, TimeSeriesStore.indexName(this.getContainerName()))
+                            : ContainerMetadata.getHash(store, this.getContainerName());
+                } else {
+                    hash = SalesShards.getHash(store, this.getContainerName(), shardBy);
+                }
+            } catch (GSException | RuntimeException ex) {
+                store.close();
+                throw ex;
+            }
+            SeriesTableCache cache = null;
+            if (hash != null) {
+                String layout = shardBy == null ? "" : "-by-" + shardBy;
+                cache = new SeriesTableCache(cacheDir.resolve(String.format("%s%s-%s-w%d-%d.bin",
+                        this.getContainerName(), layout, loadMode.name().toLowerCase(Locale.ROOT), getFirstWeek(), maxWeek)));
+                SeriesTable cached = cache.load(hash);
+                if (cached != null) {
+                    store.close();
+                    return cached;
+                }
+            }
+            SeriesTable loaded;
+            if (loadMode == LoadMode.TIME_SERIES) {
+                loaded = fetchWindowAsTable(store);
+            } else if (shardBy != null) {
+                loaded = fetchShardsAsTable(store);
+            } else {
+                loaded = fetchDBDataAsTable(store);
+            }
+            if (cache != null) {
+                try {
+                    cache.save(loaded, hash);
+                } catch (IOException ex) {
+                    Logger.getLogger(GridDBDataset.class.getName()).log(Level.WARNING, "Could not write " + cache.getFile(), ex);
+                }
+            }
+            return loaded;
+        }
+
+        private SeriesTable fetchWindowAsTable(GridStore store) throws GSException {
+            try ( GridStore store2 = store) {
+                TimeSeriesStore.requireExport(store2, this.getContainerName(), maxWeek);
+                TimeSeriesStore timeSeriesStore = new TimeSeriesStore(startTime);
+                CategoryDictionary dictionary = CategoryDictionary.load(store2);
+
+                Container<String, Row> index = store2.getContainer(TimeSeriesStore.indexName(this.getContainerName()));
+                Query<Row> query = index.query("Select *");
+                long start = System.nanoTime();
+                RowSet<Row> rowSet = query.fetch();
+                METRICS.timer("griddb.fetch").recordSince(start);
+
+                int[] categoryColumns = new int[STATIC_CATEGORIES.size()];
+                for (int i = 0; i < categoryColumns.length; i++) {
+                    categoryColumns[i] = SalesSchema.CATEGORY_COLUMNS.indexOf(STATIC_CATEGORIES.get(i)) + 1;
+                }
+                int firstWeek = getFirstWeek();
+                SeriesTable.Builder table
+                        = new SeriesTable.Builder(STATIC_CATEGORIES, firstWeek, maxWeek, rowSet.size());
+                for (int i = 0; i < categoryColumns.length; i++) {
+                    table.useDictionary(i, dictionary.getLabels(STATIC_CATEGORIES.get(i)));
+                }
+
+                Date from = timeSeriesStore.timeOf(firstWeek);
+                Date to = timeSeriesStore.timeOf(maxWeek);
+                List<Query<DB.Entry>> windows = new ArrayList<>(FETCH_BATCH_SIZE);
+                int batchStart = 0;
+                while (rowSet.hasNext()) {
+                    Row row = rowSet.next();
+                    String id = row.getString(0);
+                    int rowIndex = table.addRow(id);
+                    for (int i = 0; i < categoryColumns.length; i++) {
+                        table.setCategoryCode(rowIndex, i, row.getInteger(categoryColumns[i]));
+                    }
+                    TimeSeries<DB.Entry> series = store2.getTimeSeries(TimeSeriesStore.seriesName(id), DB.Entry.class);
+                    windows.add(series.query(from, to));
+                    if (windows.size() == FETCH_BATCH_SIZE) {
+                        fetchWindows(store2, timeSeriesStore, windows, table, batchStart);
+                        batchStart = rowIndex + 1;
+                        windows.clear();
+                    }
+                }
+                fetchWindows(store2, timeSeriesStore, windows, table, batchStart);
+                return table.build();
+            }
+        }
+
+        /**
+         * Runs the window queries of consecutive rows in one round trip and
+         * copies their entries into the table.
+         */
+        private static void fetchWindows(GridStore store, TimeSeriesStore timeSeriesStore,
+                List<Query<DB.Entry>> windows, SeriesTable.Builder table, int firstRow) throws GSException {
+            if (windows.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            store.fetchAll(windows);
+            METRICS.timer("griddb.fetch").recordSince(start);
+            start = System.nanoTime();
+            long rows = 0;
+            for (int i = 0; i < windows.size(); i++) {
+                RowSet<DB.Entry> entries = windows.get(i).getRowSet();
+                while (entries.hasNext()) {
+                    DB.Entry entry = entries.next();
+                    table.setTarget(firstRow + i, timeSeriesStore.weekOf(entry.createdAt), (float) entry.value);
+                    rows++;
+                }
+            }
+            METRICS.timer("dataset.decode").recordSince(start);
+            METRICS.counter("griddb.rows").add(rows);
+            // a timestamp and a double per entry
+            METRICS.counter("griddb.bytes").add(rows * (Long.BYTES + Double.BYTES));
+        }
+
         private static void appendComma(StringBuilder builder, int columnIndex, int length) {
             if (columnIndex < length - 1) {
                 builder.append(",");
@@ -326,10 +868,85 @@ public class GridDBDataset extends M5Forecast {
         }
 
         public GridDBBuilder initData() throws GSException, FileNotFoundException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-            this.csvFile = fetchDBDataAndSaveCSV(this.store);
+            checkLayout();
+            switch (loadMode) {
+                case STREAM:
+                case TIME_SERIES:
+                    this.table = loadTable(takeStore());
+                    break;
+                default:
+                    this.csvFile = fetchDBDataAndSaveCSV(takeStore());
+                    break;
+            }
             return this;
         }
 
+        /**
+         * Builds a training dataset that never loads the whole container:
+         * every batch is a fresh {@link WindowSampler} query for
+         * {@link #getSize()} random series and a random window of
+         * {@link #getWindowLength()} weeks ending no later than
+         * {@link #getMaxWeek()}, run over SQL while the previous batch trains.
+         * Used instead of {@link #initData()} and {@link #build()}, in the
+         * {@code SAMPLED} load mode.
+         *
+         * @param connection a GridDB SQL connection, owned by the dataset
+         * afterwards
+         * @param batchesPerEpoch the number of batches of an epoch
+         */
+        public SampledWindowDataset buildSampled(Connection connection, int batchesPerEpoch) throws GSException {
+            loadMode = LoadMode.SAMPLED;
+            checkLayout();
+            CategoryDictionary dictionary;
+            try ( GridStore store2 = takeStore()) {
+                requireWideWeeks(store2.getContainerInfo(getContainerName()));
+                dictionary = CategoryDictionary.load(store2);
+            }
+            String[][] labels = new String[STATIC_CATEGORIES.size()][];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = dictionary.getLabels(STATIC_CATEGORIES.get(i));
+            }
+            WindowSampler sampler = new WindowSampler(
+                    connection, getContainerName(), labels, getWindowLength(), maxWeek, size);
+            return new SampledWindowDataset(this, sampler, batchesPerEpoch);
+        }
+
+        /**
+         * Fails for the load modes that read the container as a whole, which
+         * does not exist when it is stored as {@link SalesShards}.
+         */
+        private void checkLayout() throws GSException {
+            if (shardBy != null && loadMode != LoadMode.STREAM) {
+                throw new GSException(String.format("The %s load mode needs the unsharded layout, but %s is"
+                        + " sharded by %s; use STREAM", loadMode, this.getContainerName(), shardBy));
+            }
+        }
+
+        /**
+         * Fails for the load modes that read the wide rows only when
+         * {@link #getMaxWeek()} is one of the weeks appended to the time
+         * series containers alone.
+         */
+        private void requireWideWeeks(ContainerInfo info) throws GSException {
+            int lastWeek = info == null ? 0 : SalesSchema.lastWeek(info);
+            if (maxWeek > lastWeek) {
+                throw new GSException(String.format("The %s load mode reads %s up to w_%d, the weeks after are only"
+                        + " in its time series containers; use STREAM or TIME_SERIES", loadMode,
+                        this.getContainerName(), lastWeek));
+            }
+        }
+
+        /**
+         * Builds a dataset over one sampled window, whose weeks replace the
+         * current ones.
+         */
+        GridDBDataset buildWindow(SeriesTable window) {
+            this.table = window;
+            this.maxWeek = window.getLastWeek();
+            this.windowLength = window.getWeeks();
+            return build();
+        }
+
         public GridDBDataset build() {
             GridDBDataset gridDBDataset = null;
             try {
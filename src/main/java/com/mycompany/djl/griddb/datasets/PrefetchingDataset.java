@@ -0,0 +1,355 @@
+package com.mycompany.djl.griddb.datasets;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.timeseries.transform.InstanceSampler;
+import ai.djl.timeseries.transform.TimeSeriesTransform;
+import ai.djl.timeseries.transform.split.InstanceSplit;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.training.dataset.RandomAccessDataset;
+import ai.djl.training.dataset.Record;
+import ai.djl.translate.Batchifier;
+import ai.djl.translate.TranslateException;
+import ai.djl.util.Progress;
+import com.mycompany.djl.griddb.metrics.ManagerMemory;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a {@link RandomAccessDataset} so its batches are built on a pool of
+ * worker threads while the trainer works on the current one. Each worker
+ * fetches the records of a whole batch, which runs the dataset's
+ * {@link TimeSeriesTransform} chain, and stacks them; up to
+ * {@link #optPrefetch(int)} batches are kept ready and are handed out in
+ * sampling order whichever worker finishes first.
+ *
+ * <p>
+ * With {@link #optSeed(long)} the run is reproducible regardless of the
+ * number of workers: the epoch order comes from the seed, and an
+ * {@link InstanceSplit} built with {@link #seededSampler(int)} draws where a
+ * sample's training windows end from a {@link Random} of its own, seeded with
+ * a value derived from the seed, the epoch and the sample index. Nothing is
+ * shared between the workers, so the whole chain runs in parallel.
+ *
+ * <p>
+ * Building a batch, transforms included, is timed as {@code batch.transform}
+ * and the trainer's wait for one as {@code batch.wait} in the
+ * {@link MetricsRegistry}; a {@code batch.wait} close to the step time means
+ * training is bound by the data pipeline.
+ */
+public class PrefetchingDataset implements Dataset, AutoCloseable {
+
+    private static final ThreadLocal<Integer> SAMPLE_SEED = new ThreadLocal<>();
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final ManagerMemory MEMORY = METRICS.managerMemory("prefetch");
+
+    private final RandomAccessDataset dataset;
+    private final int batchSize;
+    private final boolean shuffle;
+    private final AtomicInteger epoch = new AtomicInteger();
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int prefetch = 4;
+    private Long seed;
+    private int shard;
+    private int shards = 1;
+    private ExecutorService executor;
+
+    public PrefetchingDataset(RandomAccessDataset dataset, int batchSize, boolean shuffle) {
+        this.dataset = dataset;
+        this.batchSize = batchSize;
+        this.shuffle = shuffle;
+    }
+
+    public PrefetchingDataset optWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * Sets how many batches are built ahead of the trainer.
+     */
+    public PrefetchingDataset optPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    public PrefetchingDataset optSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Builds only shard {@code shard} of {@code shards} of every batch: the
+     * batches are drawn as before, each cut into {@code shards} contiguous
+     * slices as even as they can be, and the one at position {@code shard}
+     * is built, with the progress of the whole batch. A slice left empty, in
+     * a batch smaller than {@code shards}, is an empty batch; the last slice
+     * never is. Needs {@link #optSeed(long)}, so that every shard is cut from
+     * the same batches.
+     */
+    public PrefetchingDataset optShard(int shard, int shards) {
+        this.shard = shard;
+        this.shards = shards;
+        return this;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the sampler of where the training windows of a series end, for
+     * the {@link InstanceSplit} of a training transformation, reproducible
+     * under {@link #optSeed(long)}.
+     *
+     * @param minFuture the number of points a window must leave after its end
+     */
+    public static InstanceSampler seededSampler(int minFuture) {
+        return new SeededSampler(minFuture, 1.0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterable<Batch> getData(NDManager manager) {
+        if (shards > 1 && seed == null) {
+            throw new IllegalStateException("Sharded batches need a seed");
+        }
+        int currentEpoch = epoch.getAndIncrement();
+        long[] order = sampleOrder(currentEpoch);
+        return () -> new PrefetchIterator(manager, order, currentEpoch);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Batches are always built on this dataset's own workers.
+     */
+    @Override
+    public Iterable<Batch> getData(NDManager manager, ExecutorService executorService) {
+        return getData(manager);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepare(Progress progress) throws IOException, TranslateException {
+        dataset.prepare(progress);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+                Thread thread = new Thread(r, "prefetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private long[] sampleOrder(int currentEpoch) {
+        List<Long> indices = new ArrayList<>();
+        for (long i = 0; i < dataset.size(); i++) {
+            indices.add(i);
+        }
+        if (shuffle) {
+            Collections.shuffle(indices, seed == null ? new Random() : new Random(seed * 31 + currentEpoch));
+        }
+        return indices.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private Batch buildBatch(NDManager manager, long[] indices, int currentEpoch, long progress, long total)
+            throws IOException {
+        long start = System.nanoTime();
+        NDManager batchManager = manager.newSubManager();
+        if (indices.length == 0) {
+            return new TrackedBatch(batchManager, new NDList(), new NDList(), 0, progress, total,
+                    Collections.emptyList(), 0);
+        }
+        try {
+            NDList[] data = new NDList[indices.length];
+            NDList[] labels = new NDList[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                if (seed != null) {
+                    SAMPLE_SEED.set(sampleSeed(seed, currentEpoch, indices[i]));
+                }
+                Record record = dataset.get(batchManager, indices[i]);
+                data[i] = record.getData();
+                labels[i] = record.getLabels();
+            }
+            List<Long> batchIndices = new ArrayList<>(indices.length);
+            for (long index : indices) {
+                batchIndices.add(index);
+            }
+            NDList batchData = Batchifier.STACK.batchify(data);
+            NDList batchLabels = Batchifier.STACK.batchify(labels);
+            long bytes = MEMORY.acquire(batchData, batchLabels);
+            METRICS.timer("batch.transform").recordSince(start);
+            return new TrackedBatch(batchManager, batchData, batchLabels, indices.length, progress, total,
+                    batchIndices, bytes);
+        } catch (IOException | RuntimeException ex) {
+            batchManager.close();
+            throw ex;
+        } finally {
+            SAMPLE_SEED.remove();
+        }
+    }
+
+    private static int sampleSeed(long seed, int epoch, long index) {
+        long mixed = (seed * 1_000_003L + epoch) * 1_000_003L + index;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        return (int) mixed;
+    }
+
+    private final class PrefetchIterator implements Iterator<Batch> {
+
+        private final NDManager manager;
+        private final long[] order;
+        private final int currentEpoch;
+        private final long total;
+        private final Deque<Future<Batch>> pending = new ArrayDeque<>();
+        private int next;
+
+        PrefetchIterator(NDManager manager, long[] order, int currentEpoch) {
+            this.manager = manager;
+            this.order = order;
+            this.currentEpoch = currentEpoch;
+            this.total = (order.length + batchSize - 1) / batchSize;
+            fill();
+        }
+
+        private void fill() {
+            while (pending.size() < Math.max(1, prefetch) && next < order.length) {
+                long[] batch = Arrays.copyOfRange(order, next, Math.min(next + batchSize, order.length));
+                long progress = next / batchSize + 1;
+                next += batch.length;
+                long[] indices = shards == 1 ? batch : Arrays.copyOfRange(batch,
+                        batch.length * shard / shards, batch.length * (shard + 1) / shards);
+                pending.add(getExecutor().submit(() -> buildBatch(manager, indices, currentEpoch, progress, total)));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Batch next() {
+            if (pending.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                long start = System.nanoTime();
+                Batch batch = pending.poll().get();
+                METRICS.timer("batch.wait").recordSince(start);
+                fill();
+                return batch;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Failed to build a batch", ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * A batch whose arrays count as held in {@link #MEMORY} until it is
+     * closed.
+     */
+    private static final class TrackedBatch extends Batch {
+
+        private final long bytes;
+        private boolean released;
+
+        TrackedBatch(NDManager manager, NDList data, NDList labels, int size, long progress, long total,
+                List<Long> indices, long bytes) {
+            super(manager, data, labels, size, Batchifier.STACK, Batchifier.STACK, progress, total, indices);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                MEMORY.release(bytes);
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * Picks every point of a series as the end of a training window with the
+     * same probability, so that {@code expectedInstances} windows are drawn
+     * from it on average, like the default sampler of DeepAR. The draws come
+     * from a {@link Random} seeded for the sample being built, when a seed is
+     * set for it, and the probability from the length of that series alone,
+     * so a sample gets the same windows whichever worker builds it and
+     * whatever was built before.
+     */
+    private static final class SeededSampler extends InstanceSampler {
+
+        private final double expectedInstances;
+
+        SeededSampler(int minFuture, double expectedInstances) {
+            super(0, 0, minFuture);
+            this.expectedInstances = expectedInstances;
+        }
+
+        @Override
+        public List<Integer> call(NDArray ts) {
+            // the last point a window can end at leaves minFuture points after it
+            int first = minPast;
+            int windowSize = (int) ts.getShape().tail() - minFuture - first + 1;
+            if (windowSize <= 0) {
+                return Collections.emptyList();
+            }
+            Integer sampleSeed = SAMPLE_SEED.get();
+            Random random = sampleSeed == null ? ThreadLocalRandom.current() : new Random(sampleSeed);
+            double probability = expectedInstances / windowSize;
+            List<Integer> points = new ArrayList<>();
+            for (int i = 0; i < windowSize; i++) {
+                if (random.nextDouble() < probability) {
+                    points.add(first + i);
+                }
+            }
+            return points;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.mycompany.djl.griddb.datasets;
+
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.training.dataset.RandomAccessDataset;
+import ai.djl.training.dataset.Record;
+import ai.djl.translate.Batchifier;
+import ai.djl.translate.TranslateException;
+import ai.djl.util.Progress;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A training dataset whose batches are read window by window from GridDB
+ * through a {@link WindowSampler}, so the client only ever holds the series
+ * and weeks of the batches in flight. Built by
+ * {@link GridDBDataset.GridDBBuilder#buildSampled}.
+ *
+ * <p>
+ * A background thread runs the query of the next batch, and builds it through
+ * the builder's transformation, while the trainer works on the current one;
+ * {@link #optPrefetch(int)} batches are kept ready. An epoch is a fixed number
+ * of batches rather than a pass over every series.
+ */
+public class SampledWindowDataset implements Dataset, AutoCloseable {
+
+    private final GridDBDataset.GridDBBuilder builder;
+    private final WindowSampler sampler;
+    private final int batchesPerEpoch;
+    private final AtomicInteger epoch = new AtomicInteger();
+    private int prefetch = 2;
+    private Long seed;
+    private ExecutorService executor;
+
+    SampledWindowDataset(GridDBDataset.GridDBBuilder builder, WindowSampler sampler, int batchesPerEpoch) {
+        this.builder = builder;
+        this.sampler = sampler;
+        this.batchesPerEpoch = batchesPerEpoch;
+    }
+
+    /**
+     * Sets how many batches are queried ahead of the trainer.
+     */
+    public SampledWindowDataset optPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Makes the sampled series and windows of every epoch reproducible.
+     */
+    public SampledWindowDataset optSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public WindowSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterable<Batch> getData(NDManager manager) {
+        int currentEpoch = epoch.getAndIncrement();
+        Random random = seed == null ? new Random() : new Random(seed * 31 + currentEpoch);
+        return () -> new SamplingIterator(manager, random);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Batches are always queried on this dataset's own thread.
+     */
+    @Override
+    public Iterable<Batch> getData(NDManager manager, ExecutorService executorService) {
+        return getData(manager);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Reads the series ids, so the first epoch does not wait for them.
+     */
+    @Override
+    public void prepare(Progress progress) throws IOException {
+        try {
+            sampler.getSeriesCount();
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Stops the query thread and closes the connection.
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        sampler.close();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "window-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Queries a window and turns it into a batch through a dataset over just
+     * that window. Only runs on the query thread, which is the only user of
+     * the builder.
+     */
+    private Batch buildBatch(NDManager manager, Random random, long progress)
+            throws IOException, SQLException, TranslateException {
+        SeriesTable window = sampler.sample(random);
+        RandomAccessDataset dataset = builder.buildWindow(window);
+        dataset.prepare(null);
+        NDManager batchManager = manager.newSubManager();
+        try {
+            NDList[] data = new NDList[window.size()];
+            NDList[] labels = new NDList[window.size()];
+            List<Long> indices = new ArrayList<>(window.size());
+            for (int i = 0; i < window.size(); i++) {
+                Record record = dataset.get(batchManager, i);
+                data[i] = record.getData();
+                labels[i] = record.getLabels();
+                indices.add((long) i);
+            }
+            return new Batch(
+                    batchManager,
+                    Batchifier.STACK.batchify(data),
+                    Batchifier.STACK.batchify(labels),
+                    window.size(),
+                    Batchifier.STACK,
+                    Batchifier.STACK,
+                    progress,
+                    batchesPerEpoch,
+                    indices);
+        } catch (IOException | RuntimeException ex) {
+            batchManager.close();
+            throw ex;
+        }
+    }
+
+    private final class SamplingIterator implements Iterator<Batch> {
+
+        private final NDManager manager;
+        private final Random random;
+        private final Deque<Future<Batch>> pending = new ArrayDeque<>();
+        private int submitted;
+
+        SamplingIterator(NDManager manager, Random random) {
+            this.manager = manager;
+            this.random = random;
+            fill();
+        }
+
+        private void fill() {
+            while (pending.size() < Math.max(1, prefetch) && submitted < batchesPerEpoch) {
+                long progress = ++submitted;
+                pending.add(getExecutor().submit(() -> buildBatch(manager, random, progress)));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Batch next() {
+            if (pending.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Batch batch = pending.poll().get();
+                fill();
+                return batch;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Failed to sample a batch", ex.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.mycompany.djl.griddb.datasets;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory table of weekly sales series. Each row holds the series id, one
+ * dictionary code per static categorical column and one float per week, so a
+ * dataset can be fed without keeping the rows around as text.
+ */
+public class SeriesTable {
+
+    static final String WEEK_PREFIX = "w_";
+
+    private final String[] ids;
+    private final List<String> categoryNames;
+    private final String[][] labels;
+    private final IntBuffer codes;
+    private final FloatBuffer targets;
+    private final int firstWeek;
+    private final int weeks;
+    private final boolean globalCodes;
+
+    SeriesTable(String[] ids, List<String> categoryNames, String[][] labels,
+            IntBuffer codes, FloatBuffer targets, int firstWeek, int weeks, boolean globalCodes) {
+        this.ids = ids;
+        this.categoryNames = categoryNames;
+        this.labels = labels;
+        this.codes = codes;
+        this.targets = targets;
+        this.firstWeek = firstWeek;
+        this.weeks = weeks;
+        this.globalCodes = globalCodes;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public String getId(int row) {
+        return ids[row];
+    }
+
+    public List<String> getCategoryNames() {
+        return categoryNames;
+    }
+
+    public int getFirstWeek() {
+        return firstWeek;
+    }
+
+    public int getLastWeek() {
+        return firstWeek + weeks - 1;
+    }
+
+    public int getWeeks() {
+        return weeks;
+    }
+
+    public int getCode(int row, int category) {
+        return codes.get(row * categoryNames.size() + category);
+    }
+
+    public String getLabel(int row, int category) {
+        return labels[category][getCode(row, category)];
+    }
+
+    public String[] getLabels(int category) {
+        return labels[category];
+    }
+
+    /**
+     * Returns whether the category codes come from the stored
+     * {@link com.mycompany.djl.griddb.db.CategoryDictionary} rather than from
+     * the order the labels appeared in this table, which makes them usable as
+     * embedding indices directly.
+     */
+    public boolean hasGlobalCodes() {
+        return globalCodes;
+    }
+
+    /**
+     * Returns the category codes of a row, in {@link #getCategoryNames()}
+     * order.
+     */
+    public float[] getCodes(int row) {
+        float[] values = new float[categoryNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getCode(row, i);
+        }
+        return values;
+    }
+
+    public float getTarget(int row, int week) {
+        return targets.get(row * weeks + week - firstWeek);
+    }
+
+    /**
+     * Copies the targets of weeks {@code from..to} (inclusive) of a row.
+     */
+    public float[] getTargets(int row, int from, int to) {
+        float[] values = new float[to - from + 1];
+        FloatBuffer view = targets.duplicate();
+        view.position(row * weeks + from - firstWeek);
+        view.get(values);
+        return values;
+    }
+
+    /**
+     * Returns the raw value of a cell the same way a CSV record would, or
+     * {@code null} when the table has no such column.
+     */
+    public String getCell(int row, String columnName) {
+        int category = categoryNames.indexOf(columnName);
+        if (category >= 0) {
+            return getLabel(row, category);
+        }
+        int week = weekOf(columnName);
+        if (week >= firstWeek && week <= getLastWeek()) {
+            return Float.toString(getTarget(row, week));
+        }
+        if ("id".equals(columnName)) {
+            return ids[row];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the rows of {@code tables}, one table after the other. The
+     * tables must cover the same weeks and share the stored category
+     * dictionary, as the shards of a container do.
+     */
+    public static SeriesTable concat(List<SeriesTable> tables) {
+        SeriesTable first = tables.get(0);
+        int categories = first.categoryNames.size();
+        int rows = 0;
+        for (SeriesTable table : tables) {
+            if (!table.globalCodes || table.firstWeek != first.firstWeek || table.weeks != first.weeks
+                    || !table.categoryNames.equals(first.categoryNames)) {
+                throw new IllegalArgumentException("Only tables of the same weeks and dictionary can be concatenated");
+            }
+            rows += table.size();
+        }
+        String[] ids = new String[rows];
+        int[] codes = new int[rows * categories];
+        float[] targets = new float[rows * first.weeks];
+        int row = 0;
+        for (SeriesTable table : tables) {
+            System.arraycopy(table.ids, 0, ids, row, table.size());
+            table.codes.duplicate().get(codes, row * categories, table.size() * categories);
+            table.targets.duplicate().get(targets, row * first.weeks, table.size() * first.weeks);
+            row += table.size();
+        }
+        return new SeriesTable(ids, first.categoryNames, first.labels, IntBuffer.wrap(codes), FloatBuffer.wrap(targets),
+                first.firstWeek, first.weeks, true);
+    }
+
+    /**
+     * Returns the week number of a {@code w_<n>} column, or -1 for any other
+     * column.
+     */
+    public static int weekOf(String columnName) {
+        if (columnName == null || !columnName.startsWith(WEEK_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(columnName.substring(WEEK_PREFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    public static class Builder {
+
+        private final List<String> categoryNames;
+        private final List<Map<String, Integer>> dictionaries;
+        private final List<List<String>> labels;
+        private final int firstWeek;
+        private final int weeks;
+        private String[] ids;
+        private int[] codes;
+        private float[] targets;
+        private int rows;
+        private boolean globalCodes;
+
+        public Builder(List<String> categoryNames, int firstWeek, int lastWeek, int capacity) {
+            this.categoryNames = new ArrayList<>(categoryNames);
+            this.firstWeek = firstWeek;
+            this.weeks = lastWeek - firstWeek + 1;
+            this.dictionaries = new ArrayList<>();
+            this.labels = new ArrayList<>();
+            for (int i = 0; i < categoryNames.size(); i++) {
+                dictionaries.add(new HashMap<>());
+                labels.add(new ArrayList<>());
+            }
+            capacity = Math.max(capacity, 16);
+            ids = new String[capacity];
+            codes = new int[capacity * categoryNames.size()];
+            targets = new float[capacity * weeks];
+        }
+
+        public int getFirstWeek() {
+            return firstWeek;
+        }
+
+        public int getLastWeek() {
+            return firstWeek + weeks - 1;
+        }
+
+        /**
+         * Appends an empty row and returns its index.
+         */
+        public int addRow(String id) {
+            if (rows == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                codes = Arrays.copyOf(codes, capacity * categoryNames.size());
+                targets = Arrays.copyOf(targets, capacity * weeks);
+            }
+            ids[rows] = id;
+            return rows++;
+        }
+
+        public void setCategory(int row, int category, String label) {
+            Map<String, Integer> dictionary = dictionaries.get(category);
+            Integer code = dictionary.get(label);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(label, code);
+                labels.get(category).add(label);
+            }
+            codes[row * categoryNames.size() + category] = code;
+        }
+
+        /**
+         * Replaces the labels of a category column with an existing
+         * dictionary, whose codes are then set with
+         * {@link #setCategoryCode(int, int, int)}.
+         */
+        public void useDictionary(int category, String[] dictionaryLabels) {
+            labels.set(category, new ArrayList<>(Arrays.asList(dictionaryLabels)));
+            Map<String, Integer> dictionary = dictionaries.get(category);
+            dictionary.clear();
+            for (int i = 0; i < dictionaryLabels.length; i++) {
+                dictionary.put(dictionaryLabels[i], i);
+            }
+            globalCodes = true;
+        }
+
+        public void setCategoryCode(int row, int category, int code) {
+            codes[row * categoryNames.size() + category] = code;
+        }
+
+        public void setTarget(int row, int week, float value) {
+            targets[row * weeks + week - firstWeek] = value;
+        }
+
+        public SeriesTable build() {
+            String[][] labelArrays = new String[labels.size()][];
+            for (int i = 0; i < labelArrays.length; i++) {
+                labelArrays[i] = labels.get(i).toArray(new String[0]);
+            }
+            return new SeriesTable(
+                    Arrays.copyOf(ids, rows),
+                    categoryNames,
+                    labelArrays,
+                    IntBuffer.wrap(codes, 0, rows * categoryNames.size()).slice(),
+                    FloatBuffer.wrap(targets, 0, rows * weeks).slice(),
+                    firstWeek,
+                    weeks,
+                    globalCodes);
+        }
+    }
+}
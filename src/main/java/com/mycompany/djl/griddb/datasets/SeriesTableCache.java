@@ -0,0 +1,178 @@
+package com.mycompany.djl.griddb.datasets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a {@link SeriesTable} in a binary file that is memory-mapped on later
+ * runs, so a warm start reads neither GridDB nor any text.
+ *
+ * <p>
+ * The file starts with a header holding the content hash of the source
+ * container, the shape of the table, its category labels and series ids. It
+ * is followed by the int category codes and the float32 targets, row-major
+ * and little-endian, which the loaded table reads straight from the mapping.
+ * A file whose hash differs from the current one is ignored and rewritten.
+ */
+public class SeriesTableCache {
+
+    private static final Logger LOGGER = Logger.getLogger(SeriesTableCache.class.getName());
+
+    private static final int MAGIC = 0x4d35_5443;
+    private static final int VERSION = 1;
+    private static final int PREAMBLE_BYTES = 12;
+
+    private final Path file;
+
+    public SeriesTableCache(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Maps the cached table, or returns {@code null} when there is no cache
+     * file, it was written for another content hash or it cannot be read.
+     */
+    public SeriesTable load(String hash) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try ( FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] headerBytes = new byte[buffer.getInt()];
+            buffer.get(headerBytes);
+
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+            if (!header.readUTF().equals(hash)) {
+                LOGGER.info(String.format("%s is stale, reloading", file));
+                return null;
+            }
+            int rows = header.readInt();
+            int firstWeek = header.readInt();
+            int weeks = header.readInt();
+            boolean globalCodes = header.readBoolean();
+            int categories = header.readInt();
+            List<String> categoryNames = new ArrayList<>(categories);
+            String[][] labels = new String[categories][];
+            for (int i = 0; i < categories; i++) {
+                categoryNames.add(header.readUTF());
+                labels[i] = new String[header.readInt()];
+                for (int j = 0; j < labels[i].length; j++) {
+                    labels[i][j] = header.readUTF();
+                }
+            }
+            String[] ids = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = header.readUTF();
+            }
+
+            buffer.position(dataOffset(headerBytes.length));
+            IntBuffer codes = slice(buffer, rows * categories * Integer.BYTES).asIntBuffer();
+            FloatBuffer targets = slice(buffer, rows * weeks * Float.BYTES).asFloatBuffer();
+            return new SeriesTable(ids, categoryNames, labels, codes, targets, firstWeek, weeks, globalCodes);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable cache " + file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a table to the cache file, replacing it atomically.
+     */
+    public void save(SeriesTable table, String hash) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try ( DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeUTF(hash);
+            header.writeInt(table.size());
+            header.writeInt(table.getFirstWeek());
+            header.writeInt(table.getWeeks());
+            header.writeBoolean(table.hasGlobalCodes());
+            List<String> categoryNames = table.getCategoryNames();
+            header.writeInt(categoryNames.size());
+            for (int i = 0; i < categoryNames.size(); i++) {
+                header.writeUTF(categoryNames.get(i));
+                String[] labels = table.getLabels(i);
+                header.writeInt(labels.length);
+                for (String label : labels) {
+                    header.writeUTF(label);
+                }
+            }
+            for (int i = 0; i < table.size(); i++) {
+                header.writeUTF(table.getId(i));
+            }
+        }
+
+        int categories = table.getCategoryNames().size();
+        long offset = dataOffset(headerBytes.size());
+        long size = offset + (long) table.size() * (categories + table.getWeeks()) * Float.BYTES;
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try ( FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(headerBytes.size());
+                buffer.put(headerBytes.toByteArray());
+                buffer.position((int) offset);
+                for (int row = 0; row < table.size(); row++) {
+                    for (int i = 0; i < categories; i++) {
+                        buffer.putInt(table.getCode(row, i));
+                    }
+                }
+                for (int row = 0; row < table.size(); row++) {
+                    for (int week = table.getFirstWeek(); week <= table.getLastWeek(); week++) {
+                        buffer.putFloat(table.getTarget(row, week));
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        LOGGER.info(String.format("Cached %d series in %s", table.size(), file));
+    }
+
+    /**
+     * Returns where the codes start, rounded up so the int and float views
+     * are aligned.
+     */
+    private static int dataOffset(int headerLength) {
+        int end = PREAMBLE_BYTES + headerLength;
+        return (end + 7) & ~7;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer view = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        view.limit(length);
+        buffer.position(buffer.position() + length);
+        return view;
+    }
+}
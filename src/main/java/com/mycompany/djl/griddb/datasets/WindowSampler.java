@@ -0,0 +1,166 @@
+package com.mycompany.djl.griddb.datasets;
+
+import com.mycompany.djl.griddb.db.SalesSchema;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Reads random training windows straight from a typed sales container, so a
+ * training step never needs the whole table on the client.
+ *
+ * <p>
+ * TQL always returns whole rows, so the windows are read over GridDB's SQL
+ * interface: each {@link #sample(Random)} picks {@code batchSize} random
+ * series ids and a random window of {@code windowLength} weeks, and selects
+ * only the id, the category codes and the week columns of that window for
+ * those ids. The ids are read once, as a single column. All series of a
+ * sample share the window, which keeps it to one query; the split point
+ * inside the window is still drawn per series by the training
+ * transformation.
+ */
+public class WindowSampler implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(WindowSampler.class.getName());
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private final Connection connection;
+    private final String containerName;
+    private final String[][] labels;
+    private final int windowLength;
+    private final int lastWeek;
+    private final int batchSize;
+    private int firstWeek = 1;
+    private List<String> ids;
+
+    /**
+     * @param connection the SQL connection, closed with the sampler
+     * @param containerName the typed sales container
+     * @param labels the dictionary labels of every static category, in
+     * {@link GridDBDataset#STATIC_CATEGORIES} order
+     * @param windowLength the number of weeks of a window
+     * @param lastWeek the last week a window may end at
+     * @param batchSize the number of series of a sample
+     */
+    public WindowSampler(Connection connection, String containerName, String[][] labels, int windowLength,
+            int lastWeek, int batchSize) {
+        this.connection = connection;
+        this.containerName = containerName;
+        this.labels = labels;
+        this.windowLength = windowLength;
+        this.lastWeek = lastWeek;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the first week a window may start at.
+     */
+    public WindowSampler optFirstWeek(int firstWeek) {
+        this.firstWeek = firstWeek;
+        return this;
+    }
+
+    /**
+     * Returns the number of series the windows are drawn from.
+     */
+    public synchronized int getSeriesCount() throws SQLException {
+        return ids().size();
+    }
+
+    /**
+     * Reads one random window of {@code batchSize} random series.
+     */
+    public synchronized SeriesTable sample(Random random) throws SQLException {
+        List<String> allIds = ids();
+        int windowStart = firstWeek;
+        int latestStart = lastWeek - windowLength + 1;
+        if (latestStart > firstWeek) {
+            windowStart += random.nextInt(latestStart - firstWeek + 1);
+        }
+        int windowEnd = Math.min(lastWeek, windowStart + windowLength - 1);
+
+        int rows = Math.min(batchSize, allIds.size());
+        Set<String> chosen = new LinkedHashSet<>(rows * 2);
+        while (chosen.size() < rows) {
+            chosen.add(allIds.get(random.nextInt(allIds.size())));
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(SalesSchema.ID_COLUMN);
+        for (String category : GridDBDataset.STATIC_CATEGORIES) {
+            sql.append(", ").append(category);
+        }
+        for (int week = windowStart; week <= windowEnd; week++) {
+            sql.append(", ").append(SalesSchema.WEEK_PREFIX).append(week);
+        }
+        sql.append(" FROM ").append(containerName).append(" WHERE ").append(SalesSchema.ID_COLUMN).append(" IN (");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") LIMIT ").append(rows);
+
+        int categories = GridDBDataset.STATIC_CATEGORIES.size();
+        SeriesTable.Builder table
+                = new SeriesTable.Builder(GridDBDataset.STATIC_CATEGORIES, windowStart, windowEnd, rows);
+        for (int i = 0; i < categories; i++) {
+            table.useDictionary(i, labels[i]);
+        }
+        try ( PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            for (String id : chosen) {
+                statement.setString(parameter++, id);
+            }
+            statement.setFetchSize(rows);
+            long start = System.nanoTime();
+            long bytes = 0;
+            try ( ResultSet resultSet = statement.executeQuery()) {
+                METRICS.timer("griddb.sql").recordSince(start);
+                start = System.nanoTime();
+                while (resultSet.next()) {
+                    String id = resultSet.getString(1);
+                    int row = table.addRow(id);
+                    for (int i = 0; i < categories; i++) {
+                        table.setCategoryCode(row, i, resultSet.getInt(2 + i));
+                    }
+                    for (int week = windowStart; week <= windowEnd; week++) {
+                        table.setTarget(row, week, resultSet.getInt(2 + categories + week - windowStart));
+                    }
+                    bytes += id.length() + Integer.BYTES * (categories + windowEnd - windowStart + 1);
+                }
+            }
+            METRICS.timer("dataset.decode").recordSince(start);
+            METRICS.counter("griddb.bytes").add(bytes);
+        }
+        SeriesTable window = table.build();
+        METRICS.counter("griddb.rows").add(window.size());
+        return window;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        connection.close();
+    }
+
+    private List<String> ids() throws SQLException {
+        if (ids == null) {
+            ids = new ArrayList<>();
+            String sql = "SELECT " + SalesSchema.ID_COLUMN + " FROM " + containerName;
+            try ( Statement statement = connection.createStatement();  ResultSet resultSet = statement.executeQuery(sql)) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getString(1));
+                }
+            }
+            LOGGER.info(String.format("Sampling windows of %d weeks from %d series of %s",
+                    windowLength, ids.size(), containerName));
+        }
+        return ids;
+    }
+}
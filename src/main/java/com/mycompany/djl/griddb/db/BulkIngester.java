@@ -0,0 +1,209 @@
+package com.mycompany.djl.griddb.db;
+
+import com.opencsv.CSVReader;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Row;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Loads weekly sales CSV files into typed GridDB containers.
+ *
+ * <p>
+ * Rows are sent with {@link GridStore#multiPut(Map)} in batches of
+ * {@link #optBatchSize(int)} rows instead of one round trip per row, and the
+ * containers are loaded concurrently, each with its own store. A container is
+ * only reloaded when the hash of its source differs from the one recorded in
+ * {@link ContainerMetadata}. {@link WeeklyAppender} leaves the containers
+ * and their hashes alone, so appending weeks causes no reload.
+ *
+ * <p>
+ * With {@link #optShardBy(String)}, each container is written as the
+ * {@link SalesShards} of a categorical column instead, every
+ * {@link GridStore#multiPut(Map)} carrying the rows of all shards read
+ * since the last one.
+ */
+public class BulkIngester {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkIngester.class.getName());
+
+    private final GridStoreSupplier stores;
+    private int batchSize = 1000;
+    private int threads = 2;
+    private String shardBy;
+
+    public BulkIngester(GridStoreSupplier stores) {
+        this.stores = stores;
+    }
+
+    public BulkIngester optBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public BulkIngester optThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Splits every container into one shard per label of {@code column},
+     * such as {@code store_id}, or keeps it whole when {@code null}.
+     */
+    public BulkIngester optShardBy(String column) {
+        this.shardBy = column;
+        return this;
+    }
+
+    /**
+     * Loads each source into the container of the same name.
+     *
+     * @param sources the CSV file for each container name
+     * @return the number of rows written, 0 when every container was up to
+     * date
+     */
+    public long ingest(Map<String, URL> sources) throws IOException {
+        CategoryDictionary dictionary;
+        Map<String, String> pending = new LinkedHashMap<>();
+        try ( GridStore store = stores.get()) {
+            dictionary = CategoryDictionary.load(store);
+            for (Map.Entry<String, URL> source : sources.entrySet()) {
+                String hash = ContainerMetadata.contentHash(source.getValue());
+                String recorded = shardBy == null
+                        ? ContainerMetadata.getHash(store, source.getKey())
+                        : SalesShards.getHash(store, source.getKey(), shardBy);
+                if (hash.equals(ContainerMetadata.sourceHash(recorded))) {
+                    LOGGER.info(String.format("%s is up to date, skipping", source.getKey()));
+                } else {
+                    pending.put(source.getKey(), hash);
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Future<Long>> loads = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pending.size())));
+        try {
+            for (String containerName : pending.keySet()) {
+                URL source = sources.get(containerName);
+                loads.put(containerName, executor.submit(() -> shardBy == null
+                        ? load(containerName, source, dictionary)
+                        : loadShards(containerName, source, dictionary)));
+            }
+            long total = 0;
+            try ( GridStore store = stores.get()) {
+                Map<String, Long> rows = new LinkedHashMap<>();
+                for (Map.Entry<String, Future<Long>> load : loads.entrySet()) {
+                    rows.put(load.getKey(), load.getValue().get());
+                }
+                dictionary.save(store);
+                for (Map.Entry<String, Long> entry : rows.entrySet()) {
+                    ContainerMetadata.putHash(store, entry.getKey(), pending.get(entry.getKey()), entry.getValue());
+                    total += entry.getValue();
+                }
+            }
+            return total;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new GSException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new GSException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long load(String containerName, URL source, CategoryDictionary dictionary) throws IOException {
+        try ( GridStore store = stores.get();  CSVReader csvReader = new CSVReader(new InputStreamReader(source.openStream(), StandardCharsets.UTF_8))) {
+            store.dropContainer(containerName);
+            String[] header = csvReader.readNext();
+            Container<String, Row> container = store.putContainer(containerName, SalesSchema.containerInfo(containerName, header), false);
+
+            List<Row> batch = new ArrayList<>(batchSize);
+            Map<String, List<Row>> request = Collections.singletonMap(containerName, batch);
+            long rows = 0;
+            String[] nextRecord;
+            while ((nextRecord = csvReader.readNext()) != null) {
+                Row row = container.createRow();
+                SalesSchema.encode(header, nextRecord, row, dictionary);
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    store.multiPut(request);
+                    rows += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                store.multiPut(request);
+                rows += batch.size();
+            }
+            LOGGER.info(String.format("Loaded %s: %d rows", containerName, rows));
+            return rows;
+        }
+    }
+
+    private long loadShards(String containerName, URL source, CategoryDictionary dictionary) throws IOException {
+        try ( GridStore store = stores.get();  CSVReader csvReader = new CSVReader(new InputStreamReader(source.openStream(), StandardCharsets.UTF_8))) {
+            store.dropContainer(containerName);
+            for (String shard : SalesShards.shardNames(store, dictionary, containerName, shardBy)) {
+                store.dropContainer(shard);
+            }
+            String[] header = csvReader.readNext();
+            int shardColumn = Arrays.asList(header).indexOf(shardBy);
+            if (shardColumn < 0) {
+                throw new GSException(String.format("%s has no %s column to shard by", containerName, shardBy));
+            }
+
+            Map<String, Container<String, Row>> shards = new HashMap<>();
+            Map<String, List<Row>> request = new LinkedHashMap<>();
+            int pendingRows = 0;
+            long rows = 0;
+            String[] nextRecord;
+            while ((nextRecord = csvReader.readNext()) != null) {
+                String shard = SalesShards.shardName(containerName, nextRecord[shardColumn]);
+                Container<String, Row> container = shards.get(shard);
+                if (container == null) {
+                    store.dropContainer(shard);
+                    container = store.putContainer(shard, SalesSchema.containerInfo(shard, header), false);
+                    shards.put(shard, container);
+                }
+                Row row = container.createRow();
+                SalesSchema.encode(header, nextRecord, row, dictionary);
+                request.computeIfAbsent(shard, k -> new ArrayList<>()).add(row);
+                if (++pendingRows >= batchSize) {
+                    store.multiPut(request);
+                    rows += pendingRows;
+                    pendingRows = 0;
+                    request.clear();
+                }
+            }
+            if (pendingRows > 0) {
+                store.multiPut(request);
+                rows += pendingRows;
+            }
+            LOGGER.info(String.format("Loaded %s: %d rows in %d shards by %s", containerName, rows, shards.size(), shardBy));
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.mycompany.djl.griddb.db;
+
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Query;
+import com.toshiba.mwcloud.gs.Row;
+import com.toshiba.mwcloud.gs.RowSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of the categorical id columns. Every distinct label of
+ * a column gets a small int code, assigned in order of first appearance, and
+ * the mapping is kept in the {@value #CONTAINER_NAME} collection so that
+ * every container and every run agrees on the codes.
+ */
+public class CategoryDictionary {
+
+    public static final String CONTAINER_NAME = "NNDictionary";
+
+    private final Map<String, Map<String, Integer>> codes = new HashMap<>();
+    private final Map<String, List<String>> labels = new HashMap<>();
+
+    /**
+     * Returns the code of a label, assigning the next free code when the label
+     * has not been seen yet.
+     */
+    public synchronized int encode(String column, String label) {
+        Map<String, Integer> columnCodes = codes.computeIfAbsent(column, k -> new HashMap<>());
+        Integer code = columnCodes.get(label);
+        if (code == null) {
+            List<String> columnLabels = labels.computeIfAbsent(column, k -> new ArrayList<>());
+            code = columnLabels.size();
+            columnCodes.put(label, code);
+            columnLabels.add(label);
+        }
+        return code;
+    }
+
+    public synchronized String decode(String column, int code) {
+        return labels.get(column).get(code);
+    }
+
+    /**
+     * Returns the labels of a column indexed by code.
+     */
+    public synchronized String[] getLabels(String column) {
+        List<String> columnLabels = labels.get(column);
+        return columnLabels == null ? new String[0] : columnLabels.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the number of distinct labels of each column, in the given
+     * order.
+     */
+    public synchronized List<Integer> cardinality(List<String> columns) {
+        List<Integer> cardinality = new ArrayList<>();
+        for (String column : columns) {
+            List<String> columnLabels = labels.get(column);
+            cardinality.add(columnLabels == null ? 0 : columnLabels.size());
+        }
+        return cardinality;
+    }
+
+    public synchronized boolean isEmpty() {
+        return labels.isEmpty();
+    }
+
+    public synchronized void save(GridStore store) throws GSException {
+        Container<String, Row> container = store.putContainer(CONTAINER_NAME, containerInfo(), false);
+        List<Row> rows = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : labels.entrySet()) {
+            List<String> columnLabels = entry.getValue();
+            for (int code = 0; code < columnLabels.size(); code++) {
+                Row row = container.createRow();
+                row.setString(0, entry.getKey() + ":" + code);
+                row.setString(1, entry.getKey());
+                row.setInteger(2, code);
+                row.setString(3, columnLabels.get(code));
+                rows.add(row);
+            }
+        }
+        container.put(rows);
+    }
+
+    public static CategoryDictionary load(GridStore store) throws GSException {
+        CategoryDictionary dictionary = new CategoryDictionary();
+        Container<String, Row> container = store.getContainer(CONTAINER_NAME);
+        if (container == null) {
+            return dictionary;
+        }
+        Query<Row> query = container.query("Select * order by code asc");
+        RowSet<Row> rowSet = query.fetch();
+        while (rowSet.hasNext()) {
+            Row row = rowSet.next();
+            dictionary.encode(row.getString(1), row.getString(3));
+        }
+        return dictionary;
+    }
+
+    private static ContainerInfo containerInfo() {
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setName(CONTAINER_NAME);
+        containerInfo.setType(ContainerType.COLLECTION);
+        containerInfo.setColumnInfoList(Arrays.asList(
+                new ColumnInfo("key", GSType.STRING),
+                new ColumnInfo("feature", GSType.STRING),
+                new ColumnInfo("code", GSType.INTEGER),
+                new ColumnInfo("label", GSType.STRING)));
+        containerInfo.setRowKeyAssigned(true);
+        return containerInfo;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mycompany.djl.griddb.db;
+
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Row;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Records, per container, the hash of the content it was loaded from, in the
+ * {@value #CONTAINER_NAME} collection. Loaders compare it with the hash of
+ * their source to skip reloading unchanged data, and caches derived from a
+ * container use it to notice that the container changed.
+ *
+ * <p>
+ * The {@link TimeSeriesStore} index of a collection that had weeks appended
+ * records {@code <source hash>+<digest of the appended deltas>}
+ * ({@link #appendedHash(String, String)}), so it still counts as exported
+ * from its collection while every cache of it is invalidated.
+ */
+public class ContainerMetadata {
+
+    public static final String CONTAINER_NAME = "NNMetadata";
+
+    private static final char APPENDED_SEPARATOR = '+';
+
+    private ContainerMetadata() {
+    }
+
+    /**
+     * Returns the content hash recorded for a container, or {@code null} when
+     * the container is missing or was never recorded.
+     */
+    public static String getHash(GridStore store, String containerName) throws GSException {
+        if (store.getContainerInfo(containerName) == null) {
+            return null;
+        }
+        return getRecordedHash(store, containerName);
+    }
+
+    /**
+     * Returns the content hash recorded for a name, whether or not a
+     * container of that name exists, as for the shards of
+     * {@link SalesShards}.
+     */
+    public static String getRecordedHash(GridStore store, String containerName) throws GSException {
+        Container<String, Row> container = store.getContainer(CONTAINER_NAME);
+        if (container == null) {
+            return null;
+        }
+        Row row = container.get(containerName);
+        return row == null ? null : row.getString(1);
+    }
+
+    public static void putHash(GridStore store, String containerName, String hash, long rows)
+            throws GSException {
+        Container<String, Row> container = store.putContainer(CONTAINER_NAME, containerInfo(), false);
+        Row row = container.createRow();
+        row.setString(0, containerName);
+        row.setString(1, hash);
+        row.setLong(2, rows);
+        row.setTimestamp(3, new Date());
+        container.put(row);
+    }
+
+    /**
+     * Returns the hash to record after appending a delta, with hash
+     * {@code deltaHash}, to a container whose recorded hash is {@code hash}.
+     */
+    public static String appendedHash(String hash, String deltaHash) {
+        String previous = hash == null ? "" : hash;
+        MessageDigest digest = sha256();
+        digest.update((previous + deltaHash).getBytes(StandardCharsets.UTF_8));
+        return sourceHash(previous) + APPENDED_SEPARATOR + toHex(digest.digest());
+    }
+
+    /**
+     * Returns the hash of the source a container was first loaded from,
+     * ignoring any appended deltas.
+     */
+    public static String sourceHash(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        int separator = hash.indexOf(APPENDED_SEPARATOR);
+        return separator < 0 ? hash : hash.substring(0, separator);
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 of a resource.
+     */
+    public static String contentHash(URL source) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try ( InputStream is = source.openStream()) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static ContainerInfo containerInfo() {
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setName(CONTAINER_NAME);
+        containerInfo.setType(ContainerType.COLLECTION);
+        containerInfo.setColumnInfoList(Arrays.asList(
+                new ColumnInfo("container", GSType.STRING),
+                new ColumnInfo("hash", GSType.STRING),
+                new ColumnInfo("rows", GSType.LONG),
+                new ColumnInfo("updatedAt", GSType.TIMESTAMP)));
+        containerInfo.setRowKeyAssigned(true);
+        return containerInfo;
+    }
+}
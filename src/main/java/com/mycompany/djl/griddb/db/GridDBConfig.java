@@ -0,0 +1,161 @@
+package com.mycompany.djl.griddb.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Connection and pool settings for GridDB. Every key is looked up, in order,
+ * as the {@code griddb.<key>} system property, the {@code GRIDDB_<KEY>}
+ * environment variable (upper case, with {@code _} for dots and between
+ * words, e.g. {@code GRIDDB_NOTIFICATION_MEMBER} or
+ * {@code GRIDDB_POOL_SIZE}), the {@value #RESOURCE} resource, and the
+ * defaults of the bundled docker setup.
+ *
+ * <p>
+ * Keys not starting with {@code pool.}, {@code sql.} or {@code layout.} are
+ * passed on to
+ * {@link com.toshiba.mwcloud.gs.GridStoreFactory#getGridStore} as they are.
+ */
+public class GridDBConfig {
+
+    public static final String RESOURCE = "griddb.properties";
+
+    public static final String POOL_SIZE = "pool.size";
+    public static final String POOL_MAX_WAIT_MILLIS = "pool.maxWaitMillis";
+    public static final String SQL_URL = "sql.url";
+    public static final String LAYOUT_SHARD_BY = "layout.shardBy";
+
+    private static final String[] STORE_KEYS = {"notificationMember", "clusterName", "user", "password"};
+
+    private final Properties properties;
+
+    private GridDBConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Reads the settings from the system properties, the environment and
+     * the {@value #RESOURCE} resource.
+     */
+    public static GridDBConfig load() throws IOException {
+        Properties properties = defaults();
+        try ( InputStream is = GridDBConfig.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (is != null) {
+                properties.load(is);
+            }
+        }
+        Map<String, String> env = System.getenv();
+        for (String key : properties.stringPropertyNames()) {
+            String value = env.get(envName(key));
+            if (value != null) {
+                properties.setProperty(key, value);
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("griddb.")) {
+                properties.setProperty(name.substring("griddb.".length()), System.getProperty(name));
+            }
+        }
+        return new GridDBConfig(properties);
+    }
+
+    /**
+     * Returns a configuration of the given settings on top of the defaults.
+     */
+    public static GridDBConfig of(Properties overrides) {
+        Properties properties = defaults();
+        properties.putAll(overrides);
+        return new GridDBConfig(properties);
+    }
+
+    public String get(String key) {
+        return properties.getProperty(key);
+    }
+
+    public int getPoolSize() {
+        return Integer.parseInt(get(POOL_SIZE));
+    }
+
+    public long getPoolMaxWaitMillis() {
+        return Long.parseLong(get(POOL_MAX_WAIT_MILLIS));
+    }
+
+    public String getSqlUrl() {
+        return get(SQL_URL);
+    }
+
+    /**
+     * Returns the column the sales containers are split by into
+     * {@link SalesShards}, or {@code null} for one container each.
+     */
+    public String getShardBy() {
+        String shardBy = get(LAYOUT_SHARD_BY);
+        return shardBy == null || shardBy.trim().isEmpty() ? null : shardBy.trim();
+    }
+
+    public String getUser() {
+        return get("user");
+    }
+
+    public String getPassword() {
+        return get("password");
+    }
+
+    /**
+     * Returns the properties to open a store with.
+     */
+    public Properties getStoreProperties() {
+        Properties storeProperties = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith("pool.") && !key.startsWith("sql.") && !key.startsWith("layout.")) {
+                storeProperties.setProperty(key, properties.getProperty(key));
+            }
+        }
+        return storeProperties;
+    }
+
+    /**
+     * Returns the settings with the password masked, for logging.
+     */
+    @Override
+    public String toString() {
+        Properties shown = new Properties();
+        shown.putAll(properties);
+        shown.setProperty("password", "***");
+        return shown.toString();
+    }
+
+    /**
+     * Returns the environment variable of a key.
+     */
+    static String envName(String key) {
+        StringBuilder name = new StringBuilder("GRIDDB_");
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '.') {
+                name.append('_');
+            } else if (Character.isUpperCase(c)) {
+                name.append('_').append(c);
+            } else {
+                name.append(Character.toUpperCase(c));
+            }
+        }
+        return name.toString().toUpperCase(Locale.ROOT);
+    }
+
+    private static Properties defaults() {
+        Properties properties = new Properties();
+        String[] values = {"172.18.0.2:10001", "defaultCluster", "admin", "admin"};
+        for (int i = 0; i < STORE_KEYS.length; i++) {
+            properties.setProperty(STORE_KEYS[i], values[i]);
+        }
+        properties.setProperty(POOL_SIZE, "4");
+        properties.setProperty(POOL_MAX_WAIT_MILLIS, "30000");
+        properties.setProperty(SQL_URL, "jdbc:gs://172.18.0.2:20001/defaultCluster/public");
+        properties.setProperty(LAYOUT_SHARD_BY, "");
+        return properties;
+    }
+}
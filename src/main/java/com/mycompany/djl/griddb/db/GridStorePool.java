@@ -0,0 +1,313 @@
+package com.mycompany.djl.griddb.db;
+
+import com.toshiba.mwcloud.gs.Collection;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.GridStoreFactory;
+import com.toshiba.mwcloud.gs.TimeSeries;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread-safe pool of at most {@code maxSize} {@link GridStore}s, opened on
+ * demand by a {@link GridStoreSupplier} and reused instead of connecting to
+ * the cluster for every task.
+ *
+ * <p>
+ * {@link #get()} hands out a lease: a {@link GridStore} that is used by one
+ * thread at a time, as any store, and whose {@link GridStore#close()} returns
+ * the store to the pool, so code written against a plain
+ * {@link GridStoreSupplier} needs no change. A lease is unusable once closed,
+ * and so are the containers taken from it, since the store behind them may
+ * already be leased to another thread.
+ * When every store is leased, {@link #get()} waits up to
+ * {@link #optMaxWaitMillis(long)} for one to come back; the time every
+ * {@link #get()} spent waiting is recorded, and passed to
+ * {@link #optWaitRecorder(LongConsumer)}, e.g. a timer. A store whose calls failed is closed instead of being
+ * reused.
+ *
+ * <p>
+ * Any supplier can back the pool, e.g.
+ * {@code new GridStorePool(() -> inMemoryStore, 4)} for the in-memory store
+ * of the benchmarks.
+ */
+public class GridStorePool implements GridStoreSupplier, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(GridStorePool.class.getName());
+    private static final Class<?>[] CONTAINER_TYPES = {Container.class, Collection.class, TimeSeries.class};
+
+    private final GridStoreSupplier factory;
+    private final int maxSize;
+    private long maxWaitMillis = 30_000;
+    private LongConsumer waitRecorder = nanos -> {
+    };
+    private final Semaphore permits;
+    private final BlockingDeque<GridStore> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger discarded = new AtomicInteger();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param factory opens a new store
+     * @param maxSize the number of stores open at most
+     */
+    public GridStorePool(GridStoreSupplier factory, int maxSize) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Creates a pool connecting to the cluster of {@code config}.
+     */
+    public static GridStorePool of(GridDBConfig config) {
+        return new GridStorePool(
+                () -> GridStoreFactory.getInstance().getGridStore(config.getStoreProperties()), config.getPoolSize())
+                .optMaxWaitMillis(config.getPoolMaxWaitMillis());
+    }
+
+    public GridStorePool optMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /**
+     * Sets what receives the time, in nanoseconds, every {@link #get()}
+     * waited for a store, timed out or not.
+     */
+    public GridStorePool optWaitRecorder(LongConsumer waitRecorder) {
+        this.waitRecorder = waitRecorder;
+        return this;
+    }
+
+    /**
+     * Leases a store, waiting for one to be returned when all are in use.
+     *
+     * @throws GSException when no store is returned in time, the pool is
+     * closed or a new store cannot be opened
+     */
+    @Override
+    public GridStore get() throws GSException {
+        if (closed) {
+            throw new GSException("The GridStore pool is closed");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new GSException(ex);
+        }
+        recordWait(System.nanoTime() - start);
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new GSException(String.format("No GridStore returned within %d ms, all %d in use",
+                    maxWaitMillis, maxSize));
+        }
+        GridStore store = idle.pollFirst();
+        if (store == null) {
+            try {
+                store = factory.get();
+            } catch (GSException | RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+            opened.incrementAndGet();
+        }
+        return (GridStore) Proxy.newProxyInstance(
+                GridStore.class.getClassLoader(), new Class<?>[]{GridStore.class}, new Lease(store));
+    }
+
+    /**
+     * Returns the number of stores leased right now.
+     */
+    public int getInUse() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * Returns the mean time {@link #get()} waited for a store, in
+     * milliseconds.
+     */
+    public double getMeanWaitMillis() {
+        long count = acquisitions.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d stores in use, %d idle, %d opened, %d discarded; %d acquisitions,"
+                + " %d waited, mean wait %.3f ms, max wait %.3f ms, %d timeouts",
+                getInUse(), maxSize, idle.size(), opened.get(), discarded.get(), acquisitions.get(),
+                waits.get(), getMeanWaitMillis(), getMaxWaitMillis(), timeouts.get());
+    }
+
+    /**
+     * Closes the idle stores; leased ones are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        GridStore store;
+        while ((store = idle.pollFirst()) != null) {
+            closeQuietly(store);
+        }
+        LOGGER.fine(() -> "Closed GridStore pool: " + this);
+    }
+
+    private void recordWait(long nanos) {
+        acquisitions.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        waitRecorder.accept(nanos);
+        if (nanos > TimeUnit.MILLISECONDS.toNanos(1)) {
+            waits.incrementAndGet();
+        }
+    }
+
+    private void release(GridStore store, boolean broken) {
+        try {
+            if (broken) {
+                discarded.incrementAndGet();
+                closeQuietly(store);
+            } else if (closed) {
+                closeQuietly(store);
+            } else {
+                idle.addFirst(store);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void closeQuietly(GridStore store) {
+        try {
+            store.close();
+        } catch (GSException ex) {
+            LOGGER.log(Level.FINE, "Could not close a GridStore", ex);
+        }
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args, Object target) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "Pooled" + target;
+        }
+    }
+
+    /**
+     * Forwards calls to a pooled store until closed, and guards the
+     * containers it hands out.
+     */
+    private final class Lease implements InvocationHandler {
+
+        private final GridStore store;
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private volatile boolean broken;
+
+        Lease(GridStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args, store);
+            }
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                if (returned.compareAndSet(false, true)) {
+                    release(store, broken);
+                }
+                return null;
+            }
+            if (returned.get()) {
+                throw new IllegalStateException("The GridStore was returned to the pool");
+            }
+            Object result = forward(store, method, args);
+            return result instanceof Container ? guard(result) : result;
+        }
+
+        private Object forward(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof GSException) {
+                    broken = true;
+                }
+                throw ex.getCause();
+            }
+        }
+
+        private Object guard(Object container) {
+            List<Class<?>> types = new ArrayList<>(CONTAINER_TYPES.length);
+            for (Class<?> type : CONTAINER_TYPES) {
+                if (type.isInstance(container)) {
+                    types.add(type);
+                }
+            }
+            return Proxy.newProxyInstance(GridStore.class.getClassLoader(), types.toArray(new Class<?>[0]),
+                    new ContainerGuard(container));
+        }
+
+        /**
+         * Forwards calls to a container of the leased store until the lease
+         * is closed.
+         */
+        private final class ContainerGuard implements InvocationHandler {
+
+            private final Object container;
+
+            ContainerGuard(Object container) {
+                this.container = container;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return objectMethod(proxy, method, args, container);
+                }
+                if (returned.get()) {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        // the store may serve another thread by now, leave it alone
+                        return null;
+                    }
+                    throw new IllegalStateException("The GridStore of the container was returned to the pool");
+                }
+                return forward(container, method, args);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.mycompany.djl.griddb.db;
+
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GridStore;
+
+/**
+ * Hands out {@link GridStore} instances. The caller owns the returned store
+ * and closes it when done; a {@link GridStore} is not safe to share between
+ * threads, so concurrent work asks for one store per task.
+ */
+@FunctionalInterface
+public interface GridStoreSupplier {
+
+    GridStore get() throws GSException;
+}
@@ -0,0 +1,108 @@
+package com.mycompany.djl.griddb.db;
+
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.Row;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typed layout of the weekly sales containers. The {@code id} column is the
+ * row key, the categorical id columns hold {@link CategoryDictionary} codes
+ * and every {@code w_<n>} column holds the unit sales of that week as an
+ * INTEGER.
+ */
+public class SalesSchema {
+
+    public static final String ID_COLUMN = "id";
+    public static final String WEEK_PREFIX = "w_";
+    public static final List<String> CATEGORY_COLUMNS
+            = Arrays.asList("item_id", "dept_id", "cat_id", "store_id", "state_id");
+
+    private SalesSchema() {
+    }
+
+    /**
+     * Builds the typed container layout for a CSV header.
+     */
+    public static ContainerInfo containerInfo(String name, String[] header) {
+        List<ColumnInfo> columnInfoList = new ArrayList<>();
+        for (String column : header) {
+            columnInfoList.add(new ColumnInfo(column, typeOf(column)));
+        }
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setName(name);
+        containerInfo.setColumnInfoList(columnInfoList);
+        containerInfo.setType(ContainerType.COLLECTION);
+        containerInfo.setRowKeyAssigned(ID_COLUMN.equals(header[0]));
+        return containerInfo;
+    }
+
+    public static GSType typeOf(String column) {
+        return ID_COLUMN.equals(column) ? GSType.STRING : GSType.INTEGER;
+    }
+
+    /**
+     * Fills a row of the typed layout from a CSV record.
+     */
+    public static void encode(String[] header, String[] record, Row row, CategoryDictionary dictionary)
+            throws GSException {
+        for (int i = 0; i < record.length; i++) {
+            String column = header[i];
+            if (ID_COLUMN.equals(column)) {
+                row.setString(i, record[i]);
+            } else if (CATEGORY_COLUMNS.contains(column)) {
+                row.setInteger(i, dictionary.encode(column, record[i]));
+            } else {
+                row.setInteger(i, parseSales(record[i]));
+            }
+        }
+    }
+
+    /**
+     * Returns whether a container still uses the original all-STRING layout.
+     */
+    public static boolean isStringLayout(ContainerInfo containerInfo) {
+        for (int i = 0; i < containerInfo.getColumnCount(); i++) {
+            ColumnInfo columnInfo = containerInfo.getColumnInfo(i);
+            if (!ID_COLUMN.equals(columnInfo.getName()) && columnInfo.getType() == GSType.STRING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the week of a {@code w_<n>} column, or -1 for any other column.
+     */
+    public static int weekOf(String column) {
+        if (!column.startsWith(WEEK_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(column.substring(WEEK_PREFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the last week held by a sales container, 0 when it has no week
+     * columns.
+     */
+    public static int lastWeek(ContainerInfo containerInfo) {
+        int lastWeek = 0;
+        for (int i = 0; i < containerInfo.getColumnCount(); i++) {
+            lastWeek = Math.max(lastWeek, weekOf(containerInfo.getColumnInfo(i).getName()));
+        }
+        return lastWeek;
+    }
+
+    static int parseSales(String cell) {
+        return Math.round(Float.parseFloat(cell));
+    }
+}
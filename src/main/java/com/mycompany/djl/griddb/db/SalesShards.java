@@ -0,0 +1,62 @@
+package com.mycompany.djl.griddb.db;
+
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GridStore;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitioned layout of a weekly sales container: instead of one container,
+ * the rows are split by a categorical column into one container per label,
+ * named {@code <container>_<label>}, e.g. {@code NNTraining_CA_1} for
+ * {@code store_id}. Each shard has the layout of {@link SalesSchema}.
+ *
+ * <p>
+ * GridDB places containers on partitions by name, so on a cluster of several
+ * nodes the shards of a container are spread over them and can be read in
+ * parallel, each by its own client thread. The shards are listed in the code
+ * order of the {@link CategoryDictionary}, which is the order their labels
+ * first appeared in the source; the content hash of the source is recorded in
+ * {@link ContainerMetadata} under the name of the container as a whole.
+ */
+public class SalesShards {
+
+    private SalesShards() {
+    }
+
+    public static String shardName(String containerName, String label) {
+        StringBuilder name = new StringBuilder(containerName).append('_');
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            name.append(Character.isLetterOrDigit(c) ? c : '_');
+        }
+        return name.toString();
+    }
+
+    /**
+     * Returns the stored shards of a container split by {@code shardBy}, in
+     * dictionary code order.
+     */
+    public static List<String> shardNames(GridStore store, CategoryDictionary dictionary, String containerName,
+            String shardBy) throws GSException {
+        List<String> shards = new ArrayList<>();
+        for (String label : dictionary.getLabels(shardBy)) {
+            String shard = shardName(containerName, label);
+            if (store.getContainerInfo(shard) != null) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Returns the content hash recorded for a sharded container, or
+     * {@code null} when none of its shards is stored.
+     */
+    public static String getHash(GridStore store, String containerName, String shardBy) throws GSException {
+        if (shardNames(store, CategoryDictionary.load(store), containerName, shardBy).isEmpty()) {
+            return null;
+        }
+        return ContainerMetadata.getRecordedHash(store, containerName);
+    }
+}
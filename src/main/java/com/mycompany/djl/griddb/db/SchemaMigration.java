@@ -0,0 +1,285 @@
+package com.mycompany.djl.griddb.db;
+
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.opencsv.CSVReader;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Query;
+import com.toshiba.mwcloud.gs.Row;
+import com.toshiba.mwcloud.gs.RowSet;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Converts weekly sales containers written with the original all-STRING
+ * layout into the typed {@link SalesSchema} layout.
+ *
+ * <p>
+ * GridDB can neither change the type of a column nor rename a container, so
+ * each container is first copied, in {@link GridStore#multiPut(Map)} batches,
+ * to a typed staging container ({@value #STAGING_SUFFIX}), whose row count
+ * is checked against the original before the original is dropped. The
+ * staging container is then copied to the original name and dropped. A run
+ * interrupted after the original was dropped is resumed from the staging
+ * container by the next one, so no step loses the data.
+ *
+ * <p>
+ * The migrated container records the {@link ContainerMetadata} hash of its
+ * source CSV when it holds the same records, so the next
+ * {@link BulkIngester} run keeps it instead of reloading it; otherwise it
+ * records a digest of its own records.
+ */
+public class SchemaMigration {
+
+    public static final String STAGING_SUFFIX = "_typed";
+
+    private static final Logger LOGGER = Logger.getLogger(SchemaMigration.class.getName());
+    private static final int BATCH_SIZE = 1000;
+
+    private SchemaMigration() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, URL> sources = new LinkedHashMap<>();
+        sources.put(GridDBDataset.TRAINING_COLLECTION_NAME,
+                Forecaster.class.getClassLoader().getResource("data/weekly_sales_train_validation.csv"));
+        sources.put(GridDBDataset.VALIDATION_COLLECTION_NAME,
+                Forecaster.class.getClassLoader().getResource("data/weekly_sales_train_evaluation.csv"));
+        try ( GridStore store = GridDBDataset.connectToGridDB()) {
+            migrate(store, sources);
+        }
+    }
+
+    /**
+     * Migrates the containers named by the keys of {@code sources}, each
+     * value being the CSV file the container was loaded from, or
+     * {@code null} when unknown.
+     */
+    public static void migrate(GridStore store, Map<String, URL> sources) throws IOException {
+        CategoryDictionary dictionary = CategoryDictionary.load(store);
+        for (Map.Entry<String, URL> source : sources.entrySet()) {
+            String containerName = source.getKey();
+            String staging = containerName + STAGING_SUFFIX;
+            ContainerInfo containerInfo = store.getContainerInfo(containerName);
+            if (containerInfo != null && SalesSchema.isStringLayout(containerInfo)) {
+                // a staging container left by a run interrupted before the drop is incomplete
+                store.dropContainer(staging);
+                long rows = copyToStaging(store, containerInfo, staging, dictionary, source.getValue());
+                dictionary.save(store);
+                store.dropContainer(containerName);
+                LOGGER.info(String.format("Copied %s to %s: %d rows", containerName, staging, rows));
+            } else if (store.getContainerInfo(staging) == null) {
+                continue;
+            } else {
+                LOGGER.info(String.format("Resuming the migration of %s from %s", containerName, staging));
+            }
+
+            // a copy interrupted by a previous run is partial
+            store.dropContainer(containerName);
+            long rows = copy(store, staging, containerName);
+            ContainerMetadata.putHash(store, containerName, ContainerMetadata.getRecordedHash(store, staging), rows);
+            store.dropContainer(staging);
+            LOGGER.info(String.format("Migrated %s: %d rows", containerName, rows));
+        }
+    }
+
+    /**
+     * Writes the typed rows of a STRING container to {@code staging}, checks
+     * that none is missing and records the hash the migrated container will
+     * have under the staging name.
+     *
+     * @return the number of rows copied
+     */
+    private static long copyToStaging(GridStore store, ContainerInfo containerInfo, String staging,
+            CategoryDictionary dictionary, URL source) throws IOException {
+        String[] header = new String[containerInfo.getColumnCount()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = containerInfo.getColumnInfo(i).getName();
+        }
+        Container<String, Row> target = store.putContainer(staging, SalesSchema.containerInfo(staging, header), false);
+        RecordDigest digest = new RecordDigest(header);
+        List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        Map<String, List<Row>> request = Collections.singletonMap(staging, batch);
+        long rows = 0;
+
+        Container<String, Row> container = store.getContainer(containerInfo.getName());
+        Query<Row> query = container.query("Select *");
+        RowSet<Row> rowSet = query.fetch();
+        while (rowSet.hasNext()) {
+            Row row = rowSet.next();
+            String[] record = new String[header.length];
+            for (int i = 0; i < header.length; i++) {
+                record[i] = row.getString(i);
+            }
+            digest.add(record);
+            Row typed = target.createRow();
+            SalesSchema.encode(header, record, typed, dictionary);
+            batch.add(typed);
+            if (batch.size() >= BATCH_SIZE) {
+                store.multiPut(request);
+                rows += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            store.multiPut(request);
+            rows += batch.size();
+        }
+        container.close();
+
+        long copied = count(store, staging);
+        if (copied != rows) {
+            throw new GSException(String.format("%s holds %d of the %d rows of %s, keeping the original",
+                    staging, copied, rows, containerInfo.getName()));
+        }
+        String hash;
+        if (source != null && digest.equals(RecordDigest.of(source))) {
+            hash = ContainerMetadata.contentHash(source);
+        } else {
+            hash = digest.toString();
+            LOGGER.warning(String.format("%s does not hold the records of %s; loading the dataset will reload it",
+                    containerInfo.getName(), source));
+        }
+        ContainerMetadata.putHash(store, staging, hash, rows);
+        return rows;
+    }
+
+    /**
+     * Copies every row of a typed container to a new one of the same layout.
+     *
+     * @return the number of rows copied
+     */
+    private static long copy(GridStore store, String from, String to) throws GSException {
+        ContainerInfo info = store.getContainerInfo(from);
+        String[] header = new String[info.getColumnCount()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = info.getColumnInfo(i).getName();
+        }
+        Container<String, Row> target = store.putContainer(to, SalesSchema.containerInfo(to, header), false);
+        List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        Map<String, List<Row>> request = Collections.singletonMap(to, batch);
+        long rows = 0;
+
+        Container<String, Row> container = store.getContainer(from);
+        Query<Row> query = container.query("Select *");
+        RowSet<Row> rowSet = query.fetch();
+        while (rowSet.hasNext()) {
+            Row row = rowSet.next();
+            Row copy = target.createRow();
+            for (int i = 0; i < header.length; i++) {
+                copy.setValue(i, row.getValue(i));
+            }
+            batch.add(copy);
+            if (batch.size() >= BATCH_SIZE) {
+                store.multiPut(request);
+                rows += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            store.multiPut(request);
+            rows += batch.size();
+        }
+        container.close();
+
+        long copied = count(store, to);
+        if (copied != rows) {
+            throw new GSException(String.format("%s holds %d of the %d rows of %s, keeping %s",
+                    to, copied, rows, from, from));
+        }
+        return rows;
+    }
+
+    private static long count(GridStore store, String containerName) throws GSException {
+        Container<String, Row> container = store.getContainer(containerName);
+        try {
+            return container.query("Select *").fetch().size();
+        } finally {
+            container.close();
+        }
+    }
+
+    /**
+     * A digest of a set of CSV records that does not depend on their order,
+     * since a collection returns its rows in no particular one.
+     */
+    private static final class RecordDigest {
+
+        private final long[] sum = new long[4];
+        private final String header;
+        private long count;
+
+        RecordDigest(String[] header) {
+            this.header = String.join(",", header);
+        }
+
+        static RecordDigest of(URL source) throws IOException {
+            try ( CSVReader csvReader = new CSVReader(new InputStreamReader(source.openStream(), StandardCharsets.UTF_8))) {
+                RecordDigest digest = new RecordDigest(csvReader.readNext());
+                String[] nextRecord;
+                while ((nextRecord = csvReader.readNext()) != null) {
+                    digest.add(nextRecord);
+                }
+                return digest;
+            }
+        }
+
+        void add(String[] record) {
+            MessageDigest sha256 = ContainerMetadata.sha256();
+            for (String cell : record) {
+                sha256.update(cell.getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0);
+            }
+            byte[] hash = sha256.digest();
+            for (int i = 0; i < sum.length; i++) {
+                long word = 0;
+                for (int j = 0; j < 8; j++) {
+                    word = word << 8 | (hash[i * 8 + j] & 0xff);
+                }
+                sum[i] += word;
+            }
+            count++;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RecordDigest)) {
+                return false;
+            }
+            RecordDigest other = (RecordDigest) obj;
+            return count == other.count && header.equals(other.header) && Arrays.equals(sum, other.sum);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(sum);
+        }
+
+        /**
+         * Returns the hash recorded for a container holding these records.
+         */
+        @Override
+        public String toString() {
+            MessageDigest sha256 = ContainerMetadata.sha256();
+            sha256.update(header.getBytes(StandardCharsets.UTF_8));
+            for (long word : sum) {
+                sha256.update(Long.toHexString(word).getBytes(StandardCharsets.UTF_8));
+            }
+            sha256.update(Long.toString(count).getBytes(StandardCharsets.UTF_8));
+            return ContainerMetadata.toHex(sha256.digest());
+        }
+    }
+}
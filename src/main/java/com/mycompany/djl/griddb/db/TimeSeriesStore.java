@@ -0,0 +1,310 @@
+package com.mycompany.djl.griddb.db;
+
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Query;
+import com.toshiba.mwcloud.gs.Row;
+import com.toshiba.mwcloud.gs.RowSet;
+import com.toshiba.mwcloud.gs.TimeSeries;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Stores every weekly sales series in its own GridDB {@link TimeSeries}
+ * container of {@link DB.Entry} rows, keyed by the start of the week, so a
+ * reader can fetch a time range of a series instead of the whole wide row.
+ *
+ * <p>
+ * The series of a sales collection are listed in its index collection
+ * ({@link #indexName(String)}), one row per series holding the id, the
+ * {@link CategoryDictionary} codes of its categorical columns and the range
+ * of weeks written. Exporting is an ingestion step of its own, run by
+ * {@link #main} after the collection is loaded; readers only check, with
+ * {@link #requireExport}, that the export matches the collection, as recorded
+ * in {@link ContainerMetadata}, and never write. Weeks added later by
+ * {@link WeeklyAppender} are only written here, not to the collection. The
+ * export writes the entries of {@link #optBatchSize(int)} series per
+ * {@link GridStore#multiPut(Map)} and records its hash last, so an
+ * interrupted export is seen as missing and redone by the next run.
+ */
+public class TimeSeriesStore {
+
+    private static final Logger LOGGER = Logger.getLogger(TimeSeriesStore.class.getName());
+    /**
+     * The layout of {@link DB.Entry}, for the rows of a series written
+     * through {@link GridStore#multiPut(Map)}.
+     */
+    static final ContainerInfo SERIES_INFO = seriesInfo();
+
+    public static final String SERIES_PREFIX = "TS_";
+    public static final String INDEX_SUFFIX = "Series";
+    public static final String FIRST_WEEK_COLUMN = "first_week";
+    public static final String LAST_WEEK_COLUMN = "last_week";
+
+    private final LocalDateTime startTime;
+    private int batchSize = 100;
+
+    /**
+     * @param startTime the start of week 1
+     */
+    public TimeSeriesStore(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Sets how many series are written per {@link GridStore#multiPut(Map)}.
+     */
+    public TimeSeriesStore optBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Exports the given collections, by default the training and validation
+     * ones. Usage:
+     * {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.db.TimeSeriesStore -Dexec.args="NNTraining NNValidation"}
+     */
+    public static void main(String[] args) throws Exception {
+        String[] collectionNames = args.length > 0 ? args
+                : new String[]{GridDBDataset.TRAINING_COLLECTION_NAME, GridDBDataset.VALIDATION_COLLECTION_NAME};
+        TimeSeriesStore timeSeriesStore = new TimeSeriesStore(Forecaster.START_TIME);
+        try ( GridStore store = GridDBDataset.connectToGridDB()) {
+            for (String collectionName : collectionNames) {
+                timeSeriesStore.export(store, collectionName);
+            }
+        }
+    }
+
+    public static String seriesName(String id) {
+        return SERIES_PREFIX + id;
+    }
+
+    public static String indexName(String collectionName) {
+        return collectionName + INDEX_SUFFIX;
+    }
+
+    /**
+     * Returns whether the time series containers of a collection were
+     * exported from its current content. Weeks appended since by
+     * {@link WeeklyAppender} only change the hash of the index.
+     */
+    public static boolean isExported(GridStore store, String collectionName) throws GSException {
+        String hash = ContainerMetadata.sourceHash(ContainerMetadata.getHash(store, collectionName));
+        return hash != null
+                && hash.equals(ContainerMetadata.sourceHash(ContainerMetadata.getHash(store, indexName(collectionName))));
+    }
+
+    /**
+     * Fails unless the time series containers of a collection were exported
+     * from its current content.
+     */
+    public static void requireExport(GridStore store, String collectionName) throws GSException {
+        if (!isExported(store, collectionName)) {
+            throw new GSException(String.format("%s is not exported to time series containers, or changed since;"
+                    + " run TimeSeriesStore %s first", collectionName, collectionName));
+        }
+    }
+
+    /**
+     * Fails unless the time series containers of a collection were exported
+     * from its current content and hold every week up to {@code lastWeek}.
+     */
+    public static void requireExport(GridStore store, String collectionName, int lastWeek) throws GSException {
+        requireExport(store, collectionName);
+        int exported = indexedLastWeek(store, collectionName);
+        if (exported < lastWeek) {
+            throw new GSException(String.format("The time series of %s end at w_%d, w_%d was asked for",
+                    collectionName, exported, lastWeek));
+        }
+    }
+
+    /**
+     * Returns the last week every series of a collection holds in its time
+     * series container, including the weeks appended by
+     * {@link WeeklyAppender}, or 0 when the collection is not exported.
+     */
+    public static int getLastWeek(GridStore store, String collectionName) throws GSException {
+        return isExported(store, collectionName) ? indexedLastWeek(store, collectionName) : 0;
+    }
+
+    /**
+     * Returns the lowest last week of the index, which is behind the others
+     * for the series an interrupted append did not reach.
+     */
+    private static int indexedLastWeek(GridStore store, String collectionName) throws GSException {
+        String indexName = indexName(collectionName);
+        int lastWeekColumn = indexColumn(store.getContainerInfo(indexName), LAST_WEEK_COLUMN);
+        Container<String, Row> index = store.getContainer(indexName);
+        try {
+            RowSet<Row> rowSet = index.query("Select *").fetch();
+            int lastWeek = Integer.MAX_VALUE;
+            while (rowSet.hasNext()) {
+                lastWeek = Math.min(lastWeek, rowSet.next().getInteger(lastWeekColumn));
+            }
+            return lastWeek == Integer.MAX_VALUE ? 0 : lastWeek;
+        } finally {
+            index.close();
+        }
+    }
+
+    static int indexColumn(ContainerInfo indexInfo, String name) throws GSException {
+        for (int i = 0; i < indexInfo.getColumnCount(); i++) {
+            if (name.equals(indexInfo.getColumnInfo(i).getName())) {
+                return i;
+            }
+        }
+        throw new GSException(indexInfo.getName() + " has no column " + name);
+    }
+
+    /**
+     * Returns the row key of a week, {@code week} counting from 1.
+     */
+    public Date timeOf(int week) {
+        return Date.from(startTime.plusWeeks(week - 1).toInstant(ZoneOffset.UTC));
+    }
+
+    /**
+     * Returns the week a row key falls into, counting from 1.
+     */
+    public int weekOf(Date time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(time.toInstant(), ZoneOffset.UTC);
+        return Math.toIntExact(ChronoUnit.WEEKS.between(startTime, dateTime)) + 1;
+    }
+
+    /**
+     * Writes every series of a typed sales collection to its time series
+     * container and rebuilds the index of the collection.
+     *
+     * @return the number of series written, 0 when the export was up to date
+     */
+    public long export(GridStore store, String collectionName) throws GSException {
+        String indexName = indexName(collectionName);
+        if (isExported(store, collectionName)) {
+            LOGGER.info(String.format("%s is up to date, skipping", indexName));
+            return 0;
+        }
+        String hash = ContainerMetadata.getHash(store, collectionName);
+        if (hash == null) {
+            throw new GSException(collectionName + " has no recorded content hash, load it with BulkIngester first");
+        }
+
+        ContainerInfo info = store.getContainerInfo(collectionName);
+        if (SalesSchema.isStringLayout(info)) {
+            throw new GSException(collectionName + " uses the STRING layout, run SchemaMigration first");
+        }
+        int idColumn = -1;
+        int[] categoryColumns = new int[SalesSchema.CATEGORY_COLUMNS.size()];
+        List<Integer> weekColumns = new ArrayList<>();
+        List<Integer> weeks = new ArrayList<>();
+        for (int i = 0; i < info.getColumnCount(); i++) {
+            String name = info.getColumnInfo(i).getName();
+            if (SalesSchema.ID_COLUMN.equals(name)) {
+                idColumn = i;
+            } else if (SalesSchema.CATEGORY_COLUMNS.contains(name)) {
+                categoryColumns[SalesSchema.CATEGORY_COLUMNS.indexOf(name)] = i;
+            } else if (name.startsWith("w_")) {
+                weekColumns.add(i);
+                weeks.add(Integer.parseInt(name.substring(2)));
+            }
+        }
+        int firstWeek = weeks.stream().mapToInt(Integer::intValue).min().orElse(1);
+        int lastWeek = weeks.stream().mapToInt(Integer::intValue).max().orElse(0);
+        Date[] times = new Date[weeks.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = timeOf(weeks.get(i));
+        }
+
+        // readers see no export from here until the hash is recorded
+        store.dropContainer(indexName);
+        ContainerInfo indexInfo = indexInfo(indexName);
+        store.putContainer(indexName, indexInfo, false);
+        Map<String, List<Row>> request = new HashMap<>();
+        List<Row> indexRows = new ArrayList<>();
+
+        Container<String, Row> collection = store.getContainer(collectionName);
+        Query<Row> query = collection.query("Select *");
+        RowSet<Row> rowSet = query.fetch();
+        long series = 0;
+        while (rowSet.hasNext()) {
+            Row row = rowSet.next();
+            String id = row.getString(idColumn);
+
+            store.putTimeSeries(seriesName(id), DB.Entry.class);
+            List<Row> entries = new ArrayList<>(weekColumns.size());
+            for (int i = 0; i < weekColumns.size(); i++) {
+                Row entry = store.createRow(SERIES_INFO);
+                entry.setTimestamp(0, times[i]);
+                entry.setDouble(1, row.getInteger(weekColumns.get(i)));
+                entries.add(entry);
+            }
+            request.put(seriesName(id), entries);
+
+            Row indexRow = store.createRow(indexInfo);
+            indexRow.setString(0, id);
+            for (int i = 0; i < categoryColumns.length; i++) {
+                indexRow.setInteger(i + 1, row.getInteger(categoryColumns[i]));
+            }
+            indexRow.setInteger(categoryColumns.length + 1, firstWeek);
+            indexRow.setInteger(categoryColumns.length + 2, lastWeek);
+            indexRows.add(indexRow);
+            series++;
+
+            if (request.size() >= batchSize) {
+                request.put(indexName, indexRows);
+                store.multiPut(request);
+                request.clear();
+                indexRows = new ArrayList<>();
+            }
+        }
+        if (!indexRows.isEmpty()) {
+            request.put(indexName, indexRows);
+            store.multiPut(request);
+        }
+        collection.close();
+
+        ContainerMetadata.putHash(store, indexName, hash, series);
+        LOGGER.info(String.format("Exported %s: %d series", collectionName, series));
+        return series;
+    }
+
+    private static ContainerInfo seriesInfo() {
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setType(ContainerType.TIME_SERIES);
+        containerInfo.setColumnInfoList(Arrays.asList(
+                new ColumnInfo("createdAt", GSType.TIMESTAMP),
+                new ColumnInfo("value", GSType.DOUBLE)));
+        containerInfo.setRowKeyAssigned(true);
+        return containerInfo;
+    }
+
+    private static ContainerInfo indexInfo(String name) {
+        List<ColumnInfo> columnInfoList = new ArrayList<>();
+        columnInfoList.add(new ColumnInfo(SalesSchema.ID_COLUMN, GSType.STRING));
+        for (String column : SalesSchema.CATEGORY_COLUMNS) {
+            columnInfoList.add(new ColumnInfo(column, GSType.INTEGER));
+        }
+        columnInfoList.add(new ColumnInfo(FIRST_WEEK_COLUMN, GSType.INTEGER));
+        columnInfoList.add(new ColumnInfo(LAST_WEEK_COLUMN, GSType.INTEGER));
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setName(name);
+        containerInfo.setType(ContainerType.COLLECTION);
+        containerInfo.setColumnInfoList(columnInfoList);
+        containerInfo.setRowKeyAssigned(true);
+        return containerInfo;
+    }
+}
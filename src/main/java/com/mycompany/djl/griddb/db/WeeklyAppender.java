@@ -0,0 +1,198 @@
+package com.mycompany.djl.griddb.db;
+
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.opencsv.CSVReader;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Query;
+import com.toshiba.mwcloud.gs.Row;
+import com.toshiba.mwcloud.gs.RowSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Appends new weeks to the {@link TimeSeriesStore} containers of a typed
+ * sales collection, instead of dropping and reloading its whole history.
+ *
+ * <p>
+ * A delta is a CSV file with an {@code id} column followed by the next
+ * {@code w_<n>} columns of the collection, for example
+ * {@code id,w_278}. The new entries of every series are written to its time
+ * series container, {@link #optBatchSize(int)} series per
+ * {@link GridStore#multiPut(Map)}, and only then is the index moved to the
+ * new last week; series missing from the delta get 0. The wide rows of the
+ * collection are left as they are, so an append writes the new weeks only.
+ * Readers take the appended weeks from the time series containers, which
+ * therefore have to be exported first. The recorded hash of the index becomes
+ * {@link ContainerMetadata#appendedHash(String, String)}, which invalidates
+ * the caches of the collection, while the collection keeps the hash of its
+ * source, so {@link BulkIngester} does not reload it. An interrupted append
+ * leaves some series behind in the index and is redone by the next run.
+ * Collections split into {@link SalesShards} are rejected; they have to be
+ * re-ingested with the new weeks.
+ */
+public class WeeklyAppender {
+
+    private static final Logger LOGGER = Logger.getLogger(WeeklyAppender.class.getName());
+
+    private final TimeSeriesStore timeSeriesStore;
+    private int batchSize = 100;
+
+    /**
+     * @param startTime the start of week 1
+     */
+    public WeeklyAppender(LocalDateTime startTime) {
+        this.timeSeriesStore = new TimeSeriesStore(startTime);
+    }
+
+    /**
+     * Sets how many series are written per {@link GridStore#multiPut(Map)}.
+     */
+    public WeeklyAppender optBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Usage: {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.db.WeeklyAppender -Dexec.args="weekly_sales_w278.csv NNTraining"}
+     */
+    public static void main(String[] args) throws Exception {
+        URL delta = new File(args[0]).toURI().toURL();
+        String collectionName = args.length > 1 ? args[1] : GridDBDataset.TRAINING_COLLECTION_NAME;
+        try ( GridStore store = GridDBDataset.connectToGridDB()) {
+            new WeeklyAppender(Forecaster.START_TIME).append(store, collectionName, delta);
+        }
+    }
+
+    /**
+     * Appends the weeks of a delta file to the series of a collection.
+     *
+     * @return the last week the series hold afterwards
+     */
+    public int append(GridStore store, String collectionName, URL delta) throws IOException {
+        if (store.getContainerInfo(collectionName) == null) {
+            CategoryDictionary dictionary = CategoryDictionary.load(store);
+            for (String column : SalesSchema.CATEGORY_COLUMNS) {
+                if (!SalesShards.shardNames(store, dictionary, collectionName, column).isEmpty()) {
+                    throw new GSException(String.format(
+                            "%s is sharded by %s, appending needs the single-container layout", collectionName, column));
+                }
+            }
+            throw new GSException("Container not found: " + collectionName);
+        }
+        TimeSeriesStore.requireExport(store, collectionName);
+        int lastWeek = TimeSeriesStore.getLastWeek(store, collectionName);
+
+        List<Integer> weeks = new ArrayList<>();
+        Map<String, int[]> sales = new HashMap<>();
+        try ( CSVReader csvReader = new CSVReader(new InputStreamReader(delta.openStream(), StandardCharsets.UTF_8))) {
+            String[] header = csvReader.readNext();
+            if (header == null || !SalesSchema.ID_COLUMN.equals(header[0])) {
+                throw new GSException(delta + " must start with an id column");
+            }
+            for (int i = 1; i < header.length; i++) {
+                weeks.add(SalesSchema.weekOf(header[i]));
+            }
+            String[] nextRecord;
+            while ((nextRecord = csvReader.readNext()) != null) {
+                int[] values = new int[weeks.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = SalesSchema.parseSales(nextRecord[i + 1]);
+                }
+                sales.put(nextRecord[0], values);
+            }
+        }
+        if (weeks.isEmpty() || weeks.get(weeks.size() - 1) <= lastWeek) {
+            LOGGER.info(String.format("%s already holds w_%d, skipping", collectionName, lastWeek));
+            return lastWeek;
+        }
+        for (int i = 0; i < weeks.size(); i++) {
+            if (weeks.get(i) != lastWeek + 1 + i) {
+                throw new GSException(String.format("%s must hold w_%d onwards, found w_%d",
+                        delta, lastWeek + 1 + i, weeks.get(i)));
+            }
+        }
+        Date[] times = new Date[weeks.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = timeSeriesStore.timeOf(weeks.get(i));
+        }
+        int newLastWeek = weeks.get(weeks.size() - 1);
+
+        String indexName = TimeSeriesStore.indexName(collectionName);
+        ContainerInfo indexInfo = store.getContainerInfo(indexName);
+        int lastWeekColumn = TimeSeriesStore.indexColumn(indexInfo, TimeSeriesStore.LAST_WEEK_COLUMN);
+        Container<String, Row> index = store.getContainer(indexName);
+        int[] missing = new int[weeks.size()];
+        int missingSeries = 0;
+        List<Row> indexRows = new ArrayList<>();
+        Map<String, List<Row>> request = new HashMap<>();
+        Query<Row> query = index.query("Select *");
+        RowSet<Row> rowSet = query.fetch();
+        while (rowSet.hasNext()) {
+            Row row = rowSet.next();
+            String id = row.getString(0);
+            int[] values = sales.get(id);
+            if (values == null) {
+                values = missing;
+                missingSeries++;
+            }
+            List<Row> entries = new ArrayList<>(weeks.size());
+            for (int i = 0; i < weeks.size(); i++) {
+                Row entry = store.createRow(TimeSeriesStore.SERIES_INFO);
+                entry.setTimestamp(0, times[i]);
+                entry.setDouble(1, values[i]);
+                entries.add(entry);
+            }
+            request.put(TimeSeriesStore.seriesName(id), entries);
+            if (request.size() >= batchSize) {
+                store.multiPut(request);
+                request.clear();
+            }
+
+            Row updated = index.createRow();
+            for (int i = 0; i < indexInfo.getColumnCount(); i++) {
+                updated.setValue(i, row.getValue(i));
+            }
+            updated.setInteger(lastWeekColumn, newLastWeek);
+            indexRows.add(updated);
+        }
+        if (!request.isEmpty()) {
+            store.multiPut(request);
+        }
+        index.close();
+        // the index moves on once every entry is written
+        for (int from = 0; from < indexRows.size(); from += batchSize) {
+            List<Row> batch = indexRows.subList(from, Math.min(from + batchSize, indexRows.size()));
+            store.multiPut(Collections.singletonMap(indexName, batch));
+        }
+        if (missingSeries > 0) {
+            LOGGER.warning(String.format("%d series of %s have no sales in %s, stored as 0",
+                    missingSeries, collectionName, delta));
+        }
+        if (indexRows.size() - missingSeries < sales.size()) {
+            LOGGER.warning(String.format("%d series of %s are not in %s, ignored",
+                    sales.size() - indexRows.size() + missingSeries, delta, collectionName));
+        }
+
+        String hash = ContainerMetadata.getHash(store, indexName);
+        ContainerMetadata.putHash(store, indexName,
+                ContainerMetadata.appendedHash(hash, ContainerMetadata.contentHash(delta)), indexRows.size());
+        LOGGER.info(String.format("Appended w_%d..w_%d to the series of %s: %d series",
+                weeks.get(0), newLastWeek, collectionName, indexRows.size()));
+        return newLastWeek;
+    }
+}
@@ -0,0 +1,142 @@
+package com.mycompany.djl.griddb.inference;
+
+import ai.djl.ndarray.NDArrays;
+import ai.djl.ndarray.NDList;
+import ai.djl.timeseries.Forecast;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The summary of a {@link Forecast} kept by a {@link ForecastCache}: its mean
+ * and a fixed set of quantiles, the median among them, in a single float
+ * array laid out as {@code mean | quantile 1 | ... | quantile k}, each of
+ * {@code predictionLength} values. The sample paths themselves are dropped.
+ */
+public class CachedForecast {
+
+    private final float[] quantiles;
+    private final float[] values;
+    private final int predictionLength;
+
+    /**
+     * @param quantiles the quantile levels, in ascending order
+     * @param values the mean followed by one row per quantile level
+     */
+    public CachedForecast(float[] quantiles, float[] values) {
+        if (values.length % (quantiles.length + 1) != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "%d values do not hold a mean and %d quantiles", values.length, quantiles.length));
+        }
+        this.quantiles = quantiles;
+        this.values = values;
+        this.predictionLength = values.length / (quantiles.length + 1);
+    }
+
+    /**
+     * Copies the means and the quantiles {@code quantiles} of a batch of
+     * forecasts to the host at once: they are stacked on the engine in the
+     * layout of {@link #getValues()}, forecast after forecast, so the batch
+     * costs a single copy instead of one per forecast and level.
+     */
+    public static CachedForecast[] of(List<Forecast> forecasts, float[] quantiles) {
+        CachedForecast[] cached = new CachedForecast[forecasts.size()];
+        if (cached.length == 0) {
+            return cached;
+        }
+        NDList rows = new NDList(forecasts.size() * (quantiles.length + 1));
+        for (Forecast forecast : forecasts) {
+            rows.add(forecast.mean());
+            for (float quantile : quantiles) {
+                rows.add(forecast.quantile(quantile));
+            }
+        }
+        float[] stacked = NDArrays.stack(rows).toFloatArray();
+        int length = stacked.length / cached.length;
+        for (int i = 0; i < cached.length; i++) {
+            cached[i] = new CachedForecast(quantiles, Arrays.copyOfRange(stacked, i * length, (i + 1) * length));
+        }
+        return cached;
+    }
+
+    /**
+     * Returns {@code quantiles} and the median, sorted and without
+     * duplicates, i.e. the levels to keep to score a forecast on
+     * {@code quantiles}.
+     */
+    public static float[] withMedian(float... quantiles) {
+        float[] levels = Arrays.copyOf(quantiles, quantiles.length + 1);
+        levels[quantiles.length] = 0.5f;
+        Arrays.sort(levels);
+        int distinct = 0;
+        for (float level : levels) {
+            if (distinct == 0 || levels[distinct - 1] != level) {
+                levels[distinct++] = level;
+            }
+        }
+        return Arrays.copyOf(levels, distinct);
+    }
+
+    public int getPredictionLength() {
+        return predictionLength;
+    }
+
+    public float[] getQuantiles() {
+        return quantiles;
+    }
+
+    /**
+     * Returns the raw layout, shared with this forecast.
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public float[] getMean() {
+        return Arrays.copyOfRange(values, 0, predictionLength);
+    }
+
+    public float[] getMedian() {
+        return getQuantile(0.5f);
+    }
+
+    /**
+     * Returns a stored quantile.
+     *
+     * @throws IllegalArgumentException when {@code quantile} is not stored
+     */
+    public float[] getQuantile(float quantile) {
+        int offset = offsetOf(quantile);
+        return Arrays.copyOfRange(values, offset, offset + predictionLength);
+    }
+
+    /**
+     * Copies the mean into {@code target} at {@code offset}.
+     */
+    public void copyMean(float[] target, int offset) {
+        System.arraycopy(values, 0, target, offset, predictionLength);
+    }
+
+    /**
+     * Copies a stored quantile into {@code target} at {@code offset}.
+     *
+     * @throws IllegalArgumentException when {@code quantile} is not stored
+     */
+    public void copyQuantile(float quantile, float[] target, int offset) {
+        System.arraycopy(values, offsetOf(quantile), target, offset, predictionLength);
+    }
+
+    /**
+     * Returns roughly how many bytes of heap this forecast takes.
+     */
+    public long sizeInBytes() {
+        return 32 + 16 + (long) values.length * Float.BYTES;
+    }
+
+    private int offsetOf(float quantile) {
+        int index = Arrays.binarySearch(quantiles, quantile);
+        if (index < 0) {
+            throw new IllegalArgumentException("Quantile not cached: " + quantile);
+        }
+        return (index + 1) * predictionLength;
+    }
+}
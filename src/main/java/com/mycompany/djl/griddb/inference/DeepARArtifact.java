@@ -0,0 +1,229 @@
+package com.mycompany.djl.griddb.inference;
+
+import ai.djl.ModelException;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.TimeSeriesData;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.util.Utils;
+import com.mycompany.djl.griddb.Forecaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A trained DeepAR packaged for serving on any of the engines of this
+ * project: a directory holding the parameters of the last checkpoint and a
+ * {@value #PROPERTIES} file with what it takes to rebuild the network and the
+ * translator, i.e. the category cardinalities, the prediction length and the
+ * frequency.
+ *
+ * <p>
+ * DJL cannot trace a network defined in Java, so {@link #export} only writes
+ * the parameters, in DJL's own format, which every engine reads; the network
+ * then runs imperatively on {@code MXNet} or {@code PyTorch}. A graph has to
+ * be traced outside this project: build GluonTS's PyTorch DeepAR with the
+ * {@value #PROPERTIES} settings, train it on the same containers, and save
+ * its prediction network with {@code torch.jit.trace} as
+ * {@value #TORCHSCRIPT_FILE}, or {@code torch.onnx.export} as
+ * {@value #ONNX_FILE}, next to the parameters. Its weights are GluonTS's, not
+ * those of the exported checkpoint. {@link #load} prefers such a graph when
+ * the engine runs it, with its thread pools sized; PyTorch runs TorchScript
+ * with its graph executor optimizations, which DJL turns on by default.
+ */
+public final class DeepARArtifact {
+
+    public static final String PROPERTIES = "serving.properties";
+    public static final String TORCHSCRIPT_FILE = "deepar.pt";
+    public static final String ONNX_FILE = "deepar.onnx";
+
+    private static final Logger LOGGER = Logger.getLogger(DeepARArtifact.class.getName());
+    private static final String MODEL_NAME = "deepar";
+
+    private DeepARArtifact() {
+    }
+
+    /**
+     * Copies the last checkpoint of {@code modelName} in {@code modelDir} to
+     * {@code exportDir} and describes it.
+     *
+     * @param cardinality the number of labels of every static category
+     * @return the checkpoint exported, as {@link ForecastCache#checkpointOf}
+     */
+    public static String export(Path modelDir, String modelName, List<Integer> cardinality, Path exportDir)
+            throws IOException {
+        int epoch = Utils.getCurrentEpoch(modelDir, modelName);
+        Path params = modelDir.resolve(String.format("%s-%04d.params", modelName, epoch));
+        if (!Files.isRegularFile(params)) {
+            throw new IOException("No checkpoint of " + modelName + " in " + modelDir);
+        }
+        Files.createDirectories(exportDir);
+        Files.copy(params, exportDir.resolve(String.format("%s-%04d.params", MODEL_NAME, epoch)),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        String checkpoint = ForecastCache.checkpointOf(modelDir, modelName);
+        Properties properties = new Properties();
+        properties.setProperty("checkpoint", checkpoint);
+        properties.setProperty("cardinality", join(cardinality));
+        properties.setProperty("prediction_length", Integer.toString(Forecaster.PREDICTION_LENGTH));
+        properties.setProperty("freq", Forecaster.FREQ);
+        try ( OutputStream os = Files.newOutputStream(exportDir.resolve(PROPERTIES))) {
+            properties.store(os, "DeepAR serving artifact");
+        }
+        LOGGER.info(String.format("Exported %s to %s", checkpoint, exportDir));
+        return checkpoint;
+    }
+
+    /**
+     * Returns how {@code engine} would run the artifact: {@code torchscript},
+     * {@code onnx} or {@code block}, or {@code null} when it cannot.
+     */
+    public static String formatFor(Path exportDir, String engine) {
+        List<String> formats = formatsFor(exportDir, engine);
+        return formats.isEmpty() ? null : formats.get(formats.size() - 1);
+    }
+
+    /**
+     * Returns every way {@code engine} can run the artifact, the exported
+     * checkpoint first and a traced graph last.
+     */
+    public static List<String> formatsFor(Path exportDir, String engine) {
+        List<String> formats = new ArrayList<>();
+        switch (engine) {
+            case "PyTorch":
+                formats.add("block");
+                if (Files.isRegularFile(exportDir.resolve(TORCHSCRIPT_FILE))) {
+                    formats.add("torchscript");
+                }
+                break;
+            case "OnnxRuntime":
+                if (Files.isRegularFile(exportDir.resolve(ONNX_FILE))) {
+                    formats.add("onnx");
+                }
+                break;
+            case "MXNet":
+                formats.add("block");
+                break;
+            default:
+                break;
+        }
+        return formats;
+    }
+
+    /**
+     * Returns whether {@code format} runs a graph traced outside this
+     * project, whose weights are not those of the exported checkpoint.
+     */
+    public static boolean isTraced(String format) {
+        return !"block".equals(format);
+    }
+
+    public static Properties readProperties(Path exportDir) throws IOException {
+        Properties properties = new Properties();
+        try ( InputStream is = Files.newInputStream(exportDir.resolve(PROPERTIES))) {
+            properties.load(is);
+        }
+        return properties;
+    }
+
+    /**
+     * Loads the artifact on {@code engine}.
+     *
+     * @param threads the intra-op threads of the engine, also used for its
+     * inter-op pool; 0 keeps the engine default
+     */
+    public static ZooModel<TimeSeriesData, Forecast> load(Path exportDir, String engine, int threads)
+            throws IOException, ModelException {
+        String format = formatFor(exportDir, engine);
+        if (format == null) {
+            throw new ModelException(String.format("%s cannot run %s; it needs %s", engine, exportDir, ONNX_FILE));
+        }
+        return load(exportDir, engine, format, threads);
+    }
+
+    /**
+     * Loads the artifact on {@code engine} as {@code format}, one of
+     * {@link #formatsFor}.
+     *
+     * @param threads the intra-op threads of the engine, also used for its
+     * inter-op pool; 0 keeps the engine default
+     */
+    public static ZooModel<TimeSeriesData, Forecast> load(Path exportDir, String engine, String format, int threads)
+            throws IOException, ModelException {
+        if (!formatsFor(exportDir, engine).contains(format)) {
+            throw new ModelException(String.format("%s cannot run %s as %s", engine, exportDir, format));
+        }
+        Criteria.Builder<TimeSeriesData, Forecast> criteria = Criteria.builder()
+                .setTypes(TimeSeriesData.class, Forecast.class)
+                .optModelPath(exportDir)
+                .optEngine(engine)
+                .optTranslator(Forecaster.getTranslator());
+        switch (format) {
+            case "onnx":
+                criteria.optModelName(ONNX_FILE.substring(0, ONNX_FILE.indexOf('.')))
+                        .optOption("optLevel", "ALL_OPT");
+                if (threads > 0) {
+                    criteria.optOption("intraOpNumThreads", Integer.toString(threads))
+                            .optOption("interOpNumThreads", Integer.toString(threads));
+                }
+                break;
+            case "torchscript":
+                criteria.optModelName(TORCHSCRIPT_FILE.substring(0, TORCHSCRIPT_FILE.indexOf('.')));
+                setPyTorchThreads(threads);
+                break;
+            default:
+                if ("PyTorch".equals(engine)) {
+                    setPyTorchThreads(threads);
+                }
+                List<Integer> cardinality = parseCardinality(readProperties(exportDir).getProperty("cardinality"));
+                DeepARNetwork network
+                        = Forecaster.getDeepARModel(new NegativeBinomialOutput(), cardinality, false);
+                criteria.optModelName(MODEL_NAME).optBlock(network);
+                break;
+        }
+        LOGGER.info(String.format("Loading %s on %s as %s", exportDir, engine, format));
+        return criteria.build().loadModel();
+    }
+
+    /**
+     * PyTorch reads its thread counts when the engine starts, so these only
+     * apply to the first PyTorch model of the process.
+     */
+    public static void setPyTorchThreads(int threads) {
+        if (threads > 0) {
+            System.setProperty("ai.djl.pytorch.num_threads", Integer.toString(threads));
+            System.setProperty("ai.djl.pytorch.num_interop_threads", Integer.toString(threads));
+        }
+    }
+
+    private static String join(List<Integer> values) {
+        StringBuilder builder = new StringBuilder();
+        for (Integer value : values) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static List<Integer> parseCardinality(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            throw new IOException("The artifact has no cardinality");
+        }
+        List<Integer> cardinality = new ArrayList<>();
+        for (String part : value.split(",")) {
+            cardinality.add(Integer.parseInt(part.trim()));
+        }
+        return cardinality;
+    }
+}
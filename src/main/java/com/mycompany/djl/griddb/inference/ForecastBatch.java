@@ -0,0 +1,135 @@
+package com.mycompany.djl.griddb.inference;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.TimeSeriesData;
+import ai.djl.timeseries.dataset.FieldName;
+import ai.djl.training.dataset.Batch;
+import com.mycompany.djl.griddb.metrics.ManagerMemory;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A test batch split into per-series predictor inputs, together with the
+ * ground truth its forecasts are scored against. The last
+ * {@code predictionLength} weeks of every target are held out as ground
+ * truth and the weeks before are the context the model forecasts from.
+ * Until it is closed, the arrays of the batch count as held by the
+ * {@code predict} sub-managers in the {@link MetricsRegistry}.
+ */
+public class ForecastBatch implements AutoCloseable {
+
+    private static final ManagerMemory MEMORY = MetricsRegistry.getDefault().managerMemory("predict");
+
+    private final long sequence;
+    private final Batch batch;
+    private final List<TimeSeriesData> inputs;
+    private final NDArray gt;
+    private final NDArray pastTarget;
+    private final long startNanos;
+    private final long bytes;
+    private List<Forecast> forecasts;
+    private CachedForecast[] cached;
+
+    private ForecastBatch(long sequence, Batch batch, List<TimeSeriesData> inputs, NDArray gt,
+            NDArray pastTarget, long startNanos) {
+        this.sequence = sequence;
+        this.batch = batch;
+        this.inputs = inputs;
+        this.gt = gt;
+        this.pastTarget = pastTarget;
+        this.startNanos = startNanos;
+        this.bytes = MEMORY.acquire(batch.getData(), batch.getLabels());
+    }
+
+    /**
+     * Splits a batch of the test dataset, whose data holds the target and the
+     * static categories, into predictor inputs.
+     */
+    public static ForecastBatch prepare(long sequence, Batch batch, LocalDateTime startTime, int predictionLength) {
+        long startNanos = System.nanoTime();
+        NDList data = batch.getData();
+        NDArray target = data.head();
+        NDArray featStaticCat = data.get(1);
+
+        NDArray gt = target.get(":, {}:", -predictionLength);
+        NDArray pastTarget = target.get(":, :{}", -predictionLength);
+
+        NDList pastTargetSplit = pastTarget.split(batch.getSize());
+        NDList featStaticCatSplit = featStaticCat.split(batch.getSize());
+
+        List<TimeSeriesData> inputs = new ArrayList<>(batch.getSize());
+        for (int i = 0; i < batch.getSize(); i++) {
+            TimeSeriesData input = new TimeSeriesData(10);
+            input.setStartTime(startTime);
+            input.setField(FieldName.TARGET, pastTargetSplit.get(i).squeeze(0));
+            input.setField(FieldName.FEAT_STATIC_CAT, featStaticCatSplit.get(i).squeeze(0));
+            inputs.add(input);
+        }
+        return new ForecastBatch(sequence, batch, inputs, gt, pastTarget, startNanos);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int size() {
+        return inputs.size();
+    }
+
+    public List<TimeSeriesData> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Returns the ground truth of every series, of shape (batch,
+     * prediction_length).
+     */
+    public NDArray getGroundTruth() {
+        return gt;
+    }
+
+    /**
+     * Returns the context of every series, of shape (batch, context_length).
+     */
+    public NDArray getPastTarget() {
+        return pastTarget;
+    }
+
+    public List<Forecast> getForecasts() {
+        return forecasts;
+    }
+
+    public void setForecasts(List<Forecast> forecasts) {
+        this.forecasts = forecasts;
+    }
+
+    /**
+     * Returns the forecast of every series when a {@link ForecastCache} is
+     * used, {@code null} for those not forecast yet.
+     */
+    public CachedForecast[] getCached() {
+        return cached;
+    }
+
+    public void setCached(CachedForecast[] cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Returns when preparing the batch started, in {@link System#nanoTime()}
+     * time.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    @Override
+    public void close() {
+        MEMORY.release(bytes);
+        batch.close();
+    }
+}
@@ -0,0 +1,394 @@
+package com.mycompany.djl.griddb.inference;
+
+import ai.djl.util.Utils;
+import com.mycompany.djl.griddb.db.ContainerMetadata;
+import com.mycompany.djl.griddb.db.GridStoreSupplier;
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.Container;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Row;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps {@link CachedForecast}s of series whose input did not change, keyed
+ * by series id, model checkpoint and the last week the forecast was
+ * conditioned on, so a new checkpoint or newly appended weeks miss the cache
+ * while repeated queries hit it.
+ *
+ * <p>
+ * Entries are held in least recently used order and evicted once there are
+ * more than {@link #optMaxEntries(int)} of them or they take more than
+ * {@link #optMaxBytes(long)} of heap. With {@link #optWriteBack} every new
+ * entry is also written, in batches, to the {@value #CONTAINER_NAME}
+ * collection, which later runs and other processes read on a miss. A store
+ * is taken from the supplier for each batch written and each entry read, and
+ * returned right after, so a pool can serve other work in between. A stored
+ * entry is only used when it holds the quantiles of this cache. A batch
+ * GridDB rejects stays pending and is retried with the next one; entries
+ * beyond {@value #MAX_PENDING_BATCHES} batches are dropped and counted.
+ *
+ * <p>
+ * Caching is off unless asked for, since it changes what a benchmark or a
+ * scoring run measures: {@link #fromProperties} builds a cache only when the
+ * {@value #CACHE_PROPERTY} system property is {@code true}, writing back
+ * only when {@value #WRITE_BACK_PROPERTY} is too.
+ */
+public class ForecastCache implements AutoCloseable {
+
+    public static final String CONTAINER_NAME = "NNForecastCache";
+    public static final String CACHE_PROPERTY = "forecast.cache";
+    public static final String WRITE_BACK_PROPERTY = "forecast.cache.writeBack";
+    public static final int MAX_PENDING_BATCHES = 4;
+
+    private static final Logger LOGGER = Logger.getLogger(ForecastCache.class.getName());
+
+    private final float[] quantiles;
+    private int maxEntries = 100_000;
+    private long maxBytes = 64L * 1024 * 1024;
+    private GridStoreSupplier stores;
+    private int writeBatchSize = 500;
+
+    private final LinkedHashMap<Key, CachedForecast> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long storeHits;
+    private long misses;
+    private long evictions;
+
+    private final Object pendingLock = new Object();
+    private final List<Map.Entry<Key, CachedForecast>> pending = new ArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param quantiles the quantile levels to keep besides the mean; the
+     * median is always kept
+     */
+    public ForecastCache(float... quantiles) {
+        this.quantiles = CachedForecast.withMedian(quantiles);
+    }
+
+    /**
+     * Returns a cache of {@code quantiles} when the {@value #CACHE_PROPERTY}
+     * system property is {@code true}, writing back to stores taken from
+     * {@code stores} when {@value #WRITE_BACK_PROPERTY} is {@code true} too,
+     * or {@code null}.
+     */
+    public static ForecastCache fromProperties(GridStoreSupplier stores, float... quantiles) {
+        if (!Boolean.getBoolean(CACHE_PROPERTY)) {
+            return null;
+        }
+        ForecastCache cache = new ForecastCache(quantiles);
+        return Boolean.getBoolean(WRITE_BACK_PROPERTY) ? cache.optWriteBack(stores) : cache;
+    }
+
+    public ForecastCache optMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public ForecastCache optMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Writes new entries to, and reads missing ones from, the
+     * {@value #CONTAINER_NAME} collection of stores taken from
+     * {@code stores}.
+     */
+    public ForecastCache optWriteBack(GridStoreSupplier stores) {
+        this.stores = stores;
+        return this;
+    }
+
+    public ForecastCache optWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
+    /**
+     * Returns the kept quantile levels, in ascending order.
+     */
+    public float[] getQuantiles() {
+        return quantiles.clone();
+    }
+
+    /**
+     * Identifies the checkpoint {@code modelDir} holds for {@code modelName}
+     * by its epoch and a digest of its parameter file, so retraining to the
+     * same epoch count still yields a new checkpoint.
+     */
+    public static String checkpointOf(Path modelDir, String modelName) throws IOException {
+        int epoch = Utils.getCurrentEpoch(modelDir, modelName);
+        Path params = modelDir.resolve(String.format("%s-%04d.params", modelName, epoch));
+        if (!Files.isRegularFile(params)) {
+            return String.format("%s-%04d", modelName, epoch);
+        }
+        String digest = ContainerMetadata.contentHash(params.toUri().toURL());
+        return String.format("%s-%04d@%s", modelName, epoch, digest.substring(0, 16));
+    }
+
+    /**
+     * Returns the forecast kept for {@code key}, or {@code null}.
+     */
+    public CachedForecast get(Key key) {
+        synchronized (this) {
+            CachedForecast forecast = entries.get(key);
+            if (forecast != null) {
+                hits++;
+                return forecast;
+            }
+        }
+        CachedForecast stored = stores == null ? null : load(key);
+        synchronized (this) {
+            if (stored == null) {
+                misses++;
+                return null;
+            }
+            storeHits++;
+            keep(key, stored);
+            return stored;
+        }
+    }
+
+    /**
+     * Keeps a forecast, writing it back when enabled.
+     *
+     * @throws IllegalArgumentException when it does not hold the quantiles of
+     * this cache
+     */
+    public void put(Key key, CachedForecast forecast) {
+        if (!Arrays.equals(quantiles, forecast.getQuantiles())) {
+            throw new IllegalArgumentException("Forecast holds quantiles " + Arrays.toString(forecast.getQuantiles())
+                    + " instead of " + Arrays.toString(quantiles));
+        }
+        synchronized (this) {
+            keep(key, forecast);
+        }
+        if (stores != null) {
+            writeBack(key, forecast);
+        }
+    }
+
+    /**
+     * Writes pending entries to the store.
+     */
+    public void flush() throws GSException {
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            try ( GridStore store = stores.get()) {
+                Container<String, Row> container = store.putContainer(CONTAINER_NAME, containerInfo(), false);
+                List<Row> rows = new ArrayList<>(pending.size());
+                for (Map.Entry<Key, CachedForecast> entry : pending) {
+                    rows.add(toRow(container, entry.getKey(), entry.getValue()));
+                }
+                store.multiPut(Collections.singletonMap(CONTAINER_NAME, rows));
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Drops every entry held in memory.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits + storeHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the entries that could not be written back.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + storeHits + misses;
+        return String.format("%d entries (%.1f MiB), %d lookups: %d hits, %d from %s, %d misses (%.1f%% hit rate),"
+                + " %d evictions, %d not written back", entries.size(), bytes / 1048576.0, lookups, hits, storeHits,
+                CONTAINER_NAME, misses, lookups == 0 ? 0 : 100.0 * (hits + storeHits) / lookups, evictions,
+                dropped.sum());
+    }
+
+    @Override
+    public void close() throws GSException {
+        synchronized (pendingLock) {
+            try {
+                flush();
+            } finally {
+                dropped.add(pending.size());
+                pending.clear();
+            }
+        }
+    }
+
+    private void keep(Key key, CachedForecast forecast) {
+        CachedForecast previous = entries.put(key, forecast);
+        if (previous != null) {
+            bytes -= previous.sizeInBytes() + key.sizeInBytes();
+        }
+        bytes += forecast.sizeInBytes() + key.sizeInBytes();
+        Iterator<Map.Entry<Key, CachedForecast>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<Key, CachedForecast> entry = eldest.next();
+            bytes -= entry.getValue().sizeInBytes() + entry.getKey().sizeInBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private CachedForecast load(Key key) {
+        try ( GridStore store = stores.get()) {
+            Container<String, Row> container = store.getContainer(CONTAINER_NAME);
+            Row row = container == null ? null : container.get(key.toString());
+            if (row == null || !Arrays.equals(quantiles, row.getFloatArray(4))) {
+                return null;
+            }
+            return new CachedForecast(quantiles, row.getFloatArray(5));
+        } catch (GSException ex) {
+            LOGGER.log(Level.WARNING, "Could not read " + CONTAINER_NAME + ", treating as a miss", ex);
+            return null;
+        }
+    }
+
+    private void writeBack(Key key, CachedForecast forecast) {
+        synchronized (pendingLock) {
+            pending.add(new AbstractMap.SimpleImmutableEntry<>(key, forecast));
+            if (pending.size() < writeBatchSize) {
+                return;
+            }
+            try {
+                flush();
+            } catch (GSException ex) {
+                int excess = pending.size() - MAX_PENDING_BATCHES * writeBatchSize;
+                if (excess > 0) {
+                    pending.subList(0, excess).clear();
+                    dropped.add(excess);
+                }
+                LOGGER.log(Level.WARNING, String.format("Could not write %d entries to %s, retrying with the next"
+                        + " batch; %d dropped so far", pending.size(), CONTAINER_NAME, dropped.sum()), ex);
+            }
+        }
+    }
+
+    private Row toRow(Container<String, Row> container, Key key, CachedForecast forecast) throws GSException {
+        Row row = container.createRow();
+        row.setString(0, key.toString());
+        row.setString(1, key.getId());
+        row.setString(2, key.getCheckpoint());
+        row.setInteger(3, key.getLastWeek());
+        row.setFloatArray(4, quantiles);
+        row.setFloatArray(5, forecast.getValues());
+        row.setTimestamp(6, new Date());
+        return row;
+    }
+
+    private static ContainerInfo containerInfo() {
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setName(CONTAINER_NAME);
+        containerInfo.setType(ContainerType.COLLECTION);
+        containerInfo.setColumnInfoList(Arrays.asList(
+                new ColumnInfo("key", GSType.STRING),
+                new ColumnInfo("id", GSType.STRING),
+                new ColumnInfo("checkpoint", GSType.STRING),
+                new ColumnInfo("last_week", GSType.INTEGER),
+                new ColumnInfo("quantiles", GSType.FLOAT_ARRAY),
+                new ColumnInfo("forecast", GSType.FLOAT_ARRAY),
+                new ColumnInfo("createdAt", GSType.TIMESTAMP)));
+        containerInfo.setRowKeyAssigned(true);
+        return containerInfo;
+    }
+
+    /**
+     * Identifies a forecast: the series, the checkpoint that produced it and
+     * the last week of the input it was conditioned on.
+     */
+    public static final class Key {
+
+        private final String id;
+        private final String checkpoint;
+        private final int lastWeek;
+
+        public Key(String id, String checkpoint, int lastWeek) {
+            this.id = id;
+            this.checkpoint = checkpoint;
+            this.lastWeek = lastWeek;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getCheckpoint() {
+            return checkpoint;
+        }
+
+        public int getLastWeek() {
+            return lastWeek;
+        }
+
+        long sizeInBytes() {
+            return 64 + 2L * (id.length() + checkpoint.length());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return lastWeek == other.lastWeek && id.equals(other.id) && checkpoint.equals(other.checkpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return (id.hashCode() * 31 + checkpoint.hashCode()) * 31 + lastWeek;
+        }
+
+        /**
+         * Returns the row key of the stored entry.
+         */
+        @Override
+        public String toString() {
+            return id + '|' + checkpoint + '|' + lastWeek;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.mycompany.djl.griddb.inference;
+
+import com.mycompany.djl.griddb.db.GridStoreSupplier;
+import com.mycompany.djl.griddb.db.TimeSeriesStore;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import com.toshiba.mwcloud.gs.ColumnInfo;
+import com.toshiba.mwcloud.gs.ContainerInfo;
+import com.toshiba.mwcloud.gs.ContainerType;
+import com.toshiba.mwcloud.gs.GSException;
+import com.toshiba.mwcloud.gs.GSType;
+import com.toshiba.mwcloud.gs.GridStore;
+import com.toshiba.mwcloud.gs.Row;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists forecasts to GridDB, one {@link ContainerType#COLLECTION}
+ * container per series ({@link #forecastName(String)}) with a row per
+ * forecast week, checkpoint and origin. The row key is made of the start of
+ * the week, as in the {@link TimeSeriesStore} series, the checkpoint that
+ * made the forecast and the last week it was conditioned on, so forecasts of
+ * the same week by another checkpoint or from another origin are kept side by
+ * side and only a repeated forecast replaces a row. A row also holds the
+ * horizon and the mean, the median and the other quantiles of the forecast
+ * for that week.
+ *
+ * <p>
+ * {@link #write} only queues the forecast, so the inference threads never
+ * wait on GridDB: a single writer thread takes up to
+ * {@link #optBatchSize(int)} queued series at a time, leases a store for
+ * them, creates the containers it has not seen yet and sends all their rows
+ * in one {@link GridStore#multiPut(Map)}. At most {@link #optCapacity(int)} series
+ * are queued; past that, forecasts are dropped and counted rather than
+ * holding inference up, as are those of a batch GridDB rejected or no store
+ * was leased for.
+ * {@link #close()} waits for the queue to drain.
+ *
+ * <p>
+ * Writes are timed as {@code forecast.write} in the {@link MetricsRegistry},
+ * next to the counters {@code forecast.written}, {@code forecast.dropped} and
+ * {@code forecast.failed} and the gauge {@code forecast.queued}.
+ */
+public class ForecastWriter implements AutoCloseable {
+
+    public static final String CONTAINER_PREFIX = "FC_";
+
+    private static final Logger LOGGER = Logger.getLogger(ForecastWriter.class.getName());
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Pending END = new Pending(null, 0, null);
+
+    private final GridStoreSupplier stores;
+    private final TimeSeriesStore weeks;
+    private final String checkpoint;
+    private final float[] quantiles;
+    private final ContainerInfo schema;
+    private int batchSize = 1000;
+    private int capacity = 65_536;
+
+    private BlockingQueue<Pending> queue;
+    private Thread writer;
+    private boolean closed;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param startTime the start of week 1
+     * @param checkpoint the checkpoint of the model, as stored with every row
+     * @param quantiles the quantile levels to store besides the mean; the
+     * median is always stored
+     */
+    public ForecastWriter(GridStoreSupplier stores, LocalDateTime startTime, String checkpoint, float... quantiles) {
+        this.stores = stores;
+        this.weeks = new TimeSeriesStore(startTime);
+        this.checkpoint = checkpoint;
+        this.quantiles = CachedForecast.withMedian(quantiles);
+        this.schema = containerInfo(this.quantiles);
+    }
+
+    /**
+     * Sets how many series at most go into one {@code multiPut}.
+     */
+    public ForecastWriter optBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets how many series may wait to be written before new ones are
+     * dropped.
+     */
+    public ForecastWriter optCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    public static String forecastName(String id) {
+        return CONTAINER_PREFIX + id;
+    }
+
+    /**
+     * Returns the stored quantile levels, in ascending order.
+     */
+    public float[] getQuantiles() {
+        return quantiles.clone();
+    }
+
+    /**
+     * Returns the name of the column holding a quantile level other than
+     * the median, e.g. {@code q950} for 0.95.
+     */
+    public static String columnOf(float quantile) {
+        return String.format(Locale.ROOT, "q%03d", Math.round(quantile * 1000));
+    }
+
+    /**
+     * Queues the forecast of series {@code id} for the weeks after
+     * {@code lastWeek}, without waiting.
+     *
+     * @return whether it was queued, rather than dropped for a full queue
+     * @throws IllegalArgumentException when it does not hold the stored
+     * quantiles
+     */
+    public boolean write(String id, int lastWeek, CachedForecast forecast) {
+        float[] held = forecast.getQuantiles();
+        for (float quantile : quantiles) {
+            if (Arrays.binarySearch(held, quantile) < 0) {
+                throw new IllegalArgumentException("Forecast of " + id + " lacks quantile " + quantile);
+            }
+        }
+        if (start().offer(new Pending(id, lastWeek, forecast))) {
+            return true;
+        }
+        dropped.increment();
+        METRICS.counter("forecast.dropped").increment();
+        if (dropped.sum() == 1) {
+            LOGGER.warning(String.format("%d forecasts are waiting to be written, dropping new ones", capacity));
+        }
+        return false;
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d series written to %s* containers (%s), %d dropped, %d failed",
+                written.sum(), CONTAINER_PREFIX, checkpoint, dropped.sum(), failed.sum());
+    }
+
+    /**
+     * Writes the queued forecasts and stops the writer thread. Later calls do
+     * nothing.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread = writer;
+            if (thread == null) {
+                return;
+            }
+        }
+        // an interrupted writer no longer takes from the queue
+        boolean queued = false;
+        while (!queued && thread.isAlive()) {
+            queued = queue.offer(END, 100, TimeUnit.MILLISECONDS);
+        }
+        thread.join();
+    }
+
+    private synchronized BlockingQueue<Pending> start() {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        if (writer == null) {
+            queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            BlockingQueue<Pending> pending = queue;
+            METRICS.gauge("forecast.queued", pending::size);
+            writer = new Thread(this::drain, "forecast-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        return queue;
+    }
+
+    private void drain() {
+        Set<String> created = new HashSet<>();
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            boolean end = false;
+            while (!end) {
+                batch.add(queue.take());
+                queue.drainTo(batch, Math.max(0, batchSize - 1));
+                end = batch.remove(END);
+                if (!batch.isEmpty()) {
+                    put(created, batch);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!batch.isEmpty() || !queue.isEmpty()) {
+                queue.removeIf(pending -> pending != END);
+                LOGGER.warning("Forecast writer stopped, its queued forecasts are lost");
+            }
+        }
+    }
+
+    private void put(Set<String> created, List<Pending> batch) {
+        long start = System.nanoTime();
+        try ( GridStore store = stores.get()) {
+            Map<String, List<Row>> request = new LinkedHashMap<>();
+            for (Pending pending : batch) {
+                String name = forecastName(pending.id);
+                if (!created.contains(name)) {
+                    store.putContainer(name, schema, false);
+                    created.add(name);
+                }
+                // a batch may hold several forecasts of the series
+                request.computeIfAbsent(name, k -> new ArrayList<>()).addAll(rows(store, pending));
+            }
+            store.multiPut(request);
+            written.add(batch.size());
+            METRICS.counter("forecast.written").add(batch.size());
+            METRICS.timer("forecast.write").recordSince(start);
+        } catch (GSException | RuntimeException ex) {
+            failed.add(batch.size());
+            METRICS.counter("forecast.failed").add(batch.size());
+            if (failed.sum() == batch.size()) {
+                LOGGER.log(Level.WARNING, "Could not write forecasts, dropping the batch", ex);
+            }
+        }
+    }
+
+    private List<Row> rows(GridStore store, Pending pending) throws GSException {
+        CachedForecast forecast = pending.forecast;
+        float[] mean = forecast.getMean();
+        float[][] levels = new float[quantiles.length][];
+        for (int q = 0; q < quantiles.length; q++) {
+            levels[q] = forecast.getQuantile(quantiles[q]);
+        }
+        List<Row> rows = new ArrayList<>(mean.length);
+        for (int h = 0; h < mean.length; h++) {
+            Row row = store.createRow(schema);
+            row.setTimestamp(0, weeks.timeOf(pending.lastWeek + h + 1));
+            row.setString(1, checkpoint);
+            row.setInteger(2, pending.lastWeek);
+            row.setInteger(3, h + 1);
+            row.setFloat(4, mean[h]);
+            int column = 6;
+            for (int q = 0; q < quantiles.length; q++) {
+                if (quantiles[q] == 0.5f) {
+                    row.setFloat(5, levels[q][h]);
+                } else {
+                    row.setFloat(column++, levels[q][h]);
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ContainerInfo containerInfo(float[] quantiles) {
+        List<ColumnInfo> columnInfoList = new ArrayList<>();
+        columnInfoList.add(new ColumnInfo("week", GSType.TIMESTAMP));
+        columnInfoList.add(new ColumnInfo("checkpoint", GSType.STRING));
+        columnInfoList.add(new ColumnInfo("last_week", GSType.INTEGER));
+        columnInfoList.add(new ColumnInfo("horizon", GSType.INTEGER));
+        columnInfoList.add(new ColumnInfo("mean", GSType.FLOAT));
+        columnInfoList.add(new ColumnInfo("median", GSType.FLOAT));
+        for (float quantile : quantiles) {
+            if (quantile != 0.5f) {
+                columnInfoList.add(new ColumnInfo(columnOf(quantile), GSType.FLOAT));
+            }
+        }
+        ContainerInfo containerInfo = new ContainerInfo();
+        containerInfo.setType(ContainerType.COLLECTION);
+        containerInfo.setColumnInfoList(columnInfoList);
+        containerInfo.setRowKeyColumnList(Arrays.asList(0, 1, 2));
+        return containerInfo;
+    }
+
+    /**
+     * A forecast waiting to be written.
+     */
+    private static final class Pending {
+
+        private final String id;
+        private final int lastWeek;
+        private final CachedForecast forecast;
+
+        Pending(String id, int lastWeek, CachedForecast forecast) {
+            this.id = id;
+            this.lastWeek = lastWeek;
+            this.forecast = forecast;
+        }
+    }
+}
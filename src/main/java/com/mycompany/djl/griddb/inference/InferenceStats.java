@@ -0,0 +1,74 @@
+package com.mycompany.djl.griddb.inference;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and per-batch latency of an inference run. The latency of a
+ * batch runs from the start of its preparation until its forecasts are
+ * evaluated, so it includes the time spent queueing between stages.
+ */
+public class InferenceStats {
+
+    private long[] latencies = new long[64];
+    private int batches;
+    private long series;
+    private long beginNanos;
+    private long endNanos;
+
+    synchronized void start() {
+        beginNanos = System.nanoTime();
+    }
+
+    synchronized void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    synchronized void record(int batchSize, long latencyNanos) {
+        if (batches == latencies.length) {
+            latencies = Arrays.copyOf(latencies, batches * 2);
+        }
+        latencies[batches++] = latencyNanos;
+        series += batchSize;
+    }
+
+    public synchronized long getSeries() {
+        return series;
+    }
+
+    public synchronized int getBatches() {
+        return batches;
+    }
+
+    public synchronized double getSeconds() {
+        return (endNanos - beginNanos) / 1e9;
+    }
+
+    /**
+     * Returns the series forecast and evaluated per second.
+     */
+    public synchronized double getThroughput() {
+        double seconds = getSeconds();
+        return seconds > 0 ? series / seconds : 0;
+    }
+
+    /**
+     * Returns a batch latency percentile in milliseconds, {@code percentile}
+     * being between 0 and 100.
+     */
+    public synchronized double getLatencyMillis(double percentile) {
+        if (batches == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, batches);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * batches) - 1;
+        return sorted[Math.max(0, Math.min(batches - 1, rank))] / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d series in %.2f s, %.1f series/s, batch latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms",
+                series, getSeconds(), getThroughput(),
+                getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99));
+    }
+}
@@ -0,0 +1,439 @@
+package com.mycompany.djl.griddb.inference;
+
+import ai.djl.Model;
+import ai.djl.inference.Predictor;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDArrays;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.NDScope;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.TimeSeriesData;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.Dataset;
+import ai.djl.translate.TranslateException;
+import ai.djl.translate.Translator;
+import ai.djl.util.Progress;
+import com.mycompany.djl.griddb.HierarchicalAggregator;
+import com.mycompany.djl.griddb.M5ForecastingEvaluator;
+import com.mycompany.djl.griddb.metrics.LeakDetector;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Scores a test dataset with a pool of {@link Predictor}s sharing one loaded
+ * {@link Model}, as three overlapping stages:
+ * <ol>
+ * <li>the calling thread reads batches and splits them into per-series
+ * inputs ({@link ForecastBatch#prepare}),</li>
+ * <li>{@link #optThreads(int)} workers, each with its own predictor, run
+ * {@code batchPredict},</li>
+ * <li>a single thread evaluates the forecasts of each batch in one pass
+ * ({@link M5ForecastingEvaluator#getMetricsPerBatch}) in batch order, so the
+ * metrics are aggregated in the same order as a serial run.</li>
+ * </ol>
+ * At most {@link #optMaxInFlight(int)} batches are between the first and the
+ * last stage at any time.
+ *
+ * <p>
+ * With {@link #optCache} the series found in a {@link ForecastCache} are not
+ * forecast again: only the missing ones of a batch go to {@code batchPredict},
+ * and the batch is scored from the cached means and quantiles.
+ *
+ * <p>
+ * With {@link #optWriter} the mean and quantiles of every forecast are
+ * handed to a {@link ForecastWriter} as each batch is evaluated, to be
+ * persisted in the background.
+ *
+ * <p>
+ * With {@link #optAggregator} the mean forecasts are also summed up the M5
+ * hierarchy as each batch is evaluated.
+ *
+ * <p>
+ * Every {@code batchPredict} call is timed as {@code predict.batch} in the
+ * {@link MetricsRegistry}, apart from the end-to-end batch latency of
+ * {@link InferenceStats}.
+ */
+public class ParallelInference {
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private final Model model;
+    private final Translator<TimeSeriesData, Forecast> translator;
+    private final LocalDateTime startTime;
+    private final int predictionLength;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxInFlight;
+    private Progress progress;
+    private InferenceStats stats;
+    private ForecastCache cache;
+    private String checkpoint;
+    private IntFunction<String> ids;
+    private int lastWeek;
+    private HierarchicalAggregator aggregator;
+    private ForecastWriter writer;
+    private boolean scopedMemory;
+    private LeakDetector leakDetector;
+
+    public ParallelInference(Model model, Translator<TimeSeriesData, Forecast> translator,
+            LocalDateTime startTime, int predictionLength) {
+        this.model = model;
+        this.translator = translator;
+        this.startTime = startTime;
+        this.predictionLength = predictionLength;
+    }
+
+    public ParallelInference optThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets how many batches may be prepared ahead of evaluation, twice the
+     * number of threads by default.
+     */
+    public ParallelInference optMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public ParallelInference optProgress(Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * Looks forecasts up in, and adds new ones to, {@code cache}. The test set
+     * must be read in row order.
+     *
+     * @param cache the cache, holding the quantiles of the evaluator
+     * @param checkpoint the checkpoint of the model
+     * @param ids the series id of every row of the test set
+     * @param lastWeek the last week of the context the series are forecast
+     * from
+     */
+    public ParallelInference optCache(ForecastCache cache, String checkpoint, IntFunction<String> ids,
+            int lastWeek) {
+        this.cache = cache;
+        this.checkpoint = checkpoint;
+        this.ids = ids;
+        this.lastWeek = lastWeek;
+        return this;
+    }
+
+    /**
+     * Hands every forecast to {@code writer}. The test set must be read in
+     * row order.
+     *
+     * @param ids the series id of every row of the test set
+     * @param lastWeek the last week of the context the series are forecast
+     * from
+     */
+    public ParallelInference optWriter(ForecastWriter writer, IntFunction<String> ids, int lastWeek) {
+        this.writer = writer;
+        this.ids = ids;
+        this.lastWeek = lastWeek;
+        return this;
+    }
+
+    /**
+     * Adds every scored batch to {@code aggregator}. The test set must be
+     * read in the row order of the table the aggregator was built from.
+     */
+    public ParallelInference optAggregator(HierarchicalAggregator aggregator) {
+        this.aggregator = aggregator;
+        return this;
+    }
+
+    /**
+     * Frees everything a batch allocated once its metrics are aggregated:
+     * {@code batchPredict} runs in an {@link NDScope} and the forecasts are
+     * copied to the host as {@link CachedForecast}s before it closes, so the
+     * sample paths and any array the translator attached to a longer-lived
+     * manager go with it, and the batch is scored from the host copies. A
+     * {@link LeakDetector} then checks after every batch that the run's
+     * manager and the model's did not gain arrays.
+     */
+    public ParallelInference optScopedMemory(boolean scopedMemory) {
+        this.scopedMemory = scopedMemory;
+        return this;
+    }
+
+    /**
+     * Returns the leak detector of the last run with
+     * {@link #optScopedMemory}, or {@code null}.
+     */
+    public LeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Returns the statistics of the last run.
+     */
+    public InferenceStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Forecasts every series of {@code testSet} and returns the total metrics
+     * of {@code evaluator}.
+     */
+    public Map<String, Float> run(Dataset testSet, NDManager manager, M5ForecastingEvaluator evaluator)
+            throws IOException, TranslateException {
+        if (cache != null) {
+            float[] cached = cache.getQuantiles();
+            for (float quantile : evaluator.getQuantiles()) {
+                if (Arrays.binarySearch(cached, quantile) < 0) {
+                    throw new IllegalArgumentException("The cache does not keep quantile " + quantile);
+                }
+            }
+        }
+        float[] levels = cache != null ? cache.getQuantiles() : CachedForecast.withMedian(evaluator.getQuantiles());
+        if (writer != null) {
+            for (float quantile : writer.getQuantiles()) {
+                if (Arrays.binarySearch(levels, quantile) < 0) {
+                    throw new IllegalArgumentException("The forecasts do not keep quantile " + quantile);
+                }
+            }
+        }
+        leakDetector = scopedMemory ? new LeakDetector(METRICS, manager, model.getNDManager()) : null;
+        int workers = Math.max(1, threads);
+        Semaphore inFlight = new Semaphore(maxInFlight > 0 ? maxInFlight : 2 * workers);
+        List<Predictor<TimeSeriesData, Forecast>> predictors = new CopyOnWriteArrayList<>();
+        ThreadLocal<Predictor<TimeSeriesData, Forecast>> predictor = ThreadLocal.withInitial(() -> {
+            Predictor<TimeSeriesData, Forecast> newPredictor = model.newPredictor(translator);
+            predictors.add(newPredictor);
+            return newPredictor;
+        });
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService predictPool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "predict-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService evaluateThread = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "evaluate");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        stats = new InferenceStats();
+        stats.start();
+        CompletableFuture<Void> evaluated = CompletableFuture.completedFuture(null);
+        try {
+            long sequence = 0;
+            int row = 0;
+            for (Batch batch : testSet.getData(manager)) {
+                inFlight.acquire();
+                if (evaluated.isCompletedExceptionally()) {
+                    batch.close();
+                    break;
+                }
+                ForecastBatch prepared = ForecastBatch.prepare(sequence++, batch, startTime, predictionLength);
+                ForecastCache.Key[] keys = cache == null ? null : lookUp(prepared, row);
+                int firstRow = row;
+                row += prepared.size();
+                CompletableFuture<ForecastBatch> predicted = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        if (keys == null && scopedMemory) {
+                            predictToHost(prepared, predictor.get(), levels);
+                        } else if (keys == null) {
+                            long start = System.nanoTime();
+                            prepared.setForecasts(predictor.get().batchPredict(prepared.getInputs()));
+                            METRICS.timer("predict.batch").recordSince(start);
+                            METRICS.counter("predict.series").add(prepared.size());
+                        } else {
+                            predictMissing(prepared, keys, predictor.get());
+                        }
+                        return prepared;
+                    } catch (TranslateException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, predictPool);
+                evaluated = CompletableFuture.allOf(evaluated, predicted).handleAsync((ignored, error) -> {
+                    try {
+                        if (error != null) {
+                            throw error instanceof CompletionException
+                                    ? (CompletionException) error : new CompletionException(error);
+                        }
+                        evaluate(prepared, firstRow, evaluator);
+                        if (writer != null) {
+                            write(prepared, firstRow, levels);
+                        }
+                        return null;
+                    } finally {
+                        prepared.close();
+                        if (leakDetector != null) {
+                            leakDetector.check("batch " + prepared.getSequence());
+                        }
+                        inFlight.release();
+                    }
+                }, evaluateThread);
+            }
+            evaluated.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TranslateException(ex);
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof TranslateException) {
+                throw (TranslateException) ex.getCause();
+            }
+            throw new TranslateException(ex.getCause());
+        } finally {
+            // every predict task is upstream of the last evaluation
+            evaluated.exceptionally(ex -> null).join();
+            predictPool.shutdown();
+            evaluateThread.shutdown();
+            for (Predictor<TimeSeriesData, Forecast> p : predictors) {
+                p.close();
+            }
+        }
+        stats.stop();
+        return evaluator.computeTotalMetrics();
+    }
+
+    private ForecastCache.Key[] lookUp(ForecastBatch batch, int firstRow) {
+        ForecastCache.Key[] keys = new ForecastCache.Key[batch.size()];
+        CachedForecast[] cached = new CachedForecast[batch.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new ForecastCache.Key(ids.apply(firstRow + i), checkpoint, lastWeek);
+            cached[i] = cache.get(keys[i]);
+        }
+        batch.setCached(cached);
+        return keys;
+    }
+
+    /**
+     * Forecasts every series of {@code batch} within an {@link NDScope} and
+     * keeps host copies of the mean and {@code levels} only, copied in one
+     * transfer for the whole batch.
+     */
+    private void predictToHost(ForecastBatch batch, Predictor<TimeSeriesData, Forecast> predictor, float[] levels)
+            throws TranslateException {
+        try ( NDScope scope = new NDScope()) {
+            long start = System.nanoTime();
+            List<Forecast> forecasts = predictor.batchPredict(batch.getInputs());
+            METRICS.timer("predict.batch").recordSince(start);
+            METRICS.counter("predict.series").add(batch.size());
+            batch.setCached(CachedForecast.of(forecasts, levels));
+        }
+    }
+
+    private void predictMissing(ForecastBatch batch, ForecastCache.Key[] keys,
+            Predictor<TimeSeriesData, Forecast> predictor) throws TranslateException {
+        CachedForecast[] cached = batch.getCached();
+        List<Integer> missing = new ArrayList<>();
+        List<TimeSeriesData> inputs = new ArrayList<>();
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] == null) {
+                missing.add(i);
+                inputs.add(batch.getInputs().get(i));
+            }
+        }
+        if (inputs.isEmpty()) {
+            return;
+        }
+        try ( NDScope scope = scopedMemory ? new NDScope() : null) {
+            long start = System.nanoTime();
+            List<Forecast> forecasts = predictor.batchPredict(inputs);
+            METRICS.timer("predict.batch").recordSince(start);
+            METRICS.counter("predict.series").add(inputs.size());
+            CachedForecast[] predicted = CachedForecast.of(forecasts, cache.getQuantiles());
+            for (int i = 0; i < predicted.length; i++) {
+                int index = missing.get(i);
+                cached[index] = predicted[i];
+                cache.put(keys[index], cached[index]);
+            }
+        }
+    }
+
+    private void evaluate(ForecastBatch batch, int firstRow, M5ForecastingEvaluator evaluator) {
+        Map<String, float[]> metrics;
+        if (batch.getCached() == null) {
+            metrics = evaluator.getMetricsPerBatch(batch.getGroundTruth(), batch.getPastTarget(), batch.getForecasts());
+        } else {
+            metrics = evaluateCached(batch, evaluator);
+        }
+        evaluator.aggregateBatchMetrics(metrics);
+        if (aggregator != null) {
+            NDArray pastTarget = batch.getPastTarget();
+            aggregator.add(firstRow, batch.getGroundTruth().toFloatArray(), meanForecasts(batch),
+                    pastTarget.get(":, {}:", -predictionLength).sum(new int[]{1}).toFloatArray());
+        }
+        stats.record(batch.size(), System.nanoTime() - batch.getStartNanos());
+        if (progress != null) {
+            progress.increment(batch.size());
+        }
+    }
+
+    /**
+     * Queues the forecasts of {@code batch} on the writer, copying those
+     * still on the engine to the host first.
+     */
+    private void write(ForecastBatch batch, int firstRow, float[] levels) {
+        CachedForecast[] cached = batch.getCached() != null ? batch.getCached()
+                : CachedForecast.of(batch.getForecasts(), levels);
+        for (int i = 0; i < batch.size(); i++) {
+            writer.write(ids.apply(firstRow + i), lastWeek, cached[i]);
+        }
+    }
+
+    private float[] meanForecasts(ForecastBatch batch) {
+        CachedForecast[] cached = batch.getCached();
+        if (cached == null) {
+            NDList means = new NDList(batch.size());
+            for (Forecast forecast : batch.getForecasts()) {
+                means.add(forecast.mean());
+            }
+            return NDArrays.stack(means).toFloatArray();
+        }
+        float[] means = new float[cached.length * predictionLength];
+        for (int i = 0; i < cached.length; i++) {
+            cached[i].copyMean(means, i * predictionLength);
+        }
+        return means;
+    }
+
+    /**
+     * Scores a batch from its cached forecasts, stacked on the host into one
+     * array per statistic.
+     */
+    private Map<String, float[]> evaluateCached(ForecastBatch batch, M5ForecastingEvaluator evaluator) {
+        CachedForecast[] cached = batch.getCached();
+        float[] quantiles = evaluator.getQuantiles();
+        float[] mean = new float[cached.length * predictionLength];
+        float[] median = new float[mean.length];
+        float[][] forecastQuantiles = new float[quantiles.length][mean.length];
+        for (int i = 0; i < cached.length; i++) {
+            int offset = i * predictionLength;
+            cached[i].copyMean(mean, offset);
+            cached[i].copyQuantile(0.5f, median, offset);
+            for (int j = 0; j < quantiles.length; j++) {
+                cached[i].copyQuantile(quantiles[j], forecastQuantiles[j], offset);
+            }
+        }
+        NDArray gt = batch.getGroundTruth();
+        NDManager manager = gt.getManager();
+        Shape shape = new Shape(cached.length, predictionLength);
+        NDArray[] stackedQuantiles = new NDArray[quantiles.length];
+        for (int j = 0; j < quantiles.length; j++) {
+            stackedQuantiles[j] = manager.create(forecastQuantiles[j], shape);
+        }
+        return evaluator.getMetricsPerBatch(gt, batch.getPastTarget(),
+                manager.create(mean, shape), manager.create(median, shape), stackedQuantiles);
+    }
+}
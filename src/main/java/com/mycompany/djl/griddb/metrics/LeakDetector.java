@@ -0,0 +1,111 @@
+package com.mycompany.djl.griddb.metrics;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Finds NDArrays that outlive the scope they were made for. It watches
+ * long-lived managers, such as the model's or the one an inference run
+ * hands out batch sub-managers from, which should not gain arrays while the
+ * run goes on: after each batch scope {@link #check} looks for arrays
+ * attached to them since the detector was created and reports them, once
+ * each, as leaked. They are counted in {@code ndarray.leaked} and
+ * {@code ndarray.leaked.bytes} of the {@link MetricsRegistry}, and the first
+ * ones found are logged with their shape and manager.
+ *
+ * <p>
+ * Only arrays attached to a watched manager itself count: arrays of its
+ * sub-managers, which {@link NDManager#getManagedArrays()} lists too, belong
+ * to batches still in flight, and those of sub-managers that are never
+ * closed are left to the {@link ManagerMemory} gauges.
+ */
+public class LeakDetector {
+
+    private static final Logger LOGGER = Logger.getLogger(LeakDetector.class.getName());
+    private static final int MAX_REPORTS = 10;
+
+    private final List<NDManager> managers = new ArrayList<>();
+    private final Set<NDArray> known = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final LongAdder leaked;
+    private final LongAdder leakedBytes;
+    private long found;
+    private long foundBytes;
+    private int reports;
+
+    /**
+     * @param managers the managers to watch; the arrays they hold now are
+     * not leaks
+     */
+    public LeakDetector(MetricsRegistry registry, NDManager... managers) {
+        this.leaked = registry.counter("ndarray.leaked");
+        this.leakedBytes = registry.counter("ndarray.leaked.bytes");
+        for (NDManager manager : managers) {
+            this.managers.add(manager);
+            known.addAll(manager.getManagedArrays());
+        }
+    }
+
+    /**
+     * Reports the arrays that appeared on the watched managers since the last
+     * check, as leaked by {@code scope}, and returns how many there are.
+     */
+    public synchronized int check(String scope) {
+        known.removeIf(NDArray::isReleased);
+        int count = 0;
+        long bytes = 0;
+        StringBuilder shapes = new StringBuilder();
+        for (NDManager manager : managers) {
+            if (!manager.isOpen()) {
+                continue;
+            }
+            for (NDArray array : manager.getManagedArrays()) {
+                // getManagedArrays also lists the arrays of open sub-managers,
+                // such as the next batch's
+                if (array.getManager() != manager || array.isReleased() || !known.add(array)) {
+                    continue;
+                }
+                count++;
+                bytes += array.size() * array.getDataType().getNumOfBytes();
+                if (count <= 3) {
+                    shapes.append(count == 1 ? "" : ", ").append(array.getShape())
+                            .append(" on ").append(manager.getName());
+                }
+            }
+        }
+        if (count > 0) {
+            leaked.add(count);
+            leakedBytes.add(bytes);
+            found += count;
+            foundBytes += bytes;
+            if (reports++ < MAX_REPORTS) {
+                LOGGER.warning(String.format("%d NDArrays (%d bytes) outlived %s: %s%s",
+                        count, bytes, scope, shapes, count > 3 ? ", ..." : ""));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of leaked arrays found so far.
+     */
+    public synchronized long getLeaked() {
+        return found;
+    }
+
+    public synchronized long getLeakedBytes() {
+        return foundBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return found == 0 ? "no NDArray outlived its scope"
+                : String.format("%d NDArrays (%d bytes) outlived their scope", found, foundBytes);
+    }
+}
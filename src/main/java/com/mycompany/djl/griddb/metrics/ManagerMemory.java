@@ -0,0 +1,61 @@
+package com.mycompany.djl.griddb.metrics;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The native memory held by one kind of per-batch {@code NDManager}
+ * sub-manager, e.g. those of the batches a prefetcher has built but training
+ * has not consumed yet. Rather than listing the arrays of every manager,
+ * the arrays a batch is made of are counted when it is built and released
+ * with its manager: {@code ndarray.<name>.held} is the gauge of the bytes held
+ * now, and {@code ndarray.<name>.batch} the histogram of the bytes per
+ * manager. Intermediate arrays of the forward pass are not included.
+ */
+public class ManagerMemory {
+
+    private final LongAdder held = new LongAdder();
+    private final Histogram perManager;
+
+    ManagerMemory(MetricsRegistry registry, String name) {
+        this.perManager = registry.sizes("ndarray." + name + ".batch");
+        registry.gauge("ndarray." + name + ".held", held::sum);
+    }
+
+    /**
+     * Returns the bytes of the arrays of {@code lists}, counted as held from
+     * now on.
+     */
+    public long acquire(NDList... lists) {
+        long bytes = 0;
+        for (NDList list : lists) {
+            bytes += bytesOf(list);
+        }
+        held.add(bytes);
+        perManager.record(bytes);
+        return bytes;
+    }
+
+    /**
+     * Counts {@code bytes} returned by {@link #acquire} as released.
+     */
+    public void release(long bytes) {
+        held.add(-bytes);
+    }
+
+    public long getHeld() {
+        return held.sum();
+    }
+
+    public static long bytesOf(NDList list) {
+        if (list == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (NDArray array : list) {
+            bytes += array.size() * array.getDataType().getNumOfBytes();
+        }
+        return bytes;
+    }
+}
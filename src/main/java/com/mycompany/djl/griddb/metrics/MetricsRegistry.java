@@ -0,0 +1,178 @@
+package com.mycompany.djl.griddb.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The counters, gauges and {@link Histogram}s of the process, by name. Names
+ * are dotted and say where the value comes from, e.g. {@code griddb.fetch} or
+ * {@code train.forward}, so that a slow run can be pinned on the data layer
+ * or the model:
+ * <ul>
+ * <li>{@code griddb.*}: queries and the rows and bytes they returned,</li>
+ * <li>{@code dataset.*}: decoding rows into tables and reading CSV
+ * files,</li>
+ * <li>{@code batch.*}: building training batches, transforms included, and
+ * waiting for them,</li>
+ * <li>{@code train.*}: the forward, backward and optimizer steps,</li>
+ * <li>{@code predict.*} and {@code serve.*}: {@code batchPredict} calls,</li>
+ * <li>{@code ndarray.*}: the native memory held by per-batch
+ * {@code NDManager}s.</li>
+ * </ul>
+ * Metrics are created on first use and live as long as the process, so one
+ * run of a command is one set of values, written out by {@link #dump} and
+ * scraped through a {@link MetricsServer}.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ManagerMemory> managers = new ConcurrentHashMap<>();
+    private final long startMillis = System.currentTimeMillis();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Reports the value of {@code supplier} as {@code name}, replacing the
+     * gauge registered under that name before.
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Returns the histogram of durations, in nanoseconds, called
+     * {@code name}.
+     */
+    public Histogram timer(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram("nanoseconds"));
+    }
+
+    /**
+     * Returns the histogram of sizes, in bytes, called {@code name}.
+     */
+    public Histogram sizes(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram("bytes"));
+    }
+
+    /**
+     * Returns the tracker of the memory held by the sub-managers called
+     * {@code name}.
+     */
+    public ManagerMemory managerMemory(String name) {
+        return managers.computeIfAbsent(name, n -> new ManagerMemory(this, n));
+    }
+
+    /**
+     * Returns every metric as nested maps, histograms summarized by their
+     * count, sum, mean, minimum, maximum and percentiles.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("startMillis", startMillis);
+        snapshot.put("endMillis", System.currentTimeMillis());
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        snapshot.put("counters", counterValues);
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.getAsLong()));
+        snapshot.put("gauges", gaugeValues);
+        Map<String, Object> histogramValues = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, summarize(histogram)));
+        snapshot.put("histograms", histogramValues);
+        return snapshot;
+    }
+
+    public String toJson() {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return gson.toJson(snapshot());
+    }
+
+    /**
+     * Returns every metric in the Prometheus text format: counters and gauges
+     * as they are, histograms as summaries in seconds or bytes.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        new TreeMap<>(counters).forEach((name, counter) -> {
+            String metric = prometheusName(name) + "_total";
+            text.append("# TYPE ").append(metric).append(" counter\n");
+            text.append(metric).append(' ').append(counter.sum()).append('\n');
+        });
+        new TreeMap<>(gauges).forEach((name, gauge) -> {
+            String metric = prometheusName(name);
+            text.append("# TYPE ").append(metric).append(" gauge\n");
+            text.append(metric).append(' ').append(gauge.getAsLong()).append('\n');
+        });
+        new TreeMap<>(histograms).forEach((name, histogram) -> {
+            boolean time = "nanoseconds".equals(histogram.getUnit());
+            double scale = time ? 1e-9 : 1;
+            String metric = prometheusName(name) + (time ? "_seconds" : "_bytes");
+            text.append("# TYPE ").append(metric).append(" summary\n");
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                text.append(metric).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(format(histogram.getPercentile(quantile * 100) * scale)).append('\n');
+            }
+            text.append(metric).append("_sum ").append(format(histogram.getSum() * scale)).append('\n');
+            text.append(metric).append("_count ").append(histogram.getCount()).append('\n');
+        });
+        return text.toString();
+    }
+
+    /**
+     * Writes {@link #toJson()} to {@code file}, creating its directory.
+     */
+    public void dump(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try ( Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("unit", histogram.getUnit());
+        summary.put("count", histogram.getCount());
+        summary.put("sum", histogram.getSum());
+        summary.put("mean", histogram.getMean());
+        summary.put("min", histogram.getMin());
+        summary.put("p50", histogram.getPercentile(50));
+        summary.put("p90", histogram.getPercentile(90));
+        summary.put("p99", histogram.getPercentile(99));
+        summary.put("p999", histogram.getPercentile(99.9));
+        summary.put("max", histogram.getMax());
+        return summary;
+    }
+
+    private static String prometheusName(String name) {
+        return "djl_griddb_" + name.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase(Locale.ROOT);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.9g", value);
+    }
+}
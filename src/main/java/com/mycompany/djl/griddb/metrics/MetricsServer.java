@@ -0,0 +1,90 @@
+package com.mycompany.djl.griddb.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Serves a {@link MetricsRegistry} for scraping on the loopback interface:
+ * {@code GET /metrics} in the Prometheus text format and
+ * {@code GET /metrics.json} as {@link MetricsRegistry#toJson()}. The
+ * {@link com.mycompany.djl.griddb.serving.ForecastServer} mounts the same
+ * handlers next to its own; training and scoring runs start one when the
+ * {@code metrics.port} system property is set.
+ */
+public class MetricsServer implements AutoCloseable {
+
+    public static final String PORT_PROPERTY = "metrics.port";
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsServer.class.getName());
+
+    private final MetricsRegistry registry;
+    private HttpServer server;
+
+    public MetricsServer(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Starts a server for the default registry on the port of the
+     * {@value #PORT_PROPERTY} system property, or returns {@code null} when it
+     * is not set.
+     */
+    public static MetricsServer startFromProperty() throws IOException {
+        String port = System.getProperty(PORT_PROPERTY);
+        if (port == null || port.isEmpty()) {
+            return null;
+        }
+        return new MetricsServer(MetricsRegistry.getDefault()).start(Integer.parseInt(port));
+    }
+
+    public MetricsServer start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 16);
+        mount(server, registry);
+        server.start();
+        LOGGER.info(String.format("Serving metrics on http://localhost:%d/metrics", getPort()));
+        return this;
+    }
+
+    /**
+     * Adds the {@code /metrics} and {@code /metrics.json} handlers to
+     * {@code server}.
+     */
+    public static void mount(HttpServer server, MetricsRegistry registry) {
+        server.createContext("/metrics", exchange
+                -> respond(exchange, "text/plain; version=0.0.4", registry.toPrometheus()));
+        server.createContext("/metrics.json", exchange
+                -> respond(exchange, "application/json", registry.toJson()));
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try ( OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
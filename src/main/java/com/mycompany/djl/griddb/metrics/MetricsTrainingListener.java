@@ -0,0 +1,79 @@
+package com.mycompany.djl.griddb.metrics;
+
+import ai.djl.metric.Metric;
+import ai.djl.metric.Metrics;
+import ai.djl.training.Trainer;
+import ai.djl.training.listener.TrainingListenerAdapter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies the step timings the {@link Trainer} records in its {@link Metrics}
+ * ({@code forward}, {@code backward}, {@code step} and
+ * {@code training-metrics}, in nanoseconds) into {@code train.*} histograms
+ * of a {@link MetricsRegistry}, and times the epochs. The trainer only
+ * records them once {@link Trainer#setMetrics} is called.
+ */
+public class MetricsTrainingListener extends TrainingListenerAdapter {
+
+    private static final String[] TRAINER_METRICS = {"forward", "backward", "step", "training-metrics"};
+
+    private final MetricsRegistry registry;
+    private final Map<String, Integer> copied = new HashMap<>();
+    private long epochStart;
+
+    public MetricsTrainingListener(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void onTrainingBegin(Trainer trainer) {
+        copied.clear();
+        epochStart = System.nanoTime();
+    }
+
+    @Override
+    public void onTrainingBatch(Trainer trainer, BatchData batchData) {
+        copyNew(trainer.getMetrics());
+        registry.counter("train.batches").increment();
+    }
+
+    @Override
+    public void onEpoch(Trainer trainer) {
+        copyNew(trainer.getMetrics());
+        registry.timer("train.epoch").recordSince(epochStart);
+        epochStart = System.nanoTime();
+    }
+
+    @Override
+    public void onTrainingEnd(Trainer trainer) {
+        copyNew(trainer.getMetrics());
+    }
+
+    /**
+     * Records the values added since the last call; the trainer keeps them
+     * all, and {@code step} runs after the listeners of its batch.
+     */
+    private void copyNew(Metrics metrics) {
+        if (metrics == null) {
+            return;
+        }
+        for (String name : TRAINER_METRICS) {
+            if (!metrics.hasMetric(name)) {
+                continue;
+            }
+            List<Metric> values = metrics.getMetric(name);
+            int from = copied.getOrDefault(name, 0);
+            if (from > values.size()) {
+                // the trainer was given new metrics
+                from = 0;
+            }
+            Histogram histogram = registry.timer("train." + name);
+            for (int i = from; i < values.size(); i++) {
+                histogram.record(values.get(i).getValue().longValue());
+            }
+            copied.put(name, values.size());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.mycompany.djl.griddb.serving;
+
+/**
+ * A request for the forecast of one series, as JSON
+ * {@code {"id": "...", "history": [...], "lastWeek": n, "cache": false}}.
+ */
+public class ForecastRequest {
+
+    /**
+     * The series id, as stored in the sales containers.
+     */
+    public String id;
+
+    /**
+     * Optional recent weekly sales ending at {@link #lastWeek}. They replace
+     * or extend the stored history of the series.
+     */
+    public float[] history;
+
+    /**
+     * The week of the last {@link #history} value, the last stored week when
+     * not set.
+     */
+    public Integer lastWeek;
+
+    /**
+     * Whether the forecast may come from, and be added to, the server's
+     * forecast cache; {@code true} when not set.
+     */
+    public Boolean cache;
+
+    public ForecastRequest() {
+    }
+
+    public ForecastRequest(String id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,29 @@
+package com.mycompany.djl.griddb.serving;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The forecast of one series for the weeks following its history.
+ */
+public class ForecastResponse {
+
+    public String id;
+
+    /**
+     * The first forecast week.
+     */
+    public int startWeek;
+
+    /**
+     * The start of {@link #startWeek}.
+     */
+    public String startDate;
+
+    public float[] mean;
+
+    /**
+     * The forecast quantiles, keyed {@code p10}, {@code p50}, ...
+     */
+    public Map<String, float[]> quantiles = new LinkedHashMap<>();
+}
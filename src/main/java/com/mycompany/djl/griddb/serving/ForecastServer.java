@@ -0,0 +1,219 @@
+package com.mycompany.djl.griddb.serving;
+
+import ai.djl.Model;
+import ai.djl.timeseries.distribution.output.NegativeBinomialOutput;
+import ai.djl.timeseries.model.deepar.DeepARNetwork;
+import ai.djl.training.dataset.Dataset;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.mycompany.djl.griddb.Forecaster;
+import com.mycompany.djl.griddb.datasets.GridDBDataset;
+import com.mycompany.djl.griddb.datasets.SeriesTable;
+import com.mycompany.djl.griddb.inference.ForecastCache;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import com.mycompany.djl.griddb.metrics.MetricsServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves a {@link ForecastService} over HTTP on the JDK's embedded server.
+ * <ul>
+ * <li>{@code POST /forecast} takes a {@link ForecastRequest} and answers with
+ * a {@link ForecastResponse}, 404 for an unknown series, 400 for a malformed
+ * request or a history that does not connect to the stored one and 503 when too many requests are pending,</li>
+ * <li>{@code GET /health} reports the batches handled so far and the
+ * {@link ForecastCache} the service answers repeated requests from,</li>
+ * <li>{@code GET /metrics} and {@code GET /metrics.json} serve the
+ * {@link MetricsRegistry}, as a {@link MetricsServer} does.</li>
+ * </ul>
+ * Requests are parsed and answered on a pool of HTTP threads while they wait
+ * for their batch, so the number of requests in flight is bounded by the
+ * batcher queue rather than by threads.
+ *
+ * <p>
+ * Usage: {@code mvn exec:java -Dexec.mainClass=com.mycompany.djl.griddb.serving.ForecastServer -Dexec.args="8080 64 2000 2"},
+ * the arguments being the port, the maximum batch size, the maximum wait in
+ * microseconds and the number of predicting workers. Repeated requests are
+ * answered from a {@link ForecastCache} only with
+ * {@code -Dforecast.cache=true}, and it is written back to GridDB only with
+ * {@code -Dforecast.cache.writeBack=true} as well.
+ */
+public class ForecastServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ForecastServer.class.getName());
+
+    private final ForecastService service;
+    private final Gson gson = new Gson();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ForecastServer(ForecastService service) {
+        this.service = service;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int maxBatchSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        long maxWaitMicros = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        try ( Model model = Model.newInstance("deepar")) {
+            GridDBDataset.GridDBBuilder builder = GridDBDataset.gridDBBuilder();
+            DeepARNetwork network = Forecaster.getDeepARModel(new NegativeBinomialOutput(),
+                    Forecaster.getCheckpointCardinality(Paths.get(Forecaster.MODEL_OUTPUT_DIR), builder), false);
+            model.setBlock(network);
+            model.load(Paths.get(Forecaster.MODEL_OUTPUT_DIR));
+            SeriesTable table = loadSeries(builder);
+
+            try ( ForecastCache cache = ForecastCache.fromProperties(
+                    GridDBDataset.getStorePool(), 0.1f, 0.9f);  ForecastService service = new ForecastService(
+                    model, Forecaster.getTranslator(), table, Forecaster.START_TIME)
+                    .optCache(cache, ForecastCache.checkpointOf(Paths.get(Forecaster.MODEL_OUTPUT_DIR), "deepar"))
+                    .optMaxBatchSize(maxBatchSize)
+                    .optMaxWaitMicros(maxWaitMicros)
+                    .optWorkers(workers)
+                    .start();  ForecastServer server = new ForecastServer(service).start(port)) {
+                CountDownLatch stopped = new CountDownLatch(1);
+                Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+                stopped.await();
+            }
+        }
+    }
+
+    /**
+     * Loads every series of the evaluation container up to its last stored
+     * week.
+     */
+    private static SeriesTable loadSeries(GridDBDataset.GridDBBuilder builder) throws Exception {
+        builder.optUsage(Dataset.Usage.TEST);
+        int lastWeek = builder.getStoredLastWeek();
+        return builder.optLoadMode(GridDBDataset.LoadMode.STREAM)
+                .optCacheDir(Paths.get(Forecaster.MODEL_OUTPUT_DIR, "cache"))
+                .setStartTime(Forecaster.START_TIME)
+                .setMaxWeek(lastWeek)
+                .initData()
+                .getTable();
+    }
+
+    /**
+     * Starts listening on {@code port}.
+     */
+    public ForecastServer start(int port) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/forecast", this::handleForecast);
+        server.createContext("/health", this::handleHealth);
+        MetricsServer.mount(server, MetricsRegistry.getDefault());
+        server.start();
+        LOGGER.info(String.format("Serving forecasts on port %d", server.getAddress().getPort()));
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handleForecast(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("Use POST"));
+            return;
+        }
+        ForecastRequest request;
+        try ( InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            request = gson.fromJson(reader, ForecastRequest.class);
+        } catch (JsonParseException ex) {
+            respond(exchange, 400, error(ex.getMessage()));
+            return;
+        }
+        if (request == null) {
+            respond(exchange, 400, error("Empty request"));
+            return;
+        }
+
+        CompletableFuture<ForecastResponse> response;
+        try {
+            response = service.forecast(request);
+        } catch (UnknownSeriesException ex) {
+            respond(exchange, 404, error(ex.getMessage()));
+            return;
+        } catch (IllegalArgumentException ex) {
+            respond(exchange, 400, error(ex.getMessage()));
+            return;
+        } catch (RejectedExecutionException ex) {
+            respond(exchange, 503, error(ex.getMessage()));
+            return;
+        }
+        response.whenCompleteAsync((forecast, failure) -> {
+            try {
+                if (failure == null) {
+                    respond(exchange, 200, gson.toJson(forecast));
+                } else {
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    int status = cause instanceof RejectedExecutionException ? 503 : 500;
+                    respond(exchange, status, error(String.valueOf(cause.getMessage())));
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Could not answer a request", ex);
+            }
+        }, executor);
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        MicroBatcher<ForecastRequest, ForecastResponse> batcher = service.getBatcher();
+        Map<String, Object> health = new LinkedHashMap<>();
+        health.put("status", "ok");
+        health.put("batches", batcher.getBatches());
+        health.put("meanBatchSize", batcher.getMeanBatchSize());
+        if (service.getCache() != null) {
+            health.put("cache", service.getCache().toString());
+        }
+        health.put("storePool", GridDBDataset.getStorePool().toString());
+        respond(exchange, 200, gson.toJson(health));
+    }
+
+    private String error(String message) {
+        return gson.toJson(Collections.singletonMap("error", message));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try ( OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
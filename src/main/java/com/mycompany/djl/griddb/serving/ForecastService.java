@@ -0,0 +1,256 @@
+package com.mycompany.djl.griddb.serving;
+
+import ai.djl.Model;
+import ai.djl.inference.Predictor;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.NDScope;
+import ai.djl.timeseries.Forecast;
+import ai.djl.timeseries.TimeSeriesData;
+import ai.djl.timeseries.dataset.FieldName;
+import ai.djl.translate.Translator;
+import com.mycompany.djl.griddb.datasets.SeriesTable;
+import com.mycompany.djl.griddb.inference.CachedForecast;
+import com.mycompany.djl.griddb.inference.ForecastCache;
+import com.mycompany.djl.griddb.metrics.ManagerMemory;
+import com.mycompany.djl.griddb.metrics.MetricsRegistry;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forecasts single series on request with a loaded model, combining
+ * concurrent requests into {@link Predictor#batchPredict} calls through a
+ * {@link MicroBatcher}.
+ *
+ * <p>
+ * The inputs are built as in {@link com.mycompany.djl.griddb.Forecaster#predict()}:
+ * the weekly sales of the series as target, starting at its first week, and
+ * its static category codes. The sales come from the {@link SeriesTable}
+ * loaded at startup, with the tail replaced by the history sent with the
+ * request, if any. Each worker of the batcher has its own predictor, and the
+ * arrays of a batch live in a manager and an {@link NDScope}, both closed once
+ * its forecasts are copied out, so that arrays the translator attaches to the
+ * predictor are freed too. Each {@code batchPredict} call is timed as {@code serve.batch} in the
+ * {@link MetricsRegistry}.
+ *
+ * <p>
+ * With {@link #optCache} requests without history are answered from a
+ * {@link ForecastCache} when the series was already forecast by the same
+ * checkpoint up to the same stored week, without waiting for a batch, and
+ * the forecasts computed for them are added to it, unless the request turns
+ * the cache off. The response then holds every quantile the cache keeps.
+ */
+public class ForecastService implements AutoCloseable {
+
+    private static final float[] QUANTILES = {0.1f, 0.5f, 0.9f};
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final ManagerMemory MEMORY = METRICS.managerMemory("serve");
+
+    private final Model model;
+    private final SeriesTable table;
+    private final LocalDateTime startTime;
+    private final Map<String, Integer> rows;
+    private final List<Predictor<TimeSeriesData, Forecast>> predictors = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Predictor<TimeSeriesData, Forecast>> predictor;
+    private final MicroBatcher<ForecastRequest, ForecastResponse> batcher;
+    private ForecastCache cache;
+    private String checkpoint;
+
+    /**
+     * @param model the loaded prediction model
+     * @param translator the translator of the model
+     * @param table the stored series
+     * @param startTime the start of week 1
+     */
+    public ForecastService(Model model, Translator<TimeSeriesData, Forecast> translator, SeriesTable table,
+            LocalDateTime startTime) {
+        this.model = model;
+        this.table = table;
+        this.startTime = startTime;
+        rows = new HashMap<>(table.size() * 2);
+        for (int i = 0; i < table.size(); i++) {
+            rows.put(table.getId(i), i);
+        }
+        predictor = ThreadLocal.withInitial(() -> {
+            Predictor<TimeSeriesData, Forecast> newPredictor = model.newPredictor(translator);
+            predictors.add(newPredictor);
+            return newPredictor;
+        });
+        batcher = new MicroBatcher<>(this::predictBatch);
+    }
+
+    public ForecastService optMaxBatchSize(int maxBatchSize) {
+        batcher.optMaxBatchSize(maxBatchSize);
+        return this;
+    }
+
+    public ForecastService optMaxWaitMicros(long maxWaitMicros) {
+        batcher.optMaxWaitMicros(maxWaitMicros);
+        return this;
+    }
+
+    /**
+     * Sets how many batches are predicted at the same time.
+     */
+    public ForecastService optWorkers(int workers) {
+        batcher.optWorkers(workers);
+        return this;
+    }
+
+    public ForecastService optQueueCapacity(int queueCapacity) {
+        batcher.optQueueCapacity(queueCapacity);
+        return this;
+    }
+
+    /**
+     * Answers requests from {@code cache}.
+     *
+     * @param checkpoint the checkpoint of the model, as in
+     * {@link ForecastCache#checkpointOf}
+     */
+    public ForecastService optCache(ForecastCache cache, String checkpoint) {
+        this.cache = cache;
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    public ForecastCache getCache() {
+        return cache;
+    }
+
+    public ForecastService start() {
+        batcher.start();
+        return this;
+    }
+
+    public MicroBatcher<ForecastRequest, ForecastResponse> getBatcher() {
+        return batcher;
+    }
+
+    /**
+     * Queues a request.
+     *
+     * @throws UnknownSeriesException when the series is unknown
+     * @throws IllegalArgumentException when its history does not connect to
+     * the stored one
+     */
+    public CompletableFuture<ForecastResponse> forecast(ForecastRequest request) {
+        Integer row = request.id == null ? null : rows.get(request.id);
+        if (row == null) {
+            throw new UnknownSeriesException(request.id);
+        }
+        if (request.history != null) {
+            int lastWeek = request.lastWeek != null ? request.lastWeek : table.getLastWeek();
+            int historyStart = lastWeek - request.history.length + 1;
+            if (historyStart > table.getLastWeek() + 1 || historyStart < table.getFirstWeek()) {
+                throw new IllegalArgumentException(String.format(
+                        "History w_%d..w_%d does not connect to the stored w_%d..w_%d",
+                        historyStart, lastWeek, table.getFirstWeek(), table.getLastWeek()));
+            }
+        }
+        if (isCached(request)) {
+            CachedForecast cached = cache.get(new ForecastCache.Key(request.id, checkpoint, table.getLastWeek()));
+            if (cached != null) {
+                return CompletableFuture.completedFuture(
+                        toResponse(request.id, table.getLastWeek() + 1, cached));
+            }
+        }
+        return batcher.submit(request);
+    }
+
+    @Override
+    public void close() {
+        batcher.close();
+        for (Predictor<TimeSeriesData, Forecast> p : predictors) {
+            p.close();
+        }
+    }
+
+    private List<ForecastResponse> predictBatch(List<ForecastRequest> requests) throws Exception {
+        long bytes = 0;
+        try ( NDManager manager = model.getNDManager().newSubManager();  NDScope scope = new NDScope()) {
+            List<TimeSeriesData> inputs = new ArrayList<>(requests.size());
+            NDList arrays = new NDList(requests.size() * 2);
+            int[] startWeeks = new int[requests.size()];
+            for (int i = 0; i < requests.size(); i++) {
+                ForecastRequest request = requests.get(i);
+                int row = rows.get(request.id);
+                float[] target = target(row, request);
+                startWeeks[i] = table.getFirstWeek() + target.length;
+
+                TimeSeriesData input = new TimeSeriesData(10);
+                input.setStartTime(startTime.plusWeeks(table.getFirstWeek() - 1));
+                NDArray targetArray = manager.create(target);
+                NDArray codes = manager.create(table.getCodes(row));
+                input.setField(FieldName.TARGET, targetArray);
+                input.setField(FieldName.FEAT_STATIC_CAT, codes);
+                inputs.add(input);
+                arrays.add(targetArray);
+                arrays.add(codes);
+            }
+            bytes = MEMORY.acquire(arrays);
+
+            long start = System.nanoTime();
+            List<Forecast> forecasts = predictor.get().batchPredict(inputs);
+            METRICS.timer("serve.batch").recordSince(start);
+            METRICS.counter("serve.series").add(inputs.size());
+            float[] quantiles = cache != null ? cache.getQuantiles() : QUANTILES;
+            CachedForecast[] cached = CachedForecast.of(forecasts, quantiles);
+            List<ForecastResponse> responses = new ArrayList<>(forecasts.size());
+            for (int i = 0; i < forecasts.size(); i++) {
+                ForecastRequest request = requests.get(i);
+                CachedForecast forecast = cached[i];
+                if (isCached(request)) {
+                    cache.put(new ForecastCache.Key(request.id, checkpoint, startWeeks[i] - 1), forecast);
+                }
+                responses.add(toResponse(request.id, startWeeks[i], forecast));
+            }
+            return responses;
+        } finally {
+            MEMORY.release(bytes);
+        }
+    }
+
+    private boolean isCached(ForecastRequest request) {
+        return cache != null && request.history == null && !Boolean.FALSE.equals(request.cache);
+    }
+
+    private ForecastResponse toResponse(String id, int startWeek, CachedForecast forecast) {
+        ForecastResponse response = new ForecastResponse();
+        response.id = id;
+        response.startWeek = startWeek;
+        response.startDate = startTime.plusWeeks(startWeek - 1).toLocalDate().toString();
+        response.mean = forecast.getMean();
+        for (float quantile : forecast.getQuantiles()) {
+            response.quantiles.put(String.format(Locale.ROOT, "p%d", Math.round(quantile * 100)),
+                    forecast.getQuantile(quantile));
+        }
+        return response;
+    }
+
+    /**
+     * Returns the sales of a series from its first stored week, with the
+     * request history in place of the stored tail.
+     */
+    private float[] target(int row, ForecastRequest request) {
+        if (request.history == null) {
+            return table.getTargets(row, table.getFirstWeek(), table.getLastWeek());
+        }
+        int lastWeek = request.lastWeek != null ? request.lastWeek : table.getLastWeek();
+        int historyStart = lastWeek - request.history.length + 1;
+        float[] target = new float[lastWeek - table.getFirstWeek() + 1];
+        if (historyStart > table.getFirstWeek()) {
+            float[] stored = table.getTargets(row, table.getFirstWeek(), historyStart - 1);
+            System.arraycopy(stored, 0, target, 0, stored.length);
+        }
+        System.arraycopy(request.history, 0, target, historyStart - table.getFirstWeek(), request.history.length);
+        return target;
+    }
+}
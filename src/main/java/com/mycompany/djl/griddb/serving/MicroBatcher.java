@@ -0,0 +1,213 @@
+package com.mycompany.djl.griddb.serving;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Combines requests submitted concurrently into batches for a
+ * {@link BatchHandler}.
+ *
+ * <p>
+ * Each of {@link #optWorkers(int)} worker threads waits for a request, then
+ * keeps collecting more until it holds {@link #optMaxBatchSize(int)} of them
+ * or {@link #optMaxWaitMicros(long)} passed since the first one, and hands the
+ * batch to the handler. Under light load a request waits at most the maximum
+ * wait; under heavy load batches fill up immediately and the waiting time
+ * vanishes. At most {@link #optQueueCapacity(int)} requests wait for a worker,
+ * further ones are rejected so latency stays bounded under overload.
+ *
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+public class MicroBatcher<I, O> implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(MicroBatcher.class.getName());
+
+    private final BatchHandler<I, O> handler;
+    private int maxBatchSize = 32;
+    private long maxWaitMicros = 5000;
+    private int workers = 1;
+    private int queueCapacity = 4096;
+    private BlockingQueue<Pending<I, O>> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean running;
+
+    public MicroBatcher(BatchHandler<I, O> handler) {
+        this.handler = handler;
+    }
+
+    public MicroBatcher<I, O> optMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets how long a worker waits for a batch to fill after its first
+     * request.
+     */
+    public MicroBatcher<I, O> optMaxWaitMicros(long maxWaitMicros) {
+        this.maxWaitMicros = maxWaitMicros;
+        return this;
+    }
+
+    public MicroBatcher<I, O> optWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    public MicroBatcher<I, O> optQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public synchronized MicroBatcher<I, O> start() {
+        if (running) {
+            return this;
+        }
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            Thread thread = new Thread(this::work, "batcher-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        return this;
+    }
+
+    /**
+     * Queues a request, the returned future completing with its response.
+     *
+     * @throws RejectedExecutionException when the queue is full or the
+     * batcher is stopped
+     */
+    public CompletableFuture<O> submit(I request) {
+        Pending<I, O> pending = new Pending<>(request);
+        if (!running || !queue.offer(pending)) {
+            throw new RejectedExecutionException("Too many pending requests");
+        }
+        return pending.future;
+    }
+
+    /**
+     * Returns the number of batches handled so far.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the mean number of requests per batch so far.
+     */
+    public double getMeanBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) requests.get() / count;
+    }
+
+    /**
+     * Stops the workers; requests still queued fail.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+        if (queue != null) {
+            Pending<I, O> pending;
+            while ((pending = queue.poll()) != null) {
+                pending.future.completeExceptionally(new RejectedExecutionException("Batcher stopped"));
+            }
+        }
+    }
+
+    private void work() {
+        List<Pending<I, O>> batch = new ArrayList<>(maxBatchSize);
+        List<I> inputs = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending<I, O> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                fail(batch, new RejectedExecutionException("Batcher stopped"));
+                return;
+            }
+
+            for (Pending<I, O> pending : batch) {
+                inputs.add(pending.request);
+            }
+            try {
+                List<O> outputs = handler.handle(inputs);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future.complete(outputs.get(i));
+                }
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Batch of " + batch.size() + " failed", ex);
+                fail(batch, ex);
+            }
+            batches.incrementAndGet();
+            requests.addAndGet(batch.size());
+            batch.clear();
+            inputs.clear();
+        }
+    }
+
+    private static <I, O> void fail(List<Pending<I, O>> batch, Throwable error) {
+        for (Pending<I, O> pending : batch) {
+            pending.future.completeExceptionally(error);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Handles a batch of requests on a worker thread.
+     *
+     * @param <I> the request type
+     * @param <O> the response type
+     */
+    @FunctionalInterface
+    public interface BatchHandler<I, O> {
+
+        /**
+         * Returns one response per request, in the same order.
+         */
+        List<O> handle(List<I> requests) throws Exception;
+    }
+
+    private static final class Pending<I, O> {
+
+        final I request;
+        final CompletableFuture<O> future = new CompletableFuture<>();
+
+        Pending(I request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.mycompany.djl.griddb.serving;
+
+/**
+ * Thrown by {@link ForecastService#forecast} for a series id that is not
+ * stored, as opposed to a request it cannot answer for a stored series.
+ */
+public class UnknownSeriesException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnknownSeriesException(String id) {
+        super("Unknown series: " + id);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mycompany.djl.griddb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class M5ForecastingEvaluatorTest {
+
+    private static final float[] QUANTILES = {0.1f, 0.5f, 0.9f};
+    private static final int SERIES = 5;
+
+    @Test
+    public void computeTotalMetricsIsRepeatable() {
+        M5ForecastingEvaluator evaluator = new M5ForecastingEvaluator(QUANTILES);
+        for (int series = 0; series < SERIES; series++) {
+            evaluator.aggregateMetrics(seriesMetrics(evaluator, series));
+        }
+
+        Map<String, Float> first = evaluator.computeTotalMetrics();
+        Map<String, Float> second = evaluator.computeTotalMetrics();
+        assertEquals(first, second);
+        // the mean of 1..SERIES, not a mean of means
+        assertEquals((SERIES + 1) / 2f, first.get("MSE"), 1e-6f);
+        assertEquals(SERIES * (SERIES + 1) / 2f * 10, first.get("abs_target_sum"), 1e-6f);
+        assertEquals((float) Math.sqrt(first.get("MSE")), first.get("RMSE"), 0);
+    }
+
+    @Test
+    public void batchMetricsGiveTheTotalsOfTheirSeries() {
+        M5ForecastingEvaluator perSeries = new M5ForecastingEvaluator(QUANTILES);
+        Map<String, float[]> batch = new HashMap<>();
+        for (int series = 0; series < SERIES; series++) {
+            Map<String, Float> metrics = seriesMetrics(perSeries, series);
+            perSeries.aggregateMetrics(metrics);
+            for (Map.Entry<String, Float> entry : metrics.entrySet()) {
+                batch.computeIfAbsent(entry.getKey(), name -> new float[SERIES])[series] = entry.getValue();
+            }
+        }
+        M5ForecastingEvaluator batched = new M5ForecastingEvaluator(QUANTILES);
+        batched.aggregateBatchMetrics(batch);
+
+        assertEquals(perSeries.computeTotalMetrics(), batched.computeTotalMetrics());
+    }
+
+    /**
+     * Returns metrics for one series that differ between series: every mean
+     * metric is {@code series + 1} and {@code abs_target_sum} ten times that.
+     */
+    private static Map<String, Float> seriesMetrics(M5ForecastingEvaluator evaluator, int series) {
+        Map<String, Float> metrics = new HashMap<>();
+        for (String name : new String[]{"RMSSE", "MSE", "abs_error", "abs_target_mean", "MAPE", "sMAPE", "ND"}) {
+            metrics.put(name, series + 1f);
+        }
+        metrics.put("abs_target_sum", (series + 1) * 10f);
+        for (float quantile : evaluator.getQuantiles()) {
+            metrics.put(String.format("QuantileLoss[%.2f]", quantile), series + 1f);
+            metrics.put(String.format("Coverage[%.2f]", quantile), series + 1f);
+        }
+        return metrics;
+    }
+}
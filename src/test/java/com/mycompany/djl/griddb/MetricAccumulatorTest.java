@@ -0,0 +1,119 @@
+package com.mycompany.djl.griddb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class MetricAccumulatorTest {
+
+    private static final int THREADS = 4;
+    private static final int VALUES_PER_THREAD = 10_000;
+
+    @Test
+    public void snapshotLeavesTheTotalsUntouched() {
+        MetricAccumulator accumulator = new MetricAccumulator("a", "b");
+        accumulator.add(0, 1.5);
+        accumulator.add(0, 2.5);
+        accumulator.add(1, new float[]{1, 2, 3});
+
+        MetricAccumulator.Snapshot first = accumulator.snapshot();
+        MetricAccumulator.Snapshot second = accumulator.snapshot();
+        for (int i = 0; i < accumulator.size(); i++) {
+            assertEquals(first.getSum(i), second.getSum(i), 0);
+            assertEquals(first.getCount(i), second.getCount(i));
+        }
+        assertEquals(4, second.getSum(0), 0);
+        assertEquals(2, second.getCount(0));
+        assertEquals(2, second.getMean(1), 0);
+        assertEquals(3, second.getCount(1));
+    }
+
+    @Test
+    public void addingAnArrayEqualsAddingEachValue() {
+        float[] values = randomValues(new Random(1), 100);
+        MetricAccumulator each = new MetricAccumulator("a");
+        for (float value : values) {
+            each.add(0, value);
+        }
+        MetricAccumulator array = new MetricAccumulator("a");
+        array.add(0, values);
+
+        assertEquals(each.snapshot().getSum(0), array.snapshot().getSum(0), 0);
+        assertEquals(each.snapshot().getCount(0), array.snapshot().getCount(0));
+    }
+
+    @Test
+    public void stripesMergeToTheSingleThreadedTotals() throws Exception {
+        Random random = new Random(7);
+        float[][] values = new float[THREADS][];
+        for (int t = 0; t < THREADS; t++) {
+            values[t] = randomValues(random, VALUES_PER_THREAD);
+        }
+
+        MetricAccumulator single = new MetricAccumulator("a", "b");
+        for (float[] part : values) {
+            for (int i = 0; i < part.length; i++) {
+                single.add(i % 2, part[i]);
+            }
+        }
+
+        MetricAccumulator striped = new MetricAccumulator("a", "b");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(THREADS);
+            for (float[] part : values) {
+                tasks.add(() -> {
+                    for (int i = 0; i < part.length; i++) {
+                        striped.add(i % 2, part[i]);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        MetricAccumulator.Snapshot expected = single.snapshot();
+        MetricAccumulator.Snapshot actual = striped.snapshot();
+        for (int i = 0; i < expected.size(); i++) {
+            // the stripes are summed in another order than the values
+            assertEquals(expected.getSum(i), actual.getSum(i), 1e-9 * THREADS * VALUES_PER_THREAD);
+            assertEquals(expected.getCount(i), actual.getCount(i));
+        }
+    }
+
+    @Test
+    public void resetClearsEveryStripe() throws Exception {
+        MetricAccumulator accumulator = new MetricAccumulator("a");
+        accumulator.add(0, 1);
+        Thread other = new Thread(() -> accumulator.add(0, 2));
+        other.start();
+        other.join();
+        assertEquals(3, accumulator.snapshot().getSum(0), 0);
+
+        accumulator.reset();
+        MetricAccumulator.Snapshot snapshot = accumulator.snapshot();
+        assertEquals(0, snapshot.getSum(0), 0);
+        assertEquals(0, snapshot.getCount(0));
+        assertTrue(Double.isNaN(snapshot.getMean(0)));
+    }
+
+    private static float[] randomValues(Random random, int count) {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+}